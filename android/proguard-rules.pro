@@ -45,11 +45,6 @@
 -dontwarn androidx.inspection.**
 
 
-# keep all structure constructors for the reflective version check
--keepclassmembers class de.dakror.quarry.structure.** {
-   public <init>(...);
-}
-
 -keep class com.badlogic.gdx.controllers.android.AndroidControllers
 
 -keep class com.badlogic.gdx.graphics.Color
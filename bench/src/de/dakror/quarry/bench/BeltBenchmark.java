@@ -0,0 +1,108 @@
+/*******************************************************************************
+ * Copyright 2019 Maximilian Stark | Dakror <mail@dakror.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package de.dakror.quarry.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.badlogic.gdx.utils.Array;
+
+import de.dakror.quarry.Const;
+import de.dakror.quarry.game.Item.ItemType;
+import de.dakror.quarry.game.Layer;
+import de.dakror.quarry.structure.base.Direction;
+import de.dakror.quarry.structure.logistics.Conveyor;
+
+/**
+ * Moves items around long, densely packed conveyor loops, whose straight parts get fused into segments.
+ *
+ * @author Maximilian Stark | Dakror
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BeltBenchmark {
+    static final int LOOP_LENGTH = 16;
+
+    @Param({ "1000", "10000", "100000" })
+    public int structures;
+
+    Layer layer;
+    Array<Conveyor> conveyors;
+
+    @Setup
+    public void setup() {
+        int loops = structures / (LOOP_LENGTH * 2);
+        int side = (int) Math.ceil(Math.sqrt(loops));
+
+        layer = BenchWorld.create(side * LOOP_LENGTH);
+        conveyors = new Array<>(Conveyor.class);
+
+        for (int i = 0; i < loops; i++) {
+            int x = (i / side) * LOOP_LENGTH;
+            int y = (i % side) * 2;
+
+            for (int j = 0; j < LOOP_LENGTH - 1; j++) {
+                add(x + j, y, Direction.East);
+                add(x + LOOP_LENGTH - 1 - j, y + 1, Direction.West);
+            }
+            add(x + LOOP_LENGTH - 1, y, Direction.North);
+            add(x, y + 1, Direction.South);
+        }
+
+        // pack the straight parts before the segments are formed, the corners leave room to move
+        for (Conveyor c : conveyors) {
+            Direction d = c.getDirection();
+            if (d == Direction.North || d == Direction.South) continue;
+
+            int start = Layer.getStartingSlot(d);
+            for (int i = 0; i < Const.ITEMS_PER_CONVEYOR; i++) {
+                c.addItemEntity(ItemType.Stone, -1, start + i * (d.dx + d.dy), d, null);
+            }
+        }
+
+        BenchWorld.settle(layer);
+    }
+
+    private void add(int x, int y, Direction dir) {
+        Conveyor c = new Conveyor(x, y, dir);
+        layer.addStructure(c);
+        conveyors.add(c);
+    }
+
+    @Benchmark
+    public void updateItems() {
+        Conveyor[] items = conveyors.items;
+        for (int i = 0; i < conveyors.size; i++) {
+            items[i].updateItems(BenchWorld.DT, 1, true);
+        }
+    }
+}
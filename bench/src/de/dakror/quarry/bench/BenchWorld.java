@@ -0,0 +1,73 @@
+/*******************************************************************************
+ * Copyright 2019 Maximilian Stark | Dakror <mail@dakror.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package de.dakror.quarry.bench;
+
+import com.badlogic.gdx.utils.Array;
+
+import de.dakror.quarry.Const;
+import de.dakror.quarry.desktop.HeadlessPlatform;
+import de.dakror.quarry.game.Chunk;
+import de.dakror.quarry.game.Layer;
+import de.dakror.quarry.game.Tile.TileType;
+import de.dakror.quarry.scenes.Game;
+import de.dakror.quarry.util.Bounds;
+
+/**
+ * Synthetic worlds for the benchmarks. Every benchmark trial runs in its own fork,
+ * so there is no need to clean up between worlds.
+ *
+ * @author Maximilian Stark | Dakror
+ */
+public class BenchWorld {
+    public static final double DT = 1 / 60.0;
+
+    public static final Bounds EMPTY_BOUNDS = new Bounds();
+
+    /**
+     * Creates an empty stone layer with at least the given side length and makes it the only layer of the game
+     */
+    public static Layer create(int minSize) {
+        HeadlessPlatform.boot();
+
+        int size = Math.max(Const.DEFAULT_LAYER_SIZE, (minSize + Const.CHUNK_SIZE - 1) / Const.CHUNK_SIZE * Const.CHUNK_SIZE);
+
+        Layer l = new Layer(0, size, size, TileType.Stone, true, false);
+        for (Chunk c : l.getChunks())
+            c.init();
+
+        Array<Layer> layers = new Array<>();
+        layers.add(l);
+        Game.G.linkLayers(layers);
+
+        return l;
+    }
+
+    /**
+     * Side length of a square area that fits the given amount of structures with the given size
+     */
+    public static int sideFor(int structures, int structureSize) {
+        return (int) Math.ceil(Math.sqrt(structures)) * structureSize;
+    }
+
+    /**
+     * Runs one tick without advancing time, so placed structures resolve their neighbors
+     */
+    public static void settle(Layer l) {
+        l.update(0, 1);
+        l.postUpdate();
+    }
+}
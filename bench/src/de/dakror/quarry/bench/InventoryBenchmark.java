@@ -0,0 +1,85 @@
+/*******************************************************************************
+ * Copyright 2019 Maximilian Stark | Dakror <mail@dakror.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package de.dakror.quarry.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.dakror.quarry.desktop.HeadlessPlatform;
+import de.dakror.quarry.game.Item.ItemType;
+import de.dakror.quarry.structure.base.component.CInventory;
+
+/**
+ * Adds and removes single items of a varying number of item types, like conveyors feeding a storage do.
+ *
+ * @author Maximilian Stark | Dakror
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InventoryBenchmark {
+    @Param({ "1", "8", "64" })
+    public int itemTypes;
+
+    CInventory inventory;
+    ItemType[] types;
+
+    @Setup
+    public void setup() {
+        HeadlessPlatform.boot();
+
+        inventory = new CInventory(Integer.MAX_VALUE);
+
+        types = new ItemType[itemTypes];
+        for (int i = 0; i < itemTypes; i++) {
+            types[i] = ItemType.values()[1 + i % (ItemType.values().length - 1)];
+            // keep some stock around so the inventory is never empty
+            inventory.add(types[i], 100);
+        }
+    }
+
+    @Benchmark
+    public int addRemove() {
+        for (ItemType t : types)
+            inventory.add(t, 1);
+        for (ItemType t : types)
+            inventory.remove(t, 1);
+        return inventory.getCount();
+    }
+
+    @Benchmark
+    public int get() {
+        int sum = 0;
+        for (ItemType t : types)
+            sum += inventory.get(t);
+        return sum;
+    }
+}
@@ -0,0 +1,73 @@
+/*******************************************************************************
+ * Copyright 2019 Maximilian Stark | Dakror <mail@dakror.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package de.dakror.quarry.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.dakror.quarry.game.Layer;
+import de.dakror.quarry.structure.producer.Mine;
+
+/**
+ * Recalculates the loudness field of a layer filled with mines. The layer grows with the structure count.
+ * Only tiles near structures whose loudness changed are blurred again, so this measures the change detection of a
+ * settled layer.
+ *
+ * @author Maximilian Stark | Dakror
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LoudnessBenchmark {
+    @Param({ "1000", "10000", "100000" })
+    public int structures;
+
+    Layer layer;
+
+    @Setup
+    public void setup() {
+        int side = (int) Math.ceil(Math.sqrt(structures));
+
+        layer = BenchWorld.create(BenchWorld.sideFor(structures, 2));
+
+        for (int i = 0; i < structures; i++) {
+            layer.addStructure(new Mine((i / side) * 2, (i % side) * 2));
+        }
+
+        BenchWorld.settle(layer);
+    }
+
+    @Benchmark
+    public void updateLoudness() {
+        // a full second forces a recalculation every time
+        layer.updateLoudness(1);
+    }
+}
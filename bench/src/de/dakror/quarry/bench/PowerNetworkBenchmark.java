@@ -0,0 +1,94 @@
+/*******************************************************************************
+ * Copyright 2019 Maximilian Stark | Dakror <mail@dakror.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package de.dakror.quarry.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.badlogic.gdx.utils.Array;
+
+import de.dakror.quarry.game.Layer;
+import de.dakror.quarry.game.power.PowerNetwork;
+import de.dakror.quarry.scenes.Game;
+import de.dakror.quarry.structure.base.Structure;
+import de.dakror.quarry.structure.power.Capacitor;
+import de.dakror.quarry.structure.power.Substation;
+import de.dakror.quarry.structure.power.WaterWheel;
+
+/**
+ * A single low power network of storages with mixed fill levels and priorities, fed by a generator every tick.
+ * Covers both distribution of offered power and balancing of stored power.
+ *
+ * @author Maximilian Stark | Dakror
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PowerNetworkBenchmark {
+    @Param({ "1000", "10000", "100000" })
+    public int structures;
+
+    PowerNetwork network;
+    Array<Structure<?>> vertices;
+    Structure<?> generator;
+
+    @Setup
+    public void setup() {
+        Layer layer = BenchWorld.create(0);
+
+        network = new PowerNetwork(Game.G.powerGrid);
+        vertices = new Array<>();
+
+        for (int i = 0; i < structures; i++) {
+            // only needs a unique index, the structures are never placed
+            int x = i / layer.height;
+            int y = i % layer.height;
+
+            Structure<?> s = i % 3 == 0 ? new Substation(x, y) : new Capacitor(x, y);
+            network.addVertex(s);
+            vertices.add(s);
+
+            if (i % 2 == 0)
+                s.acceptPower(s.getPowerCapacity(), Double.MAX_VALUE);
+        }
+
+        generator = new WaterWheel(0, 0);
+    }
+
+    @Benchmark
+    public void update() {
+        network.offerPower(BenchWorld.DT, 1, 10_000, generator);
+        network.update(BenchWorld.DT, 1);
+
+        for (Structure<?> s : vertices)
+            s.postUpdate(BenchWorld.EMPTY_BOUNDS);
+    }
+}
@@ -0,0 +1,94 @@
+/*******************************************************************************
+ * Copyright 2019 Maximilian Stark | Dakror <mail@dakror.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package de.dakror.quarry.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.badlogic.gdx.utils.Array;
+
+import de.dakror.quarry.game.Layer;
+import de.dakror.quarry.structure.base.ProducerStructure;
+import de.dakror.quarry.structure.base.component.CInventory;
+import de.dakror.quarry.structure.base.component.Component;
+import de.dakror.quarry.structure.producer.Mine;
+
+/**
+ * Mines on plain stone, which need neither inputs nor power.
+ * Outputs are emptied every iteration so the producers keep working.
+ *
+ * @author Maximilian Stark | Dakror
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProducerBenchmark {
+    @Param({ "1000", "10000", "100000" })
+    public int structures;
+
+    Layer layer;
+    Array<ProducerStructure> producers;
+
+    @Setup
+    public void setup() {
+        int side = (int) Math.ceil(Math.sqrt(structures));
+
+        layer = BenchWorld.create(BenchWorld.sideFor(structures, 2));
+        producers = new Array<>(ProducerStructure.class);
+
+        for (int i = 0; i < structures; i++) {
+            Mine m = new Mine((i / side) * 2, (i % side) * 2);
+            layer.addStructure(m);
+            producers.add(m);
+        }
+
+        BenchWorld.settle(layer);
+    }
+
+    @Setup(Level.Iteration)
+    public void drain() {
+        for (ProducerStructure p : producers) {
+            for (Component c : p.getComponents()) {
+                if (c instanceof CInventory)
+                    ((CInventory) c).clear();
+            }
+        }
+    }
+
+    @Benchmark
+    public void update() {
+        ProducerStructure[] items = producers.items;
+        for (int i = 0; i < producers.size; i++) {
+            items[i].update(BenchWorld.DT, 1, BenchWorld.EMPTY_BOUNDS);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*******************************************************************************
+ * Copyright 2019 Maximilian Stark | Dakror <mail@dakror.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package de.dakror.quarry.bench;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.util.zip.CRC32;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.utils.Array;
+
+import de.dakror.common.libgdx.io.NBT.CompoundTag;
+import de.dakror.quarry.desktop.HeadlessPlatform;
+import de.dakror.quarry.game.Layer;
+import de.dakror.quarry.game.SaveFile;
+import de.dakror.quarry.scenes.Game;
+
+/**
+ * Runs a save headless with a single update thread and with many, and compares the resulting layers.
+ * Both use the scheduled update of {@link Layer#update(double, int)}, so they have to end up with the same bytes.
+ * Without update threads the chunks are updated one after the other in the old order, which is only reported.
+ * Every run gets its own JVM, as the game can only be booted once.
+ * <p>
+ * Usage: UpdateThreadsCheck &lt;file.qsf&gt; [ticks] [update threads], or <code>gradlew bench:threadsCheck
+ * -PcheckArgs="..."</code>
+ *
+ * @author Maximilian Stark | Dakror
+ */
+public class UpdateThreadsCheck {
+    static final double TIMESTEP = 1 / 60.0;
+
+    public static void main(String[] arg) throws Exception {
+        if (arg.length > 0 && arg[0].equals("--run")) {
+            run(arg[1], Integer.parseInt(arg[2]), Integer.parseInt(arg[3]));
+            return;
+        }
+
+        if (arg.length == 0) {
+            System.out.println("Usage: UpdateThreadsCheck <file.qsf> [ticks] [update threads]");
+            return;
+        }
+
+        String file = new File(arg[0]).getAbsolutePath();
+        int ticks = arg.length > 1 ? Integer.parseInt(arg[1]) : 3600;
+        int threads = arg.length > 2 ? Integer.parseInt(arg[2]) : Runtime.getRuntime().availableProcessors();
+
+        String serial = fork(file, ticks, 1);
+        String parallel = fork(file, ticks, threads);
+        String unscheduled = fork(file, ticks, 0);
+
+        System.out.println("1 thread:   " + serial);
+        System.out.println(threads + " threads: " + parallel);
+        System.out.println("unscheduled: " + unscheduled + (unscheduled.equals(serial) ? "" : " (differs, other update order)"));
+
+        if (!serial.equals(parallel)) {
+            System.out.println("FAILED: the layers differ between 1 and " + threads + " update threads");
+            System.exit(1);
+        }
+
+        System.out.println("ok");
+    }
+
+    /**
+     * @return the checksums of all layers after running the save in a new JVM
+     */
+    static String fork(String file, int ticks, int threads) throws Exception {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        ProcessBuilder pb = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                UpdateThreadsCheck.class.getName(), "--run", file, Integer.toString(ticks), Integer.toString(threads));
+        pb.redirectErrorStream(true);
+        Process p = pb.start();
+
+        String result = null;
+        BufferedReader r = new BufferedReader(new InputStreamReader(p.getInputStream(), "UTF-8"));
+        try {
+            String line;
+            while ((line = r.readLine()) != null) {
+                if (line.startsWith("layers ")) result = line.substring(7);
+            }
+        } finally {
+            r.close();
+        }
+
+        if (p.waitFor() != 0 || result == null)
+            throw new IllegalStateException("Run with " + threads + " update threads failed");
+
+        return result;
+    }
+
+    static void run(String file, int ticks, int threads) throws Exception {
+        Game.UPDATE_THREADS = threads;
+        HeadlessPlatform.boot();
+
+        Game g = Game.G;
+
+        Array<Layer> layers = new Array<>();
+        CompoundTag data = g.loadWorld(Gdx.files.absolute(file), layers);
+        int build = data.Int("build", 0);
+        data.free();
+        g.linkLayers(layers);
+
+        // see Game#loadData
+        if (build < 115) {
+            g.recalcResources();
+        }
+
+        for (int i = 0; i < ticks; i++)
+            g.updateWorld(TIMESTEP, 1);
+
+        StringBuilder sb = new StringBuilder();
+        for (Layer l : layers) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            SaveFile.Writer w = new SaveFile.Writer(bytes);
+            try {
+                l.save(w);
+                w.finish();
+            } finally {
+                w.close();
+            }
+
+            CRC32 crc = new CRC32();
+            crc.update(bytes.toByteArray());
+            if (sb.length() > 0) sb.append(' ');
+            sb.append(Long.toHexString(crc.getValue()));
+        }
+
+        System.out.println("layers " + sb);
+
+        // the update and save thread pools would otherwise keep us alive
+        System.exit(0);
+    }
+}
@@ -0,0 +1,197 @@
+/*******************************************************************************
+ * Copyright 2019 Maximilian Stark | Dakror <mail@dakror.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package de.dakror.quarry.game.power;
+
+import java.util.Random;
+
+/**
+ * Compares the steady state of {@link PowerSolver} against the five passes of slices it replaced.
+ * A set of receivers with mixed priorities drains power every tick while a fixed supply is offered, so most
+ * ticks run in a deficit. Afterwards the mean power every receiver got per tick is compared.
+ * <p>
+ * The passes hand out slices in order, so receivers early in the list get more than later ones of the same
+ * priority. The solver's split is the one of the passes without that bias. It has to hand out the same total, and
+ * no receiver may be further off than the passes are from themselves with the receivers in reverse order.
+ * <p>
+ * Run through <code>gradlew bench:powerCheck</code>.
+ *
+ * @author Maximilian Stark | Dakror
+ */
+public class PowerSolverCheck {
+    static final int TICKS = 3000;
+    static final int MEASURED = 1000;
+    static final double CAPACITY = 100;
+    static final double STRENGTH = 50;
+
+    final int[] priorities;
+    final double[] drains;
+
+    PowerSolverCheck(int receivers, long seed) {
+        priorities = new int[receivers];
+        drains = new double[receivers];
+
+        Random random = new Random(seed);
+        double[] drainChoices = { 2, 5, 20 };
+        for (int i = 0; i < receivers; i++) {
+            priorities[i] = 1 + random.nextInt(3);
+            drains[i] = drainChoices[random.nextInt(drainChoices.length)];
+        }
+    }
+
+    /**
+     * Baseline distribution of offered low power, five passes of slices with the rest carried into the next tick
+     */
+    double[] runPasses(double supply, boolean reverse) {
+        int n = priorities.length;
+        double[] levels = new double[n];
+        double[] got = new double[n];
+
+        int slices = 0;
+        for (int p : priorities)
+            slices += p;
+
+        double remainder = 0;
+        for (int t = 0; t < TICKS; t++) {
+            remainder += supply;
+            double[] received = new double[n];
+
+            for (int pass = 0; pass < 5; pass++) {
+                if (remainder == 0) break;
+                for (int k = 0; k < n; k++) {
+                    int i = reverse ? n - 1 - k : k;
+
+                    double piece = Math.min(remainder / slices * priorities[i], remainder);
+                    double accepted = Math.max(0, Math.min(piece, Math.min(CAPACITY - levels[i], STRENGTH - received[i])));
+                    levels[i] += accepted;
+                    received[i] += accepted;
+                    remainder -= accepted;
+
+                    if (t >= TICKS - MEASURED) got[i] += accepted;
+                    if (remainder == 0) break;
+                }
+            }
+
+            drain(levels);
+        }
+
+        return got;
+    }
+
+    /**
+     * Same loop as {@link PowerNetwork}'s handOut, with the rest carried into the next tick
+     */
+    double[] runSolver(double supply) {
+        int n = priorities.length;
+        double[] levels = new double[n];
+        double[] got = new double[n];
+        int[] receiverOf = new int[n];
+
+        PowerSolver solver = new PowerSolver();
+
+        double remainder = 0;
+        for (int t = 0; t < TICKS; t++) {
+            remainder += supply;
+            double[] received = new double[n];
+
+            solver.clear();
+            for (int i = 0; i < n; i++) {
+                int size = solver.size;
+                solver.add(null, priorities[i], Math.min(CAPACITY - levels[i], STRENGTH), STRENGTH);
+                if (solver.size > size) receiverOf[size] = i;
+            }
+
+            for (int round = 0; round < PowerNetwork.MAX_ROUNDS; round++) {
+                if (remainder <= 0 || solver.totalDemand <= 0) break;
+
+                solver.solve(remainder);
+
+                for (int j = 0; j < solver.size; j++) {
+                    double piece = solver.getShare(j);
+                    if (piece <= 0) continue;
+
+                    int i = receiverOf[j];
+                    double accepted = Math.max(0, Math.min(piece, Math.min(CAPACITY - levels[i], solver.strengths[j] - received[i])));
+                    levels[i] += accepted;
+                    received[i] += accepted;
+                    remainder -= accepted;
+
+                    if (t >= TICKS - MEASURED) got[i] += accepted;
+                    solver.settle(j, accepted, accepted < piece);
+                }
+            }
+
+            remainder = Math.max(0, remainder);
+            drain(levels);
+        }
+
+        return got;
+    }
+
+    void drain(double[] levels) {
+        for (int i = 0; i < levels.length; i++)
+            levels[i] = Math.max(0, levels[i] - drains[i]);
+    }
+
+    static double sum(double[] values) {
+        double sum = 0;
+        for (double v : values)
+            sum += v;
+        return sum;
+    }
+
+    static double maxDeviation(double[] a, double[] b) {
+        double max = 0;
+        for (int i = 0; i < a.length; i++)
+            max = Math.max(max, Math.abs(a[i] - b[i]) / Math.max(b[i], 1e-9));
+        return max;
+    }
+
+    public static void main(String[] args) {
+        int[] receivers = { 10, 100, 1000 };
+        double[] loads = { 0.5, 0.8, 1.2 };
+
+        boolean ok = true;
+        for (int n : receivers) {
+            PowerSolverCheck check = new PowerSolverCheck(n, n);
+            double demand = sum(check.drains);
+
+            for (double load : loads) {
+                double supply = demand * load;
+
+                double[] passes = check.runPasses(supply, false);
+                double[] reversed = check.runPasses(supply, true);
+                double[] solver = check.runSolver(supply);
+
+                double totalPasses = sum(passes) / MEASURED;
+                double totalSolver = sum(solver) / MEASURED;
+                double orderDeviation = maxDeviation(passes, reversed);
+                double solverDeviation = maxDeviation(solver, passes);
+
+                boolean sameTotal = Math.abs(totalSolver - totalPasses) <= totalPasses * 0.001;
+                boolean withinOrder = solverDeviation <= orderDeviation + 1e-6;
+                ok &= sameTotal && withinOrder;
+
+                System.out.printf("%5d receivers, supply %4.0f%% of demand: handed out %.2f vs %.2f per tick, "
+                        + "max deviation %.1f%% (passes reversed: %.1f%%) %s%n",
+                        n, load * 100, totalSolver, totalPasses, solverDeviation * 100, orderDeviation * 100,
+                        sameTotal && withinOrder ? "ok" : "FAILED");
+            }
+        }
+
+        if (!ok) System.exit(1);
+    }
+}
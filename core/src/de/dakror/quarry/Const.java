@@ -20,7 +20,7 @@ package de.dakror.quarry;
  * @author Maximilian Stark | Dakror
  */
 public class Const {
-    public static final byte QSF_VERSION = 0x17;
+    public static final byte QSF_VERSION = 0x19;
 
     ///
 
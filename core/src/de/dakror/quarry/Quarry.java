@@ -28,10 +28,8 @@ import com.badlogic.gdx.Preferences;
 import com.badlogic.gdx.assets.AssetManager;
 import com.badlogic.gdx.audio.Sound;
 import com.badlogic.gdx.files.FileHandle;
-import com.badlogic.gdx.graphics.Pixmap.Format;
 import com.badlogic.gdx.graphics.g2d.BitmapFont;
 import com.badlogic.gdx.graphics.g2d.TextureAtlas;
-import com.badlogic.gdx.graphics.glutils.FrameBuffer;
 import com.badlogic.gdx.scenes.scene2d.ui.Skin;
 import com.badlogic.gdx.utils.I18NBundle;
 import com.github.czyzby.lml.parser.LmlParser;
@@ -47,6 +45,7 @@ import de.dakror.common.libgdx.ui.Scene;
 import de.dakror.quarry.scenes.Game;
 import de.dakror.quarry.scenes.LoadingScreen;
 import de.dakror.quarry.scenes.MainMenu;
+import de.dakror.quarry.structure.base.StructureType;
 import de.dakror.gen.CustomTagRegistrator;
 
 /**
@@ -64,8 +63,6 @@ public class Quarry extends GameBase implements PlatformInterface {
     public Preferences prefs;
     public int[] safeInsets;
 
-    public FrameBuffer[] chunkFBOs;
-
     public AssetManager assets;
 
     public SoundManager sound;
@@ -154,6 +151,34 @@ public class Quarry extends GameBase implements PlatformInterface {
         addScene(s);
     }
 
+    /**
+     * Counterpart to {@link #create()} for running the simulation without a window.
+     * Only loads the assets the structure schemas need and sets up a headless {@link Game}.
+     */
+    public void createHeadless() {
+        Q = this;
+
+        i18n = new I18NBundleDelegate(I18NBundle.createBundle(Gdx.files.internal("i18n/TheQuarry"), Locale.ENGLISH));
+
+        sound = new SoundManager(0, 0, 2.0f);
+        sound.setPlaySound(false);
+        sound.setPlayMusic(false);
+
+        assets = LoadingScreen.createAssetManager();
+        LoadingScreen.loadBaseAssets(assets);
+        LoadingScreen.loadSounds(assets);
+        assets.finishLoading();
+
+        atlas = assets.get("tex.atlas");
+        skin = assets.get("skin.json");
+        font = skin.getFont("default-font");
+
+        Game g = new Game();
+        g.initHeadless();
+
+        StructureType.checkFactories();
+    }
+
     @Override
     public void pause() {
         // wait for saving to complete until pause is allowed
@@ -211,19 +236,9 @@ public class Quarry extends GameBase implements PlatformInterface {
         g.init();
         Quarry.Q.pi.message(-1230, this);
 
-        System.out.println("Game init took " + (System.currentTimeMillis() - t) + " ms");
-
-        // init fbos
-        chunkFBOs = new FrameBuffer[(Const.DEFAULT_LAYER_SIZE / Const.CHUNK_SIZE)
-                * (Const.DEFAULT_LAYER_SIZE / Const.CHUNK_SIZE)];
+        StructureType.checkFactories();
 
-        int chunksH = (int) Math.ceil(Const.DEFAULT_LAYER_SIZE / Const.CHUNK_SIZE);
-        for (int i = 0; i < Const.DEFAULT_LAYER_SIZE; i += Const.CHUNK_SIZE) {
-            for (int j = 0; j < Const.DEFAULT_LAYER_SIZE; j += Const.CHUNK_SIZE) {
-                chunkFBOs[i / Const.CHUNK_SIZE * chunksH + j / Const.CHUNK_SIZE] = new FrameBuffer(Format.RGB888,
-                        Const.CHUNK_FULL_SIZE, Const.CHUNK_FULL_SIZE, false);
-            }
-        }
+        System.out.println("Game init took " + (System.currentTimeMillis() - t) + " ms");
 
         Scene s = new MainMenu();
         s.init();
@@ -16,27 +16,21 @@
 
 package de.dakror.quarry.game;
 
-import java.util.HashMap;
-
 import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.graphics.GL20;
 import com.badlogic.gdx.graphics.Mesh;
 import com.badlogic.gdx.graphics.OrthographicCamera;
-import com.badlogic.gdx.graphics.Texture.TextureFilter;
 import com.badlogic.gdx.graphics.VertexAttribute;
 import com.badlogic.gdx.graphics.VertexAttributes;
 import com.badlogic.gdx.graphics.VertexAttributes.Usage;
 import com.badlogic.gdx.graphics.g2d.Batch;
-import com.badlogic.gdx.graphics.g2d.TextureRegion;
-import com.badlogic.gdx.graphics.glutils.FrameBuffer;
 import com.badlogic.gdx.graphics.glutils.ShaderProgram;
 import com.badlogic.gdx.graphics.glutils.ShapeRenderer;
+import com.badlogic.gdx.math.RandomXS128;
 import com.badlogic.gdx.utils.Array;
 import com.badlogic.gdx.utils.Disposable;
 import com.badlogic.gdx.utils.IntMap;
-import com.badlogic.gdx.utils.IntMap.Entry;
-import com.badlogic.gdx.utils.viewport.Viewport;
 
 import de.dakror.common.libgdx.PlatformInterface;
 import de.dakror.common.libgdx.io.NBT.Builder;
@@ -48,43 +42,72 @@ import de.dakror.common.libgdx.render.DepthSpriter;
 import de.dakror.common.libgdx.render.MeshBuilderDelegate;
 import de.dakror.quarry.Const;
 import de.dakror.quarry.Quarry;
-import de.dakror.quarry.game.Tile.TileMeta;
-import de.dakror.quarry.game.Tile.TileType;
 import de.dakror.quarry.game.power.PowerNetwork;
 import de.dakror.quarry.scenes.Game;
 import de.dakror.quarry.structure.base.Dock;
+import de.dakror.quarry.structure.base.FluidNetwork;
 import de.dakror.quarry.structure.base.StorageStructure;
 import de.dakror.quarry.structure.base.Structure;
 import de.dakror.quarry.structure.base.StructureType;
 import de.dakror.quarry.structure.logistics.Conveyor;
+import de.dakror.quarry.structure.logistics.ConveyorSegment;
 import de.dakror.quarry.structure.power.CopperCable;
 import de.dakror.quarry.util.Bounds;
 import de.dakror.quarry.util.Bounds.Flags;
-import de.dakror.quarry.util.FBOable;
 import de.dakror.quarry.util.Savable;
 import de.dakror.quarry.util.SpriterDelegateBatch;
 
 /**
  * @author Maximilian Stark | Dakror
  */
-public class Chunk implements Disposable, FBOable, Savable {
+public class Chunk implements Disposable, Savable {
     public static final float WHITE = Color.WHITE.toFloatBits();
 
-    static final TextureRegion overhang = Quarry.Q.atlas.findRegion("overhang");
-    static final TextureRegion fogOverhang = Quarry.Q.atlas.findRegion("overhang_fog");
-    static final TextureRegion fogOverhangInner = Quarry.Q.atlas.findRegion("overhang_fog_inner");
-    static final TextureRegion fogOfWar = Quarry.Q.atlas.findRegion("tile_fog");
+    // side length of the cells structures are indexed by, see Cell
+    static final int CELL_SIZE = 8;
+    static final int CELLS = Const.CHUNK_SIZE / CELL_SIZE;
+
+    /**
+     * A square of the chunk holding the structures and cables whose origin lies in it.
+     * Each cell has its own mesh, so only cells that changed get rebuilt and only cells on screen get drawn.
+     */
+    static class Cell {
+        final int x, y;
+        // incorporates the size of the structures, like the chunk's bounds
+        int maxX, maxY;
+
+        final Array<Structure<?>> structures = new Array<>(false, 16, Structure.class);
+        final Array<CopperCable> cables = new Array<>(false, 16, CopperCable.class);
+
+        MeshBuilderDelegate builder;
+
+        Cell(int x, int y) {
+            this.x = x;
+            this.y = y;
+            maxX = x + CELL_SIZE;
+            maxY = y + CELL_SIZE;
+        }
 
-    // (base, (blend, tex))
-    static final int COR = 0;
-    static final int INN = 1;
-    static final int MID = 2;
-    static final int HOL = 3;
-    static final HashMap<TileType, HashMap<TileType, TextureRegion[]>> texLookup = new HashMap<>();
+        boolean isEmpty() {
+            return structures.size == 0 && cables.size == 0;
+        }
+
+        void updateBounds() {
+            maxX = x + CELL_SIZE;
+            maxY = y + CELL_SIZE;
+            for (int i = 0; i < structures.size; i++) {
+                Structure<?> s = structures.get(i);
+                maxX = Math.max(maxX, s.x + s.getWidth());
+                maxY = Math.max(maxY, s.y + s.getHeight());
+            }
+        }
+    }
 
     final Object structLock = new Object();
 
-    // lower byte data, upper byte meta
+    // lower byte data, upper byte meta.
+    // the array is created once in init and published through dataSet, so tiles can be read without locking.
+    // writers go through Layer and store whole shorts under Layer.tileLock
     short[] data;
     int x, y;
 
@@ -96,20 +119,31 @@ public class Chunk implements Disposable, FBOable, Savable {
 
     Layer layer;
 
-    public boolean dirty;
-    boolean dataSet, glSet;
+    // whether all terrain quads have to be rebuilt, single tiles are marked through TerrainMesh#markDirty
+    public volatile boolean dirty;
+    // whether the chunk may differ from what the last autosave wrote, see SaveFile.Journal
+    volatile boolean changed;
+    volatile boolean dataSet;
+    boolean glSet;
 
     IntMap<Structure<?>> spatial;
     Array<Structure<?>> structures;
     Array<Conveyor> conveyors;
     IntMap<CopperCable> cables;
 
-    MeshBuilderDelegate builder;
+    Cell[] cells;
+    VertexAttributes attributes;
 
-    FrameBuffer fbo;
+    final TerrainMesh terrain;
 
     private boolean inBounds;
 
+    // seeded by position so the random choices of structures in here don't depend on update order
+    final RandomXS128 random;
+
+    // dirty rects of structures in here while their color is updated, see Layer#addDirty(Structure, int)
+    final Bounds pendingDirty = new Bounds();
+
     public Chunk(int x, int y, Layer layer) {
         this.x = x;
         this.y = y;
@@ -119,6 +153,9 @@ public class Chunk implements Disposable, FBOable, Savable {
         this.maxY = ay + Const.CHUNK_SIZE;
         this.layer = layer;
 
+        random = new RandomXS128(((long) layer.getIndex() << 32) ^ ((long) x << 16) ^ y);
+        terrain = new TerrainMesh(this);
+
         dirty = true;
     }
 
@@ -143,6 +180,10 @@ public class Chunk implements Disposable, FBOable, Savable {
         conveyors = new Array<>(false, 100, Conveyor.class);
         cables = new IntMap<>(100);
 
+        cells = new Cell[CELLS * CELLS];
+        for (int i = 0; i < cells.length; i++)
+            cells[i] = new Cell(ax + i / CELLS * CELL_SIZE, ay + i % CELLS * CELL_SIZE);
+
         dataSet = true;
     }
 
@@ -150,41 +191,106 @@ public class Chunk implements Disposable, FBOable, Savable {
         return dataSet;
     }
 
+    public RandomXS128 getRandom() {
+        return random;
+    }
+
     private void initGL() {
         if (glSet) return;
 
-        VertexAttributes attributes = new VertexAttributes(new VertexAttribute(Usage.Position, 3, ShaderProgram.POSITION_ATTRIBUTE),
+        attributes = new VertexAttributes(new VertexAttribute(Usage.Position, 3, ShaderProgram.POSITION_ATTRIBUTE),
                 new VertexAttribute(Usage.TextureCoordinates, 2, ShaderProgram.TEXCOORD_ATTRIBUTE + "0"));
 
-        builder = new MeshBuilderDelegate(attributes, Quarry.Q.atlas.getTextures().first());
-
         glSet = true;
     }
 
     public void update(double deltaTime, int gameSpeed, Bounds dirtyBounds) {
         if (!dataSet) return;
 
-        if (dirty && layer == Game.G.layer && Game.G.activeStructure != null) {
+        if ((dirty || terrain.dirty) && layer == Game.G.layer && Game.G.activeStructure != null) {
             Game.G.camControl.updateTrail();
             Game.G.camControl.updateActiveElementPlaceable();
         }
 
-        boolean hasWidth = dirtyBounds.getWidth() > 0;
+        boolean nearDirty = isNearDirtyBounds(dirtyBounds);
 
         synchronized (structLock) {
             for (Structure<?> st : structures.items) {
                 if (st == null) break;
-                if (hasWidth || st.getSchema().type != StructureType.Conveyor)
+                if (nearDirty || (st.getSchema().type != StructureType.Conveyor && !st.isIdle()))
                     st.update(deltaTime, gameSpeed * st.getSpeedScale(), dirtyBounds);
             }
 
+            if (nearDirty) {
+                ConveyorSegment.build(conveyors, ax, ay);
+                FluidNetwork.build(structures, ax, ay);
+            }
+
             // this update items has to happen after all updates because the normal updates will set item notifications
             for (Conveyor st : conveyors.items) {
                 if (st == null) break;
                 st.updateItems(deltaTime, gameSpeed, true);
             }
 
-            if (dirtyBounds.hasFlag(Bounds.Flags.CABLE) || hasWidth) {
+            if (dirtyBounds.hasFlag(Bounds.Flags.CABLE) || nearDirty) {
+                for (CopperCable c : cables.values()) {
+                    c.update(deltaTime, gameSpeed, dirtyBounds);
+                }
+            }
+        }
+    }
+
+    /**
+     * First half of the scheduled update, see {@link Layer#update(double, int)}.
+     * Updates all structures that are not {@link Structure#isChunkLocal() chunk local}.
+     */
+    void updateShared(double deltaTime, int gameSpeed, Bounds dirtyBounds) {
+        if (!dataSet) return;
+
+        if ((dirty || terrain.dirty) && layer == Game.G.layer && Game.G.activeStructure != null) {
+            Game.G.camControl.updateTrail();
+            Game.G.camControl.updateActiveElementPlaceable();
+        }
+
+        boolean nearDirty = isNearDirtyBounds(dirtyBounds);
+
+        synchronized (structLock) {
+            for (Structure<?> st : structures.items) {
+                if (st == null) break;
+                if (!st.isChunkLocal() && (nearDirty || (st.getSchema().type != StructureType.Conveyor && !st.isIdle())))
+                    st.update(deltaTime, gameSpeed * st.getSpeedScale(), dirtyBounds);
+            }
+        }
+    }
+
+    /**
+     * Second half of the scheduled update, see {@link Layer#update(double, int)}.
+     * Only touches this chunk and its direct neighbors, so it may run concurrently with any chunk at least
+     * two chunks away.
+     */
+    void updateLocal(double deltaTime, int gameSpeed, Bounds dirtyBounds) {
+        if (!dataSet) return;
+
+        boolean nearDirty = isNearDirtyBounds(dirtyBounds);
+
+        synchronized (structLock) {
+            for (Structure<?> st : structures.items) {
+                if (st == null) break;
+                if (st.isChunkLocal() && (nearDirty || (st.getSchema().type != StructureType.Conveyor && !st.isIdle())))
+                    st.update(deltaTime, gameSpeed * st.getSpeedScale(), dirtyBounds);
+            }
+
+            if (nearDirty) {
+                ConveyorSegment.build(conveyors, ax, ay);
+                FluidNetwork.build(structures, ax, ay);
+            }
+
+            for (Conveyor st : conveyors.items) {
+                if (st == null) break;
+                st.updateItems(deltaTime, gameSpeed, true);
+            }
+
+            if (dirtyBounds.hasFlag(Bounds.Flags.CABLE) || nearDirty) {
                 for (CopperCable c : cables.values()) {
                     c.update(deltaTime, gameSpeed, dirtyBounds);
                 }
@@ -196,10 +302,14 @@ public class Chunk implements Disposable, FBOable, Savable {
         if (!dataSet) return;
 
         synchronized (structLock) {
+            // idle structures did not run and can only be changed by waking them up, except over the power network
+            boolean active = conveyors.size > 0 || isNearDirtyBounds(dirtyBounds);
             for (Structure<?> st : structures.items) {
                 if (st == null) break;
                 st.postUpdate(dirtyBounds);
+                if (!st.isIdle() || st.getSchema().powerDocks > 0) active = true;
             }
+            if (active) changed = true;
 
             if (dirtyBounds.hasAnyFlag(Bounds.Flags.CABLE | Bounds.Flags.POWERNODE)) {
                 for (Structure<?> st : structures.items) {
@@ -226,284 +336,106 @@ public class Chunk implements Disposable, FBOable, Savable {
         return dirtyBounds.intersects(ax, ay, Const.CHUNK_SIZE, Const.CHUNK_SIZE);
     }
 
-    private void drawBaseTile(TileType t, int x, int y, Batch batch) {
-        if (texLookup.isEmpty()) initTexCache();
-
-        batch.draw(t.tex, x * Const.TILE_SIZE, y * Const.TILE_SIZE, Const.TILE_SIZE, Const.TILE_SIZE);
-
-        // Make smooth transition to dirt
-        TileType[][] neighbors = new TileType[3][3];
-
-        boolean any = false;
+    /**
+     * Whether any of the dirty rects touches a structure of this chunk, including ones sticking out of it
+     */
+    public boolean isNearDirtyBounds(Bounds dirtyBounds) {
+        return dirtyBounds.touches(ax, ay, maxX - ax, maxY - ay);
+    }
 
-        for (int j = -1; j < 2; j++) {
-            for (int k = -1; k < 2; k++) {
-                if (!(j == 0 && k == 0)) {
-                    TileType u = layer.get(ax + x + j, ay + y + k);
-                    if (u.base != null) u = u.base;
-                    if ((u.meta & TileMeta.BLENDING) == TileMeta.BLENDING && u != t) {
-                        neighbors[j + 1][k + 1] = u;
-                        any = true;
-                    }
-                }
+    public void draw(Batch batch) {
+        if (!dataSet) {
+            synchronized (structLock) {
+                if (!dataSet)
+                    init();
             }
         }
 
-        if (any) {
-            // if a 1x1 hole, fill it
-            if (neighbors[1][0] != null && neighbors[1][2] != null && neighbors[0][1] != null && neighbors[2][1] != null) {
-                layer.set(ax + x, ay + y, neighbors[1][0]);
-                batch.draw(neighbors[1][0].tex, x * Const.TILE_SIZE, y * Const.TILE_SIZE, Const.TILE_SIZE, Const.TILE_SIZE);
-                return;
-            }
-
-            // corners
-            if (neighbors[0][0] != null && neighbors[1][0] == null && neighbors[0][1] == null) {
-                batch.draw(texLookup.get(t).get(neighbors[0][0])[COR], x * Const.TILE_SIZE, y * Const.TILE_SIZE, Const.TILE_SIZE / 2, Const.TILE_SIZE / 2, Const.TILE_SIZE, Const.TILE_SIZE, 1, 1, 0);
-            }
-            if (neighbors[0][2] != null && neighbors[1][2] == null && neighbors[0][1] == null) {
-                batch.draw(texLookup.get(t).get(neighbors[0][2])[COR], x * Const.TILE_SIZE, y * Const.TILE_SIZE, Const.TILE_SIZE / 2, Const.TILE_SIZE / 2, Const.TILE_SIZE, Const.TILE_SIZE, 1, 1, -90);
-            }
-            if (neighbors[2][2] != null && neighbors[1][2] == null && neighbors[2][1] == null) {
-                batch.draw(texLookup.get(t).get(neighbors[2][2])[COR], x * Const.TILE_SIZE, y * Const.TILE_SIZE, Const.TILE_SIZE / 2, Const.TILE_SIZE / 2, Const.TILE_SIZE, Const.TILE_SIZE, 1, 1, 180);
-            }
-            if (neighbors[2][0] != null && neighbors[1][0] == null && neighbors[2][1] == null) {
-                batch.draw(texLookup.get(t).get(neighbors[2][0])[COR], x * Const.TILE_SIZE, y * Const.TILE_SIZE, Const.TILE_SIZE / 2, Const.TILE_SIZE / 2, Const.TILE_SIZE, Const.TILE_SIZE, 1, 1, 90);
-            }
-
-            // middle pieces
-            if (neighbors[1][0] != null && neighbors[0][1] == null && neighbors[2][1] == null) {
-                batch.draw(texLookup.get(t).get(neighbors[1][0])[MID], x * Const.TILE_SIZE, y * Const.TILE_SIZE, Const.TILE_SIZE / 2, Const.TILE_SIZE / 2, Const.TILE_SIZE, Const.TILE_SIZE, 1, 1, 0);
-            }
-            if (neighbors[0][1] != null && neighbors[1][0] == null && neighbors[1][2] == null) {
-                batch.draw(texLookup.get(t).get(neighbors[0][1])[MID], x * Const.TILE_SIZE, y * Const.TILE_SIZE, Const.TILE_SIZE / 2, Const.TILE_SIZE / 2, Const.TILE_SIZE, Const.TILE_SIZE, 1, 1, -90);
-            }
-            if (neighbors[1][2] != null && neighbors[0][1] == null && neighbors[2][1] == null) {
-                batch.draw(texLookup.get(t).get(neighbors[1][2])[MID], x * Const.TILE_SIZE, y * Const.TILE_SIZE, Const.TILE_SIZE / 2, Const.TILE_SIZE / 2, Const.TILE_SIZE, Const.TILE_SIZE, 1, 1, 180);
-            }
-            if (neighbors[2][1] != null && neighbors[1][0] == null && neighbors[1][2] == null) {
-                batch.draw(texLookup.get(t).get(neighbors[2][1])[MID], x * Const.TILE_SIZE, y * Const.TILE_SIZE, Const.TILE_SIZE / 2, Const.TILE_SIZE / 2, Const.TILE_SIZE, Const.TILE_SIZE, 1, 1, 90);
-            }
-
-            /**
-             * 0,2 1,2 2,2
-             * 0,1 1,1 2,1
-             * 0,0 1,0 2,0
-             */
-            // holes vs inners
-            if (neighbors[1][0] != null && neighbors[0][1] == neighbors[1][0] && neighbors[1][2] == neighbors[0][1]) {
-                batch.draw(texLookup.get(t).get(neighbors[1][0])[HOL], x * Const.TILE_SIZE, y * Const.TILE_SIZE, Const.TILE_SIZE / 2, Const.TILE_SIZE / 2, Const.TILE_SIZE, Const.TILE_SIZE, 1, 1, 0);
-            } else if (neighbors[0][1] != null && neighbors[1][2] == neighbors[0][1] && neighbors[2][1] == neighbors[0][1]) {
-                batch.draw(texLookup.get(t).get(neighbors[0][1])[HOL], x * Const.TILE_SIZE, y * Const.TILE_SIZE, Const.TILE_SIZE / 2, Const.TILE_SIZE / 2, Const.TILE_SIZE, Const.TILE_SIZE, 1, 1, -90);
-            } else if (neighbors[1][0] != null && neighbors[1][2] == neighbors[1][0] && neighbors[2][1] == neighbors[1][0]) {
-                batch.draw(texLookup.get(t).get(neighbors[1][0])[HOL], x * Const.TILE_SIZE, y * Const.TILE_SIZE, Const.TILE_SIZE / 2, Const.TILE_SIZE / 2, Const.TILE_SIZE, Const.TILE_SIZE, 1, 1, 180);
-            } else if (neighbors[0][1] != null && neighbors[2][1] == neighbors[0][1] && neighbors[1][0] == neighbors[0][1]) {
-                batch.draw(texLookup.get(t).get(neighbors[0][1])[HOL], x * Const.TILE_SIZE, y * Const.TILE_SIZE, Const.TILE_SIZE / 2, Const.TILE_SIZE / 2, Const.TILE_SIZE, Const.TILE_SIZE, 1, 1, 90);
-            } else {
-                if (neighbors[1][0] != null && neighbors[0][1] == neighbors[1][0]) {
-                    batch.draw(texLookup.get(t).get(neighbors[1][0])[INN], x * Const.TILE_SIZE, y * Const.TILE_SIZE, Const.TILE_SIZE / 2, Const.TILE_SIZE / 2, Const.TILE_SIZE, Const.TILE_SIZE, 1, 1, 0);
-                }
-                if (neighbors[0][1] != null && neighbors[1][2] == neighbors[0][1]) {
-                    batch.draw(texLookup.get(t).get(neighbors[0][1])[INN], x * Const.TILE_SIZE, y * Const.TILE_SIZE, Const.TILE_SIZE / 2, Const.TILE_SIZE / 2, Const.TILE_SIZE, Const.TILE_SIZE, 1, 1, -90);
-                }
-                if (neighbors[2][1] != null && neighbors[1][2] == neighbors[2][1]) {
-                    batch.draw(texLookup.get(t).get(neighbors[2][1])[INN], x * Const.TILE_SIZE, y * Const.TILE_SIZE, Const.TILE_SIZE / 2, Const.TILE_SIZE / 2, Const.TILE_SIZE, Const.TILE_SIZE, 1, 1, 180);
-                }
-                if (neighbors[1][0] != null && neighbors[2][1] == neighbors[1][0]) {
-                    batch.draw(texLookup.get(t).get(neighbors[1][0])[INN], x * Const.TILE_SIZE, y * Const.TILE_SIZE, Const.TILE_SIZE / 2, Const.TILE_SIZE / 2, Const.TILE_SIZE, Const.TILE_SIZE, 1, 1, 90);
-                }
-            }
-        }
+        if (dirty || terrain.dirty) terrain.build();
+        terrain.draw(batch);
     }
 
-    public void setFrameBuffer(FrameBuffer fbo) {
-        this.fbo = fbo;
+    /**
+     * Rebuilds the terrain quads of all tiles that changed since they were last built
+     */
+    void buildTerrain() {
+        if (dataSet && (dirty || terrain.dirty)) terrain.build();
     }
 
-    @Override
-    public void draw(OrthographicCamera cam, OrthographicCamera fboCam, Viewport viewport, Batch batch) {
-        if (dirty) {
-            if (!dataSet) {
-                init();
-            }
-
-            batch.end();
-            fbo.begin();
-            Gdx.gl.glClear(GL20.GL_COLOR_BUFFER_BIT | GL20.GL_DEPTH_BUFFER_BIT);
-
-            batch.setProjectionMatrix(fboCam.combined);
-            batch.begin();
-
-            // set dirty before, so that spontaneous terrain changes can cause a rerender
-            dirty = false;
-
-            for (int i = 0; i < data.length; i++) {
-                byte b = (byte) (data[i] & 0xff);
-                int m = data[i] >> 8;
-
-                TileType t = Tile.tiles[b];
-
-                if (t.name == null)
-                    continue;
-
-                int x = (i / Const.CHUNK_SIZE);
-                int y = (i % Const.CHUNK_SIZE);
-                int tx = x * Const.TILE_SIZE;
-                int ty = y * Const.TILE_SIZE;
+    /**
+     * Cell containing the given absolute position, which has to lie in this chunk
+     */
+    Cell getCell(int x, int y) {
+        return cells[(x - ax) / CELL_SIZE * CELLS + (y - ay) / CELL_SIZE];
+    }
 
-                // don't draw it
-                if ((m & Tile.TileMeta.FOG_OF_WAR) == Tile.TileMeta.FOG_OF_WAR) {
-                    batch.draw(fogOfWar, tx, ty, Const.TILE_SIZE, Const.TILE_SIZE);
-                    continue;
-                }
+    /**
+     * Whether the given tile area, grown by a tile on every side, is visible to the camera
+     */
+    static boolean isVisible(OrthographicCamera cam, int x, int y, int maxX, int maxY) {
+        float w = cam.viewportWidth / 2 * cam.zoom;
+        float h = cam.viewportHeight / 2 * cam.zoom;
+        return cam.position.x - w < (maxX + 1) * Const.TILE_SIZE
+                && cam.position.y - h < (maxY + 1) * Const.TILE_SIZE
+                && cam.position.x + w > (x - 1) * Const.TILE_SIZE
+                && cam.position.y + h > (y - 1) * Const.TILE_SIZE;
+    }
 
-                if (t.base != null) {
-                    drawBaseTile(t.base, x, y, batch);
-                }
+    public void drawStructures(OrthographicCamera cam, DepthSpriter spriter, Bounds dirtyBounds) {
+        if (!dataSet) return;
 
-                TextureRegion tex = t.tex;
+        boolean rebuild = !glSet;
+        if (!glSet) initGL();
 
-                if ((m & Tile.TileMeta.ALT_TEX) == Tile.TileMeta.ALT_TEX) {
-                    // Clear wrong meta flag
-                    if ((t.meta & Tile.TileMeta.ALT_TEX) == 0) {
-                        m &= ~Tile.TileMeta.ALT_TEX;
-                    } else tex = t.texAlt;
-                }
+        Gdx.gl.glEnable(GL20.GL_BLEND);
 
-                if ((m & Tile.TileMeta.ROT_TEX) == Tile.TileMeta.ROT_TEX) {
-                    if ((t.meta & Tile.TileMeta.ROT_TEX) == 0) {
-                        m &= ~Tile.TileMeta.ROT_TEX;
-                    } else {
-                        int rot = 0;
-                        if ((m & Tile.TileMeta.ROT_TEX_90) == Tile.TileMeta.ROT_TEX_90)
-                            rot = 90;
-                        else if ((m & Tile.TileMeta.ROT_TEX_180) == Tile.TileMeta.ROT_TEX_180)
-                            rot = 180;
-                        else if ((m & Tile.TileMeta.ROT_TEX_270) == Tile.TileMeta.ROT_TEX_270)
-                            rot = 270;
-
-                        batch.draw(tex, tx, ty, Const.TILE_SIZE / 2, Const.TILE_SIZE / 2, Const.TILE_SIZE, Const.TILE_SIZE, 1, 1, rot);
+        synchronized (structLock) {
+            for (Cell cell : cells) {
+                if (rebuild || dirtyBounds.intersects(cell.x, cell.y, cell.maxX - cell.x, cell.maxY - cell.y)) {
+                    if (cell.builder == null) {
+                        if (cell.isEmpty()) continue;
+                        cell.builder = new MeshBuilderDelegate(attributes, Quarry.Q.atlas.getTextures().first());
                     }
-                } else if ((m & TileMeta.BASE_TILE) == TileMeta.BASE_TILE) {
-                    drawBaseTile(t, x, y, batch);
-                } else {
-                    batch.draw(tex, tx, ty, Const.TILE_SIZE, Const.TILE_SIZE);
-                }
 
-                // do not need the out of bounds checks, since getMeta does that too
-
-                // tile above is in FOW
-                if ((layer.getMeta(ax + x, ay + y + 1) & TileMeta.FOG_OF_WAR) == TileMeta.FOG_OF_WAR) {
-                    batch.draw(fogOverhang, tx, ty, Const.TILE_SIZE, Const.TILE_SIZE);
-                }
-                // tile below is in FOW
-                if ((layer.getMeta(ax + x, ay + y - 1) & TileMeta.FOG_OF_WAR) == TileMeta.FOG_OF_WAR) {
-                    batch.draw(fogOverhang, tx, ty, Const.TILE_SIZE / 2, Const.TILE_SIZE / 2, Const.TILE_SIZE, Const.TILE_SIZE, 1, 1, 180);
-                }
-                // tile left is in FOW
-                if ((layer.getMeta(ax + x - 1, ay + y) & TileMeta.FOG_OF_WAR) == TileMeta.FOG_OF_WAR) {
-                    batch.draw(fogOverhang, tx, ty, Const.TILE_SIZE / 2, Const.TILE_SIZE / 2, Const.TILE_SIZE, Const.TILE_SIZE, 1, 1, 90);
-                }
-                // tile right is in FOW
-                if ((layer.getMeta(ax + x + 1, ay + y) & TileMeta.FOG_OF_WAR) == TileMeta.FOG_OF_WAR) {
-                    batch.draw(fogOverhang, tx, ty, Const.TILE_SIZE / 2, Const.TILE_SIZE / 2, Const.TILE_SIZE, Const.TILE_SIZE, 1, 1, 270);
-                }
-
-                // check corners
-                // bottom left
-                if ((layer.getMeta(ax + x - 1, ay + y - 1) & TileMeta.FOG_OF_WAR) == TileMeta.FOG_OF_WAR
-                        && (layer.getMeta(ax + x - 1, ay + y) & TileMeta.FOG_OF_WAR) != TileMeta.FOG_OF_WAR
-                        && (layer.getMeta(ax + x, ay + y - 1) & TileMeta.FOG_OF_WAR) != TileMeta.FOG_OF_WAR) {
-                    batch.draw(fogOverhangInner, tx, ty, Const.TILE_SIZE / 2, Const.TILE_SIZE / 2, Const.TILE_SIZE, Const.TILE_SIZE, 1, 1, 180);
-                }
-
-                // top left
-                if ((layer.getMeta(ax + x - 1, ay + y + 1) & TileMeta.FOG_OF_WAR) == TileMeta.FOG_OF_WAR
-                        && (layer.getMeta(ax + x - 1, ay + y) & TileMeta.FOG_OF_WAR) != TileMeta.FOG_OF_WAR
-                        && (layer.getMeta(ax + x, ay + y + 1) & TileMeta.FOG_OF_WAR) != TileMeta.FOG_OF_WAR) {
-                    batch.draw(fogOverhangInner, tx, ty, Const.TILE_SIZE / 2, Const.TILE_SIZE / 2, Const.TILE_SIZE, Const.TILE_SIZE, 1, 1, 90);
-                }
-
-                // bottom right
-                if ((layer.getMeta(ax + x + 1, ay + y - 1) & TileMeta.FOG_OF_WAR) == TileMeta.FOG_OF_WAR
-                        && (layer.getMeta(ax + x + 1, ay + y) & TileMeta.FOG_OF_WAR) != TileMeta.FOG_OF_WAR
-                        && (layer.getMeta(ax + x, ay + y - 1) & TileMeta.FOG_OF_WAR) != TileMeta.FOG_OF_WAR) {
-                    batch.draw(fogOverhangInner, tx, ty, Const.TILE_SIZE / 2, Const.TILE_SIZE / 2, Const.TILE_SIZE, Const.TILE_SIZE, 1, 1, -90);
+                    cell.builder.begin();
+                    for (Structure<?> st : cell.structures.items) {
+                        if (st == null) break;
+                        st.draw(cell.builder);
+                    }
+                    for (CopperCable st : cell.cables.items) {
+                        if (st == null) break;
+                        st.draw(cell.builder);
+                    }
+                    cell.builder.end();
                 }
 
-                // top right
-                if ((layer.getMeta(ax + x + 1, ay + y + 1) & TileMeta.FOG_OF_WAR) == TileMeta.FOG_OF_WAR
-                        && (layer.getMeta(ax + x + 1, ay + y) & TileMeta.FOG_OF_WAR) != TileMeta.FOG_OF_WAR
-                        && (layer.getMeta(ax + x, ay + y + 1) & TileMeta.FOG_OF_WAR) != TileMeta.FOG_OF_WAR) {
-                    batch.draw(fogOverhangInner, tx, ty, Const.TILE_SIZE / 2, Const.TILE_SIZE / 2, Const.TILE_SIZE, Const.TILE_SIZE, 1, 1, 0);
-                }
+                if (cell.builder == null || !isVisible(cam, cell.x, cell.y, cell.maxX, cell.maxY)) continue;
 
-                if (ay + y == layer.height - 1) {
-                    batch.draw(overhang, tx, ty, Const.TILE_SIZE, Const.TILE_SIZE);
-                }
-                if (ay + y == 0) {
-                    batch.draw(overhang, tx, ty, Const.TILE_SIZE / 2, Const.TILE_SIZE / 2, Const.TILE_SIZE, Const.TILE_SIZE, 1, 1, 180);
-                }
-                if (ax + x == 0) {
-                    batch.draw(overhang, tx, ty, Const.TILE_SIZE / 2, Const.TILE_SIZE / 2, Const.TILE_SIZE, Const.TILE_SIZE, 1, 1, 90);
-                }
-                if (ax + x == layer.width - 1) {
-                    batch.draw(overhang, tx, ty, Const.TILE_SIZE / 2, Const.TILE_SIZE / 2, Const.TILE_SIZE, Const.TILE_SIZE, 1, 1, 270);
-                }
+                Mesh mesh = cell.builder.getMesh();
+                if (mesh != null)
+                    mesh.render(spriter.getShader(), GL20.GL_TRIANGLES);
             }
-
-            batch.end();
-
-            fbo.end();
-
-            fbo.getColorBufferTexture().setFilter(TextureFilter.Nearest, TextureFilter.Nearest);
-
-            if (viewport != null) viewport.apply();
-
-            batch.setProjectionMatrix(cam.combined);
-            batch.begin();
         }
-
-        if (!dataSet) return;
-        batch.draw(fbo.getColorBufferTexture(), x * Const.CHUNK_FULL_SIZE, y * Const.CHUNK_FULL_SIZE, Const.CHUNK_FULL_SIZE, Const.CHUNK_FULL_SIZE, 0, 0, 1, 1);
     }
 
-    public void drawStructures(DepthSpriter spriter, Bounds dirtyBounds) {
+    public void drawFrameStructures(OrthographicCamera cam, DepthSpriter spriter, ShapeRenderer shaper, SpriterDelegateBatch pfxBatch) {
         if (!dataSet) return;
 
-        if (isInDirtyBounds(dirtyBounds) || !glSet) {
-            if (!glSet) initGL();
+        synchronized (structLock) {
+            for (Cell cell : cells) {
+                boolean visible = isVisible(cam, cell.x, cell.y, cell.maxX, cell.maxY);
 
-            builder.begin();
-            synchronized (structLock) {
-                for (Structure<?> st : structures.items) {
+                for (Structure<?> st : cell.structures.items) {
                     if (st == null) break;
-                    st.draw(builder);
-                }
-                for (Entry<CopperCable> st : cables.entries()) {
-                    st.value.draw(builder);
-                }
-            }
-            builder.end();
-        }
-
-        Gdx.gl.glEnable(GL20.GL_BLEND);
-        Mesh mesh = builder.getMesh();
-        if (mesh != null)
-            mesh.render(spriter.getShader(), GL20.GL_TRIANGLES);
-    }
-
-    public void drawFrameStructures(DepthSpriter spriter, ShapeRenderer shaper, SpriterDelegateBatch pfxBatch) {
-        if (!dataSet) return;
-
-        synchronized (structLock) {
-            for (Structure<?> st : structures.items) {
-                if (st == null) break;
-                st.drawFrame(spriter, shaper, pfxBatch);
-            }
-            if (Game.DRAW_DEBUG) {
-                for (Entry<CopperCable> st : cables.entries()) {
-                    st.value.drawFrame(spriter, shaper, pfxBatch);
+                    if (!st.isFrameCullable()
+                            || (visible && isVisible(cam, st.x, st.y, st.x + st.getWidth(), st.y + st.getHeight())))
+                        st.drawFrame(spriter, shaper, pfxBatch);
+                }
+                if (Game.DRAW_DEBUG && visible) {
+                    for (CopperCable st : cell.cables.items) {
+                        if (st == null) break;
+                        st.drawFrame(spriter, shaper, pfxBatch);
+                    }
                 }
             }
         }
@@ -530,6 +462,9 @@ public class Chunk implements Disposable, FBOable, Savable {
 
         CopperCable c = cables.remove(x * Const.CHUNK_SIZE + y);
         if (c != null) {
+            changed = true;
+            layer.collisionChanges++;
+            getCell(c.x, c.y).cables.removeValue(c, true);
             c.onDestroy();
             layer.dirtyBounds.add(c, Flags.DESTRUCTION);
             return true;
@@ -545,11 +480,16 @@ public class Chunk implements Disposable, FBOable, Savable {
             Structure<?> q = spatial.remove(x * Const.CHUNK_SIZE + y);
 
             if (q != null) {
+                changed = true;
+
                 for (int i = 0; i < q.getWidth(); i++)
                     for (int j = 0; j < q.getHeight(); j++)
                         removeSpatial(q.x + i, q.y + j);
 
                 structures.removeValue(q, true);
+                Cell cell = getCell(q.x, q.y);
+                cell.structures.removeValue(q, true);
+                cell.updateBounds();
 
                 // recalc bound box
                 maxX = ax + Const.CHUNK_SIZE;
@@ -605,6 +545,14 @@ public class Chunk implements Disposable, FBOable, Savable {
     }
 
     public boolean addStructure(Structure<?> s, boolean fromLoading) {
+        return addStructure(s, fromLoading, false);
+    }
+
+    /**
+     * @param batched part of {@link Layer#addStructures(Array)}, which marks the dirty region, notifies docks and
+     *            places the structures once all of them are in
+     */
+    boolean addStructure(Structure<?> s, boolean fromLoading, boolean batched) {
         if (!dataSet) {
             init();
         }
@@ -618,6 +566,7 @@ public class Chunk implements Disposable, FBOable, Savable {
                     return false;
 
                 cables.put(m, (CopperCable) s);
+                getCell(s.x, s.y).cables.add((CopperCable) s);
             } else {
                 for (int i = 0; i < s.getWidth(); i++) {
                     for (int j = 0; j < s.getHeight(); j++) {
@@ -640,23 +589,35 @@ public class Chunk implements Disposable, FBOable, Savable {
                 maxY = Math.max(maxY, s.y + s.getHeight());
 
                 structures.add(s);
+
+                Cell cell = getCell(s.x, s.y);
+                cell.structures.add(s);
+                cell.maxX = Math.max(cell.maxX, s.x + s.getWidth());
+                cell.maxY = Math.max(cell.maxY, s.y + s.getHeight());
             }
 
             if (!(s instanceof CopperCable))
                 layer.setCollision(s, true);
+            else
+                layer.collisionChanges++;
 
             if (!fromLoading) {
-                layer.dirtyBounds.add(s, Flags.CONSTRUCTION);
+                changed = true;
 
-                // notify dock spots in case they're tubes
-                for (Dock d : s.getDocks()) {
-                    layer.setItemNotification(s.x + d.x + d.dir.dx, s.y + d.y + d.dir.dy);
+                if (!batched) {
+                    layer.dirtyBounds.add(s, Flags.CONSTRUCTION);
+
+                    // notify dock spots in case they're tubes
+                    for (Dock d : s.getDocks()) {
+                        layer.setItemNotification(s.x + d.x + d.dir.dx, s.y + d.y + d.dir.dy);
+                    }
                 }
             }
 
             // quick access 
             if (s instanceof StorageStructure) {
                 layer.storages.add((StorageStructure) s);
+                ((StorageStructure) s).registerHoldings();
             } else if (s instanceof Conveyor) {
                 conveyors.add((Conveyor) s);
             }
@@ -668,7 +629,7 @@ public class Chunk implements Disposable, FBOable, Savable {
             }
         }
 
-        s.onPlacement(fromLoading);
+        if (!batched) s.onPlacement(fromLoading);
 
         return true;
     }
@@ -702,22 +663,37 @@ public class Chunk implements Disposable, FBOable, Savable {
 
     @Override
     public void dispose() {
-        if (builder != null && builder.getMesh() != null) {
-            builder.dispose();
+        if (cells != null) {
+            for (Cell cell : cells) {
+                if (cell.builder != null && cell.builder.getMesh() != null) {
+                    cell.builder.dispose();
+                }
+                cell.builder = null;
+            }
         }
         glSet = false;
+        terrain.dispose();
         dirty = true;
     }
 
     @Override
     public void save(Builder b) {
+        b.Compound();
+        saveContent(b);
+        b.End();
+    }
+
+    /**
+     * Writes the fields of this chunk into the currently open compound of the builder
+     */
+    public void saveContent(Builder b) {
         if (!dataSet) init();
 
         b
-                .Compound()
                 .Byte("x", (byte) x)
                 .Byte("y", (byte) y)
-                .ShortArray("data", data);
+                // copied, the tag might be written out after the chunk has changed again
+                .ShortArray("data", data.clone());
 
         synchronized (structLock) {
             b.List("Structures", TagType.Compound);
@@ -731,8 +707,6 @@ public class Chunk implements Disposable, FBOable, Savable {
             }
             b.End();
         }
-
-        b.End();
     }
 
     public void postLoad() {
@@ -761,66 +735,9 @@ public class Chunk implements Disposable, FBOable, Savable {
         }
     }
 
-    private static void initTexCache() {
-        HashMap<TileType, TextureRegion[]> stone = new HashMap<>();
-        stone.put(TileType.Dirt, new TextureRegion[] {
-                Quarry.Q.atlas.findRegion("tile_dirt_corner"),
-                Quarry.Q.atlas.findRegion("tile_dirt_inner"),
-                Quarry.Q.atlas.findRegion("tile_dirt_middle"),
-                Quarry.Q.atlas.findRegion("tile_dirt_hole"),
-        });
-        stone.put(TileType.CrudeOil, new TextureRegion[] {
-                Quarry.Q.atlas.findRegion("tile_crude_oil_corner"),
-                Quarry.Q.atlas.findRegion("tile_crude_oil_inner"),
-                Quarry.Q.atlas.findRegion("tile_crude_oil_middle"),
-                Quarry.Q.atlas.findRegion("tile_crude_oil_hole"),
-        });
-
-        HashMap<TileType, TextureRegion[]> dirt = new HashMap<>();
-        dirt.put(TileType.CrudeOil, new TextureRegion[] {
-                Quarry.Q.atlas.findRegion("tile_crude_oil_dirt_corner"),
-                Quarry.Q.atlas.findRegion("tile_crude_oil_dirt_inner"),
-                Quarry.Q.atlas.findRegion("tile_crude_oil_dirt_middle"),
-                Quarry.Q.atlas.findRegion("tile_crude_oil_dirt_hole"),
-        });
-
-        texLookup.put(TileType.Stone, stone);
-        texLookup.put(TileType.Dirt, dirt);
-    }
-
-    public void loadStructures(CompoundTag tag) throws NBTException {
-        try {
-            for (Tag t : tag.List("Structures", TagType.Compound).data) {
-                try {
-                    Structure<?> s = Structure.load((CompoundTag) t);
-                    if (s != null)
-                        addStructure(s, true);
-                } catch (NBTException e) {
-                    Quarry.Q.pi.message(PlatformInterface.MSG_EXCEPTION, e);
-                }
-            }
-        } catch (NBTException e1) {
-            Quarry.Q.pi.message(PlatformInterface.MSG_EXCEPTION, e1);
-        }
-        try {
-            for (Tag t : tag.List("Cables", TagType.Compound).data) {
-                try {
-                    Structure<?> s = Structure.load((CompoundTag) t);
-                    if (s != null)
-                        addStructure(s, true);
-                } catch (NBTException e) {
-                    Quarry.Q.pi.message(PlatformInterface.MSG_EXCEPTION, e);
-                }
-            }
-        } catch (NBTException e) {
-            Quarry.Q.pi.message(PlatformInterface.MSG_EXCEPTION, e);
-        }
-    }
-
     public static Chunk load(CompoundTag tag, Layer layer) throws NBTException {
         Chunk c = new Chunk(tag.Byte("x"), tag.Byte("y"), layer);
         c.init();
-        c.data = new short[Const.CHUNK_SIZE * Const.CHUNK_SIZE];
         System.arraycopy(tag.ShortArray("data"), 0, c.data, 0, c.data.length);
 
         return c;
@@ -16,6 +16,7 @@
 
 package de.dakror.quarry.game;
 
+import com.badlogic.gdx.utils.Pool;
 import com.badlogic.gdx.utils.Pool.Poolable;
 
 import de.dakror.common.libgdx.io.NBT.Builder;
@@ -26,12 +27,33 @@ import de.dakror.quarry.game.Item.ItemType;
 import de.dakror.quarry.scenes.Game;
 import de.dakror.quarry.structure.base.Direction;
 import de.dakror.quarry.structure.base.Structure;
+import de.dakror.quarry.structure.base.StructureCodec;
 import de.dakror.quarry.util.Savable;
 
 /**
  * @author Maximilian Stark | Dakror
  */
 public class ItemEntity implements Poolable, Savable {
+    // conveyors of different chunks may be updated in parallel
+    static final Pool<ItemEntity> pool = new Pool<ItemEntity>() {
+        @Override
+        protected ItemEntity newObject() {
+            return new ItemEntity();
+        }
+    };
+
+    public static ItemEntity obtain() {
+        synchronized (pool) {
+            return pool.obtain();
+        }
+    }
+
+    public static void free(ItemEntity e) {
+        synchronized (pool) {
+            pool.free(e);
+        }
+    }
+
     public ItemType item;
     public int x, y, slot, lastSlot;
     public float z;
@@ -104,6 +126,41 @@ public class ItemEntity implements Poolable, Savable {
         srcLayer = tag.Int("layer", 0);
     }
 
+    /**
+     * Positional counterpart of {@link #save(Builder)}, for the items on conveyors
+     */
+    public void encode(StructureCodec.Writer w) {
+        w.putShort(item.value);
+        w.putInt(x);
+        w.putInt(y);
+        w.putShort(slot);
+        w.putShort(lastSlot);
+        w.putDouble(interp);
+        w.putFloat(z);
+        w.putByte(dir == null ? -1 : dir.ordinal());
+        if (src == null) {
+            w.putInt(-1);
+        } else {
+            w.putInt(src.x * src.layer.height + src.y);
+            w.putShort(src.layer.index);
+        }
+    }
+
+    public void decode(StructureCodec.Reader r) throws NBTException {
+        item = Item.get(r.getShort());
+        x = r.getInt();
+        y = r.getInt();
+        slot = r.getShort();
+        lastSlot = r.getShort();
+        interp = r.getDouble() % 1.0;
+        z = r.getFloat();
+
+        int d = r.getByte();
+        dir = d > -1 ? Direction.values[d] : null;
+        srcIndex = r.getInt();
+        srcLayer = srcIndex > -1 ? r.getShort() : 0;
+    }
+
     public void postLoad() {
         if (srcIndex > -1) {
             Layer l = Game.G.getLayer(srcLayer);
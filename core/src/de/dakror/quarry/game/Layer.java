@@ -16,7 +16,15 @@
 
 package de.dakror.quarry.game;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.EnumMap;
 import java.util.EnumSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.graphics.Color;
@@ -28,7 +36,9 @@ import com.badlogic.gdx.graphics.glutils.ShapeRenderer;
 import com.badlogic.gdx.graphics.glutils.ShapeRenderer.ShapeType;
 import com.badlogic.gdx.utils.Array;
 import com.badlogic.gdx.utils.Disposable;
-import com.badlogic.gdx.utils.viewport.Viewport;
+import com.badlogic.gdx.utils.IntArray;
+import com.badlogic.gdx.utils.IntSet;
+import com.badlogic.gdx.utils.ObjectFloatMap;
 
 import de.dakror.common.libgdx.ChangeNotifier.Event;
 import de.dakror.common.libgdx.ChangeNotifier.Listener;
@@ -64,9 +74,16 @@ import de.dakror.quarry.util.SpriterDelegateBatch;
  * @author Maximilian Stark | Dakror
  */
 public class Layer implements Disposable, Savable, Listener<Layer> {
-    Chunk[] chunks;
+    // stands in for the chunks while the layer is paged out
+    static final Chunk[] PAGED = new Chunk[0];
+
+    // only ever replaced as a whole, so lock free readers see either all old or all new chunks
+    volatile Chunk[] chunks;
+    final int chunkCount;
 
     byte[] flags;
+    // bumped whenever collisions, cables or the fog of war change
+    volatile int collisionChanges;
 
     public static final int FLAG_STRUCTURE_COLLISION = 1 << 0;
     public static final int FLAG_TUBE_COLLISION = 1 << 1;
@@ -77,6 +94,10 @@ public class Layer implements Disposable, Savable, Listener<Layer> {
     // fast access arrays
     public Array<StorageStructure> storages;
 
+    // storages by the items they hold, may contain stale entries until the next getHolders call
+    final EnumMap<ItemType, Array<StorageStructure>> holders = new EnumMap<>(ItemType.class);
+    final Object holderLock = new Object();
+
     public EnumSet<ItemType> minerals;
 
     Array<PooledEffect> pfxBelow, pfxAbove;
@@ -84,6 +105,8 @@ public class Layer implements Disposable, Savable, Listener<Layer> {
     final Object chunkLock = new Object();
     final Object pfxLock = new Object();
     final Object loudnessLock = new Object();
+    // serializes tile writes, reads go straight to the chunk data
+    final Object tileLock = new Object();
 
     public int width;
     public int height;
@@ -97,6 +120,13 @@ public class Layer implements Disposable, Savable, Listener<Layer> {
 
     float[] loudness, initialLoudness, intermediateLoudness;
     boolean updateLoudnessFlag;
+    // loudness each structure has written into initialLoudness, the two maps are swapped after every
+    // recalculation so structures missing from the new one are known to be gone
+    ObjectFloatMap<Structure<?>> loudnessSources = new ObjectFloatMap<>();
+    ObjectFloatMap<Structure<?>> lastLoudnessSources = new ObjectFloatMap<>();
+    final Array<Structure<?>> changedLoudnessSources = new Array<>();
+    // tiles whose initial loudness changed since the last recalculation
+    int loudnessMinX, loudnessMinY, loudnessMaxX, loudnessMaxY;
     static float[] kernel;
     static int kernelSize = 4; // 2 * kernelSize + 1 = final size
     static float[] zeros;
@@ -107,8 +137,18 @@ public class Layer implements Disposable, Savable, Listener<Layer> {
 
     boolean initialized;
 
+    // the chunks as written by save(SaveFile.Writer) while the layer is paged out, see pageOut()
+    volatile byte[] paged;
+
     public boolean fake;
 
+    Chunk[][] chunkColors;
+    static ExecutorService updatePool;
+    static int updatePoolThreads;
+
+    // set while the chunks of one color are updated, see addDirty(Structure, int)
+    boolean deferDirty;
+
     public final Bounds dirtyBounds = new Bounds();
     public final Bounds lastBounds = new Bounds();
     public final Bounds pendingBounds = new Bounds();
@@ -124,38 +164,36 @@ public class Layer implements Disposable, Savable, Listener<Layer> {
         storages = new Array<>();
         minerals = EnumSet.noneOf(ItemType.class);
 
-        chunks = new Chunk[(initialWidth / Const.CHUNK_SIZE) * (initialHeight / Const.CHUNK_SIZE)];
+        chunkCount = (initialWidth / Const.CHUNK_SIZE) * (initialHeight / Const.CHUNK_SIZE);
+        chunks = new Chunk[chunkCount];
 
         pfxAbove = new Array<>(false, 100);
         pfxBelow = new Array<>(false, 100);
 
         if (initChunks) {
             initChunks();
-            for (int i = 0; i < width; i += Const.CHUNK_SIZE) {
-                for (int j = 0; j < height; j += Const.CHUNK_SIZE) {
-                    Chunk c = chunks[i / Const.CHUNK_SIZE * chunksH + j / Const.CHUNK_SIZE];
-                    c.setFrameBuffer(Quarry.Q.chunkFBOs[i / Const.CHUNK_SIZE * chunksH + j / Const.CHUNK_SIZE]);
-                }
-            }
         }
     }
 
     @Override
     public void onChangeEvent(Event<Layer> event) {
-        if (event.getData() != null && Math.abs(event.getData().getIndex() - getIndex()) > 3) {
+        if (event.getData() != null && Math.abs(event.getData().getIndex() - getIndex()) > Game.PAGE_DISTANCE) {
             dispose();
+            releaseLoudness();
         }
     }
 
     public void initChunks() {
         chunksH = (int) Math.ceil(height / Const.CHUNK_SIZE);
 
+        Chunk[] cs = new Chunk[chunkCount];
         for (int i = 0; i < width; i += Const.CHUNK_SIZE) {
             for (int j = 0; j < height; j += Const.CHUNK_SIZE) {
                 Chunk c = new Chunk((i / Const.CHUNK_SIZE), (j / Const.CHUNK_SIZE), this);
-                chunks[i / Const.CHUNK_SIZE * chunksH + j / Const.CHUNK_SIZE] = c;
+                cs[i / Const.CHUNK_SIZE * chunksH + j / Const.CHUNK_SIZE] = c;
             }
         }
+        chunks = cs;
     }
 
     public void addParticleEffect(PooledEffect e, boolean below) {
@@ -204,45 +242,45 @@ public class Layer implements Disposable, Savable, Listener<Layer> {
                         }
 
                     }
+
+                    // everything has to be blurred once
+                    loudnessMinX = 0;
+                    loudnessMinY = 0;
+                    loudnessMaxX = width - 1;
+                    loudnessMaxY = height - 1;
                 }
 
+                // only structures whose loudness changed are written
                 for (Chunk c : getChunks()) {
                     if (c != null && c.isInit()) {
                         for (Structure<?> s : c.getStructures()) {
                             float l = s.getLoudness();
-                            for (int i = 0; i < s.getWidth(); i++) {
-                                for (int j = 0; j < s.getHeight(); j++) {
-                                    initialLoudness[(s.x + i) * height + (s.y + j)] = l;
-                                }
-                            }
+                            if (lastLoudnessSources.get(s, -1) != l) changedLoudnessSources.add(s);
+                            loudnessSources.put(s, l);
                         }
                     }
                 }
 
-                // column by column
-                for (int i = 0; i < width; i++) {
-                    for (int j = 0; j < height; j++) {
-                        float sum = 0;
-                        for (int k = -kernelSize; k <= kernelSize; k++) {
-                            if (j + k < 0 || j + k >= height) continue;
-                            sum += initialLoudness[i * height + j + k] * kernel[k + kernelSize];
-                        }
-                        intermediateLoudness[i * height + j] = sum;
-                    }
+                // silence structures that are gone before the changed ones are written, they might share tiles
+                for (ObjectFloatMap.Entry<Structure<?>> e : lastLoudnessSources) {
+                    if (!loudnessSources.containsKey(e.key)) setInitialLoudness(e.key, 0);
                 }
 
-                // row by row
-                for (int i = 0; i < height; i++) {
-                    for (int j = 0; j < width; j++) {
-                        float sum = 0;
-                        for (int k = -kernelSize; k <= kernelSize; k++) {
-                            if (j + k < 0 || j + k >= width) continue;
-                            sum += intermediateLoudness[(j + k) * height + i] * kernel[k + kernelSize];
-                        }
+                for (Structure<?> s : changedLoudnessSources) {
+                    setInitialLoudness(s, loudnessSources.get(s, 0));
+                }
+                changedLoudnessSources.clear();
 
-                        // clamp down
-                        loudness[j * height + i] = Math.min(1, sum / Const.MAX_LOUDNESS);
-                    }
+                ObjectFloatMap<Structure<?>> sources = lastLoudnessSources;
+                lastLoudnessSources = loudnessSources;
+                loudnessSources = sources;
+                loudnessSources.clear();
+
+                if (loudnessMinX <= loudnessMaxX) {
+                    blurLoudness(loudnessMinX, loudnessMinY, loudnessMaxX, loudnessMaxY);
+
+                    loudnessMinX = loudnessMinY = Integer.MAX_VALUE;
+                    loudnessMaxX = loudnessMaxY = -1;
                 }
 
                 lastLoudnessCalculation = 1;
@@ -251,15 +289,120 @@ public class Layer implements Disposable, Savable, Listener<Layer> {
         }
     }
 
+    /**
+     * Drops the loudness buffers, they are only kept up to date for the active layer. Everything is written and blurred
+     * again when the layer becomes active.
+     */
+    void releaseLoudness() {
+        synchronized (loudnessLock) {
+            loudness = null;
+            intermediateLoudness = null;
+            initialLoudness = null;
+            loudnessSources.clear();
+            lastLoudnessSources.clear();
+            changedLoudnessSources.clear();
+        }
+    }
+
+    void setInitialLoudness(Structure<?> s, float l) {
+        int x0 = Math.max(0, s.x), y0 = Math.max(0, s.y);
+        int x1 = Math.min(width - 1, s.x + s.getWidth() - 1), y1 = Math.min(height - 1, s.y + s.getHeight() - 1);
+        if (x0 > x1 || y0 > y1) return;
+
+        for (int i = x0; i <= x1; i++) {
+            for (int j = y0; j <= y1; j++) {
+                initialLoudness[i * height + j] = l;
+            }
+        }
+
+        loudnessMinX = Math.min(loudnessMinX, x0);
+        loudnessMinY = Math.min(loudnessMinY, y0);
+        loudnessMaxX = Math.max(loudnessMaxX, x1);
+        loudnessMaxY = Math.max(loudnessMaxY, y1);
+    }
+
+    /**
+     * Separable gaussian over the initial loudness, restricted to what the given rectangle of changed tiles can reach
+     */
+    void blurLoudness(int minX, int minY, int maxX, int maxY) {
+        int y0 = Math.max(0, minY - kernelSize);
+        int y1 = Math.min(height - 1, maxY + kernelSize);
+        int x0 = Math.max(0, minX - kernelSize);
+        int x1 = Math.min(width - 1, maxX + kernelSize);
+
+        // column by column, only the changed columns
+        for (int i = minX; i <= maxX; i++) {
+            for (int j = y0; j <= y1; j++) {
+                float sum = 0;
+                for (int k = -kernelSize; k <= kernelSize; k++) {
+                    if (j + k < 0 || j + k >= height) continue;
+                    sum += initialLoudness[i * height + j + k] * kernel[k + kernelSize];
+                }
+                intermediateLoudness[i * height + j] = sum;
+            }
+        }
+
+        // row by row
+        for (int i = y0; i <= y1; i++) {
+            for (int j = x0; j <= x1; j++) {
+                float sum = 0;
+                for (int k = -kernelSize; k <= kernelSize; k++) {
+                    if (j + k < 0 || j + k >= width) continue;
+                    sum += intermediateLoudness[(j + k) * height + i] * kernel[k + kernelSize];
+                }
+
+                // clamp down
+                loudness[j * height + i] = Math.min(1, sum / Const.MAX_LOUDNESS);
+            }
+        }
+    }
+
     long timeSum = 0;
     long last = 0;
 
+    /**
+     * With {@link Game#UPDATE_THREADS} set, structures are updated on a fixed schedule instead of strictly chunk by chunk:
+     * first everything that is not chunk local in chunk order, then the chunks in nine color classes of a 3x3 pattern.
+     * {@link Structure#isChunkLocal() Chunk local} structures never reach further than into the neighboring chunks, so
+     * chunks of the same color never interact and can be updated concurrently. While a color runs, {@link #dirtyBounds}
+     * is only read. What gets dirty goes through {@link #addDirty(Structure, int)} into per chunk buffers, which are
+     * merged in chunk order once the color is done. Running that schedule on one thread or many therefore gives the
+     * same result.
+     */
     public void update(double deltaTime, int gameSpeed) {
         synchronized (chunkLock) {
-            for (Chunk c : chunks)
-                c.update(deltaTime, gameSpeed, dirtyBounds);
+            if (Game.UPDATE_THREADS > 0) {
+                for (Chunk c : chunks)
+                    c.updateShared(deltaTime, gameSpeed, dirtyBounds);
+
+                if (chunkColors == null) initChunkColors();
+
+                for (Chunk[] color : chunkColors) {
+                    deferDirty = true;
+                    try {
+                        if (Game.UPDATE_THREADS > 1 && color.length > 1) {
+                            updateParallel(color, deltaTime, gameSpeed);
+                        } else {
+                            for (Chunk c : color)
+                                c.updateLocal(deltaTime, gameSpeed, dirtyBounds);
+                        }
+                    } finally {
+                        deferDirty = false;
+                        mergeDirty();
+                    }
+                }
+            } else {
+                for (Chunk c : chunks)
+                    c.update(deltaTime, gameSpeed, dirtyBounds);
+            }
             for (Chunk c : chunks)
                 c.postUpdate(dirtyBounds);
+
+            // the terrain of the visible layer is brought up to date here, so drawing only has to submit it
+            if (Game.G.layer == this && !Game.G.isHeadless()) {
+                for (Chunk c : chunks)
+                    c.buildTerrain();
+            }
         }
 
         synchronized (pfxLock) {
@@ -305,8 +448,107 @@ public class Layer implements Disposable, Savable, Listener<Layer> {
         }
     }
 
-    public void draw(OrthographicCamera cam, OrthographicCamera fboCam, Viewport viewport,
-            Batch batch, DepthSpriter spriter, ShapeRenderer shaper, SpriterDelegateBatch delegateBatch) {
+    /**
+     * Marks the area of the structure as dirty. While the chunks of a color are updated, the rect goes into the buffer
+     * of the structure's chunk instead, so the workers never write to {@link #dirtyBounds} while others read it.
+     */
+    public void addDirty(Structure<?> s, int flags) {
+        if (deferDirty) {
+            Chunk c = getChunk(s.x, s.y);
+            if (c != null) {
+                synchronized (c.pendingDirty) {
+                    c.pendingDirty.add(s, flags);
+                }
+                return;
+            }
+        }
+
+        dirtyBounds.add(s, flags);
+    }
+
+    /**
+     * Moves the rects buffered during a color into {@link #dirtyBounds}, always in chunk order
+     */
+    private void mergeDirty() {
+        for (Chunk c : chunks) {
+            if (!c.pendingDirty.isEmpty()) {
+                dirtyBounds.add(c.pendingDirty);
+                c.pendingDirty.clear();
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void initChunkColors() {
+        Array<Chunk>[] colors = new Array[9];
+        for (int i = 0; i < colors.length; i++)
+            colors[i] = new Array<>(Chunk.class);
+
+        for (Chunk c : chunks)
+            colors[(c.x % 3) * 3 + c.y % 3].add(c);
+
+        Chunk[][] result = new Chunk[9][];
+        for (int i = 0; i < colors.length; i++)
+            result[i] = colors[i].toArray();
+
+        chunkColors = result;
+    }
+
+    private void updateParallel(final Chunk[] color, final double deltaTime, final int gameSpeed) {
+        if (updatePool == null || updatePoolThreads != Game.UPDATE_THREADS) {
+            if (updatePool != null) updatePool.shutdown();
+            updatePoolThreads = Game.UPDATE_THREADS;
+            updatePool = Executors.newFixedThreadPool(updatePoolThreads, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "Chunk update");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+
+        final int stripes = Math.min(updatePoolThreads, color.length);
+        final CountDownLatch latch = new CountDownLatch(stripes);
+        final Throwable[] error = new Throwable[1];
+
+        for (int i = 0; i < stripes; i++) {
+            final int stripe = i;
+            updatePool.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int j = stripe; j < color.length; j += stripes)
+                            color[j].updateLocal(deltaTime, gameSpeed, dirtyBounds);
+                    } catch (Throwable t) {
+                        error[0] = t;
+                    } finally {
+                        latch.countDown();
+                    }
+                }
+            });
+        }
+
+        // the next color must not start while this one is still running, so
+        // interrupts are only passed on once all workers are done
+        boolean interrupted = false;
+        while (true) {
+            try {
+                latch.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+
+        if (error[0] != null) {
+            throw new RuntimeException("Exception during parallel chunk update", error[0]);
+        }
+    }
+
+    public void draw(OrthographicCamera cam, Batch batch, DepthSpriter spriter, ShapeRenderer shaper,
+            SpriterDelegateBatch delegateBatch) {
         if (!initialized) {
             Game.G.layerChangeNotifier.addListener(this);
             initialized = true;
@@ -314,7 +556,7 @@ public class Layer implements Disposable, Savable, Listener<Layer> {
         synchronized (chunkLock) {
             for (Chunk c : chunks) {
                 if (c.isInBounds(cam, true) || dirtyBounds.intersects(c.ax, c.ay, Const.CHUNK_SIZE, Const.CHUNK_SIZE)) {
-                    c.draw(cam, fboCam, viewport, batch);
+                    c.draw(batch);
                 }
             }
         }
@@ -339,7 +581,7 @@ public class Layer implements Disposable, Savable, Listener<Layer> {
         synchronized (chunkLock) {
             for (Chunk c : chunks) {
                 if (c.isInBounds(cam, false) || dirtyBounds.intersects(c.ax, c.ay, Const.CHUNK_SIZE, Const.CHUNK_SIZE)) {
-                    c.drawStructures(spriter, dirtyBounds);
+                    c.drawStructures(cam, spriter, dirtyBounds);
                 }
             }
         }
@@ -380,7 +622,7 @@ public class Layer implements Disposable, Savable, Listener<Layer> {
         synchronized (chunkLock) {
             for (Chunk c : chunks) {
                 if (c.isInBounds(cam, false)) {
-                    c.drawFrameStructures(spriter, shaper, delegateBatch);
+                    c.drawFrameStructures(cam, spriter, shaper, delegateBatch);
                 }
             }
         }
@@ -416,28 +658,36 @@ public class Layer implements Disposable, Savable, Listener<Layer> {
         if (x < 0 || y < 0 || x >= width || y >= height) {
             return null;
         }
-        synchronized (chunkLock) {
-            Chunk c = chunks[(x / Const.CHUNK_SIZE) * chunksH + y / Const.CHUNK_SIZE];
+        // the chunks are only replaced as a whole, so no chunkLock here. Parallel chunk updates go through this while
+        // the updating thread holds it
+        Chunk[] cs = chunks;
 
-            if (c == null)
-                return null;
+        // a paged out layer has no terrain to hand out, see Game#getLayer(int)
+        if (cs == PAGED)
+            return null;
 
-            if (!c.dataSet)
-                c.init();
+        Chunk c = cs[(x / Const.CHUNK_SIZE) * chunksH + y / Const.CHUNK_SIZE];
+
+        if (c == null)
+            return null;
 
-            return c;
+        if (!c.dataSet) {
+            synchronized (c.structLock) {
+                if (!c.dataSet)
+                    c.init();
+            }
         }
+
+        return c;
     }
 
     public Structure<?> getStructure(int x, int y) {
         if (x < 0 || y < 0 || x >= width || y >= height) {
             return null;
         }
-        synchronized (chunkLock) {
-            Chunk c = getChunk(x, y);
-            if (c == null) return null;
-            return c.getStructure(x - c.ax, y - c.ay);
-        }
+        Chunk c = getChunk(x, y);
+        if (c == null) return null;
+        return c.getStructure(x - c.ax, y - c.ay);
     }
 
     public Structure<?> getStructure(int i) {
@@ -449,11 +699,9 @@ public class Layer implements Disposable, Savable, Listener<Layer> {
     }
 
     public CopperCable getCable(int x, int y) {
-        synchronized (chunkLock) {
-            Chunk c = getChunk(x, y);
-            if (c == null) return null;
-            return c.getCable(x - c.ax, y - c.ay);
-        }
+        Chunk c = getChunk(x, y);
+        if (c == null) return null;
+        return c.getCable(x - c.ax, y - c.ay);
     }
 
     public Structure<?> getAny(int i, boolean structuresFirst) {
@@ -495,6 +743,56 @@ public class Layer implements Disposable, Savable, Listener<Layer> {
         return c.addStructure(s, false);
     }
 
+    /**
+     * Places all structures as one, like a pasted blueprint. Collisions are checked for all of them up front, with
+     * what is there as well as among each other, so either all of them get placed or none. The structures already
+     * see each other when they are placed and the whole batch is marked dirty as a single region.
+     *
+     * @return whether the structures have been placed
+     */
+    public boolean addStructures(Array<Structure<?>> structures) {
+        IntSet tiles = new IntSet();
+        IntSet cableTiles = new IntSet();
+
+        for (int i = 0; i < structures.size; i++) {
+            Structure<?> s = structures.get(i);
+            if (s.x < 0 || s.y < 0 || s.x + s.getWidth() > width || s.y + s.getHeight() > height || getChunk(s.x, s.y) == null) {
+                return false;
+            }
+
+            if (s instanceof CopperCable) {
+                if (getCable(s.x, s.y) != null || !cableTiles.add(s.x * height + s.y)) return false;
+            } else {
+                for (int j = 0; j < s.getWidth(); j++) {
+                    for (int k = 0; k < s.getHeight(); k++) {
+                        int t = (s.x + j) * height + s.y + k;
+                        if (getStructure(t) != null || !tiles.add(t)) return false;
+                    }
+                }
+            }
+        }
+
+        for (int i = 0; i < structures.size; i++) {
+            Structure<?> s = structures.get(i);
+            getChunk(s.x, s.y).addStructure(s, false, true);
+        }
+
+        dirtyBounds.add(structures, Bounds.Flags.CONSTRUCTION);
+
+        for (int i = 0; i < structures.size; i++) {
+            Structure<?> s = structures.get(i);
+
+            // notify dock spots in case they're tubes
+            for (Dock d : s.getDocks()) {
+                setItemNotification(s.x + d.x + d.dir.dx, s.y + d.y + d.dir.dy);
+            }
+
+            s.onPlacement(false);
+        }
+
+        return true;
+    }
+
     public boolean removeStructure(int x, int y) {
         Structure<?> s = getStructure(x, y);
         if (s == null) return false;
@@ -520,6 +818,40 @@ public class Layer implements Disposable, Savable, Listener<Layer> {
         return removeCable(s.x, s.y);
     }
 
+    /**
+     * Remembers that the given storage holds the given item, so that withdrawals only need to look at holders of that item.
+     */
+    public void addHolder(ItemType item, StorageStructure s) {
+        synchronized (holderLock) {
+            Array<StorageStructure> a = holders.get(item);
+            if (a == null) {
+                a = new Array<>(StorageStructure.class);
+                holders.put(item, a);
+            }
+
+            if (!a.contains(s, true)) a.add(s);
+        }
+    }
+
+    /**
+     * Adds all storages of this layer holding the given item to result, in the order they received it first.
+     * Storages that have been emptied or destroyed in the meantime are dropped from the index.
+     */
+    public void getHolders(ItemType item, Array<StorageStructure> result) {
+        synchronized (holderLock) {
+            Array<StorageStructure> a = holders.get(item);
+            if (a == null) return;
+
+            for (int i = a.size - 1; i >= 0; i--) {
+                StorageStructure s = a.get(i);
+                if (s.isDestroyed() || s.layer != this || !s.hasItemType(item))
+                    a.removeIndex(i);
+            }
+
+            result.addAll(a);
+        }
+    }
+
     public void setItemNotification(int x, int y) {
         Structure<?> s = getStructure(x, y);
         if (s instanceof Conveyor) {
@@ -535,11 +867,19 @@ public class Layer implements Disposable, Savable, Listener<Layer> {
         return (flags[x * height + y] & FLAG_POWER_DOCK_COLLISION) != 0;
     }
 
+    /**
+     * @return a counter that changes whenever anything a trail may run into changes
+     */
+    public int getCollisionChanges() {
+        return collisionChanges;
+    }
+
     public Chunk[] getChunks() {
         return chunks;
     }
 
     protected void setCollision(Structure<?> s, boolean colliding) {
+        collisionChanges++;
         for (int i = 0; i < s.getWidth(); i++) {
             int j = (s.x + i) * height + s.y;
             if (s instanceof ITube) {
@@ -672,7 +1012,7 @@ public class Layer implements Disposable, Savable, Listener<Layer> {
         return true;
     }
 
-    public synchronized TileType get(int x, int y) {
+    public TileType get(int x, int y) {
         if (x < 0 || y < 0 || x >= width || y >= height) {
             //            System.out.println("Get out of bounds: " + x + ":" + y);
             return TileType.Air;
@@ -682,10 +1022,11 @@ public class Layer implements Disposable, Savable, Listener<Layer> {
             return TileType.Air;
         int addr = (x - c.ax) * Const.CHUNK_SIZE + (y - c.ay);
 
+        // lock free, a short store is atomic
         return Tile.tiles[(byte) (c.data[addr] & 0xff)];
     }
 
-    public synchronized int getMeta(int x, int y) {
+    public int getMeta(int x, int y) {
         if (x < 0 || y < 0 || x >= width || y >= height) {
             return TileMeta.NO_META;
         }
@@ -698,7 +1039,7 @@ public class Layer implements Disposable, Savable, Listener<Layer> {
         return (c.data[addr] >> 8) & 0xff;
     }
 
-    public synchronized void set(int x, int y, TileType tile) {
+    public void set(int x, int y, TileType tile) {
         if (x < 0 || y < 0 || x >= width || y >= height) {
             //            System.out.println("Set out of bounds: " + x + ":" + y);
             return;
@@ -711,11 +1052,6 @@ public class Layer implements Disposable, Savable, Listener<Layer> {
 
         int addr = (x - c.ax) * Const.CHUNK_SIZE + (y - c.ay);
 
-        if (tile.itemDrop != null) {
-            minerals.add(tile.itemDrop);
-        }
-
-        c.data[addr] = tile.value;
         byte meta = tile.meta;
         if ((tile.meta & Tile.TileMeta.ALT_TEX) == Tile.TileMeta.ALT_TEX && Math.random() >= 0.5) {
             meta |= TileMeta.ALT_TEX;
@@ -732,13 +1068,22 @@ public class Layer implements Disposable, Savable, Listener<Layer> {
                 meta |= TileMeta.ROT_TEX | TileMeta.ROT_TEX_90;
             }
         }
-        c.data[addr] |= meta << 8;
+        // a single store, so readers never see the tile without its meta
+        short value = (short) ((tile.value & 0xff) | (meta << 8));
+        synchronized (tileLock) {
+            if (tile.itemDrop != null) {
+                minerals.add(tile.itemDrop);
+            }
+
+            c.data[addr] = value;
+        }
 
-        c.dirty = true;
+        c.changed = true;
+        collisionChanges++;
         markSurroundingTilesAsDirty(x, y);
     }
 
-    public synchronized void addMeta(int x, int y, int metaFlag) {
+    public void addMeta(int x, int y, int metaFlag) {
         if (x < 0 || y < 0 || x >= width || y >= height) {
             //            System.out.println("addMeta out of bounds: " + x + ":" + y);
             return;
@@ -749,12 +1094,15 @@ public class Layer implements Disposable, Savable, Listener<Layer> {
             return;
         int addr = (x - c.ax) * Const.CHUNK_SIZE + (y - c.ay);
 
-        c.data[addr] |= metaFlag << 8;
-        c.dirty = true;
+        synchronized (tileLock) {
+            c.data[addr] |= metaFlag << 8;
+        }
+        c.changed = true;
+        collisionChanges++;
         markSurroundingTilesAsDirty(x, y);
     }
 
-    public synchronized void removeMeta(int x, int y, int metaFlag) {
+    public void removeMeta(int x, int y, int metaFlag) {
         if (x < 0 || y < 0 || x >= width || y >= height) {
             //            System.out.println("removeMeta out of bounds: " + x + ":" + y);
             return;
@@ -765,15 +1113,23 @@ public class Layer implements Disposable, Savable, Listener<Layer> {
             return;
         int addr = (x - c.ax) * Const.CHUNK_SIZE + (y - c.ay);
 
-        c.data[addr] &= ~(metaFlag << 8);
-        c.dirty = true;
+        synchronized (tileLock) {
+            c.data[addr] &= ~(metaFlag << 8);
+        }
+        c.changed = true;
+        collisionChanges++;
         markSurroundingTilesAsDirty(x, y);
     }
 
+    /**
+     * Marks the terrain of the tile and all 8 tiles around it for rebuilding, as they blend into it
+     */
     protected void markSurroundingTilesAsDirty(int x, int y) {
-        for (Direction d : Direction.values) {
-            Chunk c = getChunk(x + d.dx, y + d.dy);
-            if (c != null) c.dirty = true;
+        for (int i = -1; i < 2; i++) {
+            for (int j = -1; j < 2; j++) {
+                Chunk c = getChunk(x + i, y + j);
+                if (c != null) c.terrain.markDirty(x + i - c.ax, y + j - c.ay);
+            }
         }
     }
 
@@ -899,11 +1255,10 @@ public class Layer implements Disposable, Savable, Listener<Layer> {
 
     @Override
     public void save(Builder b) {
-        b.Compound()
-                .Byte("chunksW", (byte) chunksH)
-                .Int("width", width)
-                .Int("height", height)
-                .Byte("defaultTile", defaultTile.value);
+        pageIn();
+
+        b.Compound();
+        saveHeader(b);
 
         synchronized (chunkLock) {
             b.List("Chunks", TagType.Compound);
@@ -916,6 +1271,98 @@ public class Layer implements Disposable, Savable, Listener<Layer> {
         b.End();
     }
 
+    protected void saveHeader(Builder b) {
+        b
+                .Byte("chunksW", (byte) chunksH)
+                .Int("width", width)
+                .Int("height", height)
+                .Byte("defaultTile", defaultTile.value);
+    }
+
+    /**
+     * Writes the layer header and then every chunk as its own tag, so only one chunk is held in memory at a time
+     */
+    public void save(SaveFile.Writer w) throws IOException {
+        synchronized (chunkLock) {
+            w.beginLayer();
+
+            if (paged != null) {
+                // the header and all chunk tags as they were when paging out
+                SaveFile.Reader r = new SaveFile.Reader(new ByteArrayInputStream(paged));
+                try {
+                    for (int i = 0; i <= chunkCount; i++)
+                        w.write(r.next());
+                } finally {
+                    r.close();
+                }
+                return;
+            }
+
+            saveHeader(w);
+
+            for (Chunk c : chunks) {
+                Builder b = new Builder("Chunk");
+                c.saveContent(b);
+                w.write(b);
+            }
+        }
+    }
+
+    /**
+     * Writes the tag of the layer header that precedes its chunks
+     */
+    public void saveHeader(SaveFile.Writer w) throws IOException {
+        Builder b = new Builder("Layer");
+        saveHeader(b);
+        b.Int("chunks", chunkCount);
+        w.write(b);
+    }
+
+    /**
+     * Adds <code>index &lt;&lt; 16 | chunk</code> for every chunk that changed since {@link #clearChanges()}, or for
+     * all chunks
+     */
+    public void getChanges(IntArray keys, boolean all) {
+        synchronized (chunkLock) {
+            // paged out layers never have changes
+            Chunk[] cs = chunks;
+            for (int i = 0; i < chunkCount; i++)
+                if (all || (cs != PAGED && cs[i].changed)) keys.add(index << 16 | i);
+        }
+    }
+
+    public void clearChanges() {
+        synchronized (chunkLock) {
+            for (Chunk c : chunks)
+                c.changed = false;
+        }
+    }
+
+    /**
+     * Writes a single chunk the same way {@link #save(SaveFile.Writer)} does, for journal deltas
+     */
+    public void saveChunk(SaveFile.Writer w, int chunk) throws IOException {
+        synchronized (chunkLock) {
+            if (paged != null) {
+                SaveFile.Reader r = new SaveFile.Reader(new ByteArrayInputStream(paged));
+                try {
+                    // skip the header and the chunks before
+                    for (int i = 0; i <= chunk; i++)
+                        r.nextBytes();
+                    w.write(r.next());
+                } finally {
+                    r.close();
+                }
+                return;
+            }
+
+            Builder b = new Builder("Chunk");
+            chunks[chunk].saveContent(b);
+            w.write(b);
+            chunks[chunk].changed = false;
+        }
+    }
+
     public void postAllLayersLoad(boolean firstCycle) {
         // call post load to re-fetch references that structures might need
         synchronized (chunkLock) {
@@ -932,32 +1379,81 @@ public class Layer implements Disposable, Savable, Listener<Layer> {
     }
 
     public static Layer load(int index, CompoundTag tag) throws NBTException {
+        return load(index, tag, tag.List("Chunks", TagType.Compound).data);
+    }
+
+    static Layer load(int index, CompoundTag tag, Iterable<Tag> chunkTags) throws NBTException {
+        Array<Pair<Chunk, CompoundTag>> pairs = new Array<>();
+        Layer l = loadTerrain(index, tag, chunkTags, pairs);
+        l.loadStructures(pairs);
+
+        return l;
+    }
+
+    /**
+     * First half of loading a layer, which only touches the layer itself and can run alongside other layers.
+     * The loaded chunks and their tags are added to pairs for {@link #loadStructures(Array)}.
+     */
+    static Layer loadTerrain(int index, CompoundTag tag, Iterable<Tag> chunkTags, Array<Pair<Chunk, CompoundTag>> pairs)
+            throws NBTException {
         int chunksW = tag.Byte("chunksW");
         Layer l = new Layer(index, tag.Int("width"), tag.Int("height"), Tile.tiles[tag.Byte("defaultTile")], false, false);
         l.chunksH = chunksW;
         l.fromLoading = true;
+        l.loadTerrain(chunkTags, pairs);
 
+        return l;
+    }
+
+    /**
+     * Fills the empty chunk slots from the given tags, then loads structures once all terrain is there
+     */
+    void loadChunks(Iterable<Tag> chunkTags) {
         Array<Pair<Chunk, CompoundTag>> pairs = new Array<>();
+        loadTerrain(chunkTags, pairs);
+        loadStructures(pairs);
+    }
 
-        for (Tag t : tag.List("Chunks", TagType.Compound).data) {
+    void loadTerrain(Iterable<Tag> chunkTags, Array<Pair<Chunk, CompoundTag>> pairs) {
+        // filled aside and published at once for the lock free readers
+        Chunk[] cs = new Chunk[chunkCount];
+        for (Tag t : chunkTags) {
             try {
-                Chunk c = Chunk.load((CompoundTag) t, l);
-                l.chunks[c.x * chunksW + c.y] = c;
-                c.setFrameBuffer(Quarry.Q.chunkFBOs[c.x * chunksW + c.y]);
+                Chunk c = Chunk.load((CompoundTag) t, this);
+                cs[c.x * chunksH + c.y] = c;
                 pairs.add(new Pair<>(c, (CompoundTag) t));
             } catch (NBTException e) {
                 Quarry.Q.pi.message(PlatformInterface.MSG_EXCEPTION, e);
             }
         }
 
+        // chunks that could not be read start out blank
+        for (int i = 0; i < cs.length; i++) {
+            if (cs[i] == null) {
+                Chunk c = new Chunk(i / chunksH, i % chunksH, this);
+                c.init();
+                c.changed = true;
+                cs[i] = c;
+            }
+        }
+
+        chunks = cs;
+
         // analyze minerals
-        for (int i = 0; i < l.width; i++) {
-            for (int j = 0; j < l.height; j++) {
-                ItemType t = l.get(i, j).itemDrop;
+        for (int i = 0; i < width; i++) {
+            for (int j = 0; j < height; j++) {
+                ItemType t = get(i, j).itemDrop;
                 if (t != null)
-                    l.minerals.add(t);
+                    minerals.add(t);
             }
         }
+    }
+
+    /**
+     * Second half of loading a layer. Structures register with the shared power grid, so this runs for one layer
+     * at a time and in layer order.
+     */
+    void loadStructures(Array<Pair<Chunk, CompoundTag>> pairs) {
         // load structures after all chunks are loaded for terrain lookup and stuff
         for (Pair<Chunk, CompoundTag> p : pairs) {
             try {
@@ -968,10 +1464,96 @@ public class Layer implements Disposable, Savable, Listener<Layer> {
         }
 
         // call post load to re-fetch references that structures might need
-        for (Chunk c : l.chunks)
+        for (Chunk c : chunks)
             c.postLoad();
+    }
 
-        return l;
+    public boolean isPagedOut() {
+        return paged != null;
+    }
+
+    /**
+     * Pages out a layer that has nothing to simulate. Its chunks are kept as compressed save tags and dropped, and the
+     * loudness buffers are released. Every layer is updated each tick, so layers with structures are never idle and
+     * stay resident. Neither are layers with changes the autosave journal has not seen yet.
+     * <p>
+     * A paged out layer has no terrain to read, {@link #getChunk(int, int)} returns null for it until
+     * {@link Game#getLayer(int)} pages it in again before handing it out.
+     *
+     * @return whether the layer is paged out
+     */
+    public boolean pageOut() {
+        synchronized (chunkLock) {
+            if (paged != null) return true;
+
+            for (Chunk c : chunks)
+                if (c.changed || (c.isInit() && c.getStructures().size > 0)) return false;
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try {
+                SaveFile.Writer w = new SaveFile.Writer(bytes);
+                save(w);
+                w.finish();
+            } catch (IOException e) {
+                Quarry.Q.pi.message(PlatformInterface.MSG_EXCEPTION, e);
+                return false;
+            }
+
+            dispose();
+
+            chunkColors = null;
+            paged = bytes.toByteArray();
+            chunks = PAGED;
+        }
+
+        synchronized (pfxLock) {
+            for (PooledEffect e : pfxBelow)
+                e.free();
+            for (PooledEffect e : pfxAbove)
+                e.free();
+            pfxBelow.clear();
+            pfxAbove.clear();
+        }
+
+        releaseLoudness();
+        return true;
+    }
+
+    /**
+     * Reads back the chunks of a paged out layer
+     */
+    public void pageIn() {
+        synchronized (chunkLock) {
+            if (paged == null) return;
+
+            Array<Tag> chunkTags = new Array<>(chunkCount);
+            SaveFile.Reader r = null;
+            try {
+                r = new SaveFile.Reader(new ByteArrayInputStream(paged));
+                r.next().free();
+                for (int i = 0; i < chunkCount; i++) {
+                    CompoundTag t = r.next();
+                    if (t != null) chunkTags.add(t);
+                }
+            } catch (IOException e) {
+                Quarry.Q.pi.message(PlatformInterface.MSG_EXCEPTION, e);
+            } finally {
+                if (r != null) {
+                    try {
+                        r.close();
+                    } catch (IOException e) {}
+                }
+            }
+
+            // the chunks are rebuilt aside and replace PAGED at once
+            chunkColors = null;
+            fromLoading = true;
+            loadChunks(chunkTags);
+            paged = null;
+
+            for (Tag t : chunkTags)
+                ((CompoundTag) t).free();
+        }
     }
 
     public boolean hasHoppersAttached(Structure<?> s) {
@@ -0,0 +1,206 @@
+/*******************************************************************************
+ * Copyright 2019 Maximilian Stark | Dakror <mail@dakror.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package de.dakror.quarry.game;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.badlogic.gdx.utils.Array;
+
+import de.dakror.common.libgdx.Pair;
+import de.dakror.common.libgdx.PlatformInterface;
+import de.dakror.common.libgdx.io.NBT.CompoundTag;
+import de.dakror.common.libgdx.io.NBT.NBTException;
+import de.dakror.common.libgdx.io.NBT.Tag;
+import de.dakror.quarry.Quarry;
+
+/**
+ * Loads the layers of a save in phases. Decompressing the chunk tags, creating the chunks and analyzing minerals
+ * only touch the layer itself, so all layers go through that phase at once on a pool. Structures are created
+ * afterwards one layer at a time, as they register with the shared power grid. Resolving references across layers
+ * is left to {@link de.dakror.quarry.scenes.Game#linkLayers(Array)}.
+ *
+ * @author Maximilian Stark | Dakror
+ */
+public class LayerLoader {
+    /** threads for loading the terrain of the layers, 1 loads everything on the calling thread */
+    public static int THREADS = Runtime.getRuntime().availableProcessors();
+
+    final Array<CompoundTag> headers = new Array<>();
+    // per layer either the parsed chunk tags or their compressed bytes, whichever was added
+    final Array<Iterable<Tag>> chunkTags = new Array<>();
+    final Array<Array<byte[]>> chunkBytes = new Array<>();
+    SaveFile.Reader reader;
+
+    long readTime;
+
+    /**
+     * Adds a layer of a single tag save. The tags stay owned by the caller.
+     */
+    public void add(CompoundTag header, Iterable<Tag> chunks) {
+        headers.add(header);
+        chunkTags.add(chunks);
+        chunkBytes.add(null);
+    }
+
+    /**
+     * Reads the compressed tags of all layers of a streamed save, with the newest versions in the journal taking
+     * precedence. Chunks that fail their checksum are skipped and start out blank.
+     */
+    public void read(SaveFile.Reader r, int layers, SaveFile.Journal journal) throws IOException, NBTException {
+        long t = System.currentTimeMillis();
+        reader = r;
+
+        for (int i = 0; i < layers; i++) {
+            CompoundTag header = journal != null && journal.layers.containsKey(i) ? r.parse(journal.layers.get(i)) : r.readLayer(i);
+            if (header == null) throw new IOException("Corrupted header of layer " + i);
+
+            int count = header.Int("chunks");
+            Array<byte[]> bytes = new Array<>(count);
+            for (int j = 0; j < count; j++) {
+                byte[] b = journal != null ? journal.chunks.get(i << 16 | j) : null;
+                if (b == null) b = r.readChunkBytes(i, j);
+                if (b == null) {
+                    Quarry.Q.pi.message(PlatformInterface.MSG_EXCEPTION, new IOException("Corrupted chunk " + j + " of layer " + i));
+                } else {
+                    bytes.add(b);
+                }
+            }
+
+            headers.add(header);
+            chunkTags.add(null);
+            chunkBytes.add(bytes);
+        }
+
+        readTime += System.currentTimeMillis() - t;
+    }
+
+    @SuppressWarnings("unchecked")
+    public Array<Layer> load() throws IOException, NBTException {
+        final int count = headers.size;
+        final Layer[] layers = new Layer[count];
+        final Array<Pair<Chunk, CompoundTag>>[] pairs = new Array[count];
+        final Array<Tag>[] parsed = new Array[count];
+
+        long start = System.currentTimeMillis();
+
+        int threads = Math.min(THREADS, count);
+        if (threads > 1) {
+            ExecutorService pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "Layer loading");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+
+            final CountDownLatch latch = new CountDownLatch(count);
+            final AtomicReference<Throwable> error = new AtomicReference<>();
+
+            for (int i = 0; i < count; i++) {
+                final int index = i;
+                pool.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            loadTerrain(index, layers, pairs, parsed);
+                        } catch (Throwable t) {
+                            error.compareAndSet(null, t);
+                        } finally {
+                            latch.countDown();
+                        }
+                    }
+                });
+            }
+
+            try {
+                latch.await();
+            } catch (InterruptedException e) {
+                // the layers are not all there, give up on loading
+                pool.shutdownNow();
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while loading layers");
+            }
+            pool.shutdown();
+
+            Throwable t = error.get();
+            if (t instanceof NBTException) {
+                throw (NBTException) t;
+            } else if (t != null) {
+                throw new RuntimeException("Exception during parallel layer loading", t);
+            }
+        } else {
+            for (int i = 0; i < count; i++)
+                loadTerrain(i, layers, pairs, parsed);
+        }
+
+        long terrainTime = System.currentTimeMillis() - start;
+        start = System.currentTimeMillis();
+
+        for (int i = 0; i < count; i++)
+            layers[i].loadStructures(pairs[i]);
+
+        long structureTime = System.currentTimeMillis() - start;
+
+        for (int i = 0; i < count; i++) {
+            if (parsed[i] != null) {
+                for (Tag tag : parsed[i])
+                    ((CompoundTag) tag).free();
+                headers.get(i).free();
+            }
+        }
+        headers.clear();
+        chunkTags.clear();
+        chunkBytes.clear();
+
+        System.out.println("Layer loading took " + readTime + "ms reading, " + terrainTime + "ms terrain on " + Math.max(1, threads)
+                + " threads, " + structureTime + "ms structures");
+
+        return new Array<>(layers);
+    }
+
+    void loadTerrain(int index, Layer[] layers, Array<Pair<Chunk, CompoundTag>>[] pairs, Array<Tag>[] parsed)
+            throws NBTException {
+        Iterable<Tag> tags = chunkTags.get(index);
+
+        if (tags == null) {
+            Array<byte[]> bytes = chunkBytes.get(index);
+            Array<Tag> p = new Array<>(bytes.size);
+            for (int i = 0; i < bytes.size; i++) {
+                try {
+                    CompoundTag tag = reader.parse(bytes.get(i));
+                    if (tag != null) p.add(tag);
+                } catch (IOException e) {
+                    Quarry.Q.pi.message(PlatformInterface.MSG_EXCEPTION, e);
+                }
+                bytes.set(i, null);
+            }
+
+            parsed[index] = p;
+            tags = p;
+        }
+
+        pairs[index] = new Array<>();
+        layers[index] = Layer.loadTerrain(index, headers.get(index), tags, pairs[index]);
+    }
+}
@@ -0,0 +1,600 @@
+/*******************************************************************************
+ * Copyright 2019 Maximilian Stark | Dakror <mail@dakror.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package de.dakror.quarry.game;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+import com.badlogic.gdx.Files.FileType;
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IntArray;
+import com.badlogic.gdx.utils.IntMap;
+import com.badlogic.gdx.utils.LongArray;
+
+import de.dakror.common.libgdx.PlatformInterface;
+import de.dakror.common.libgdx.io.NBT;
+import de.dakror.common.libgdx.io.NBT.Builder;
+import de.dakror.common.libgdx.io.NBT.CompoundTag;
+import de.dakror.common.libgdx.io.NBT.CompressionType;
+import de.dakror.common.libgdx.io.NBT.NBTException;
+import de.dakror.quarry.Const;
+import de.dakror.quarry.Quarry;
+
+/**
+ * Streamed save file layout. Instead of one tag holding the whole world, a save is a sequence of separately
+ * compressed tags: the save header, then for every layer its header followed by one tag per chunk.
+ * Only a single chunk has to be held in memory while writing, unless the tags are collected in a {@link Snapshot}.
+ * <p>
+ * Layout: the bytes <code>QSF</code>, the version byte, then every tag as its length, the CRC32 of the compressed
+ * bytes and the compressed tag. Since {@link #INDEXED_VERSION} the tags are followed by an index of their offsets and
+ * where each layer starts, and the file ends with the offset of that index. This allows seeking to any single chunk
+ * and skipping chunks that fail their checksum.
+ *
+ * @author Maximilian Stark | Dakror
+ */
+public class SaveFile {
+    static final byte[] MAGIC = { 'Q', 'S', 'F' };
+    static final byte[] INDEX_MAGIC = { 'Q', 'I', 'D', 'X' };
+
+    /**
+     * First version with checksums and the index
+     */
+    public static final int INDEXED_VERSION = 0x19;
+
+    /**
+     * @return whether the file is in the streamed layout, as opposed to a single tag of older versions
+     */
+    public static boolean isStreamed(FileHandle file) {
+        if (!file.exists()) return false;
+
+        InputStream in = null;
+        try {
+            in = file.read();
+            for (byte b : MAGIC)
+                if (in.read() != b) return false;
+            return true;
+        } catch (IOException e) {
+            return false;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {}
+            }
+        }
+    }
+
+    /**
+     * Hands out its internal array for the checksum, instead of a copy
+     */
+    static class TagBuffer extends ByteArrayOutputStream {
+        TagBuffer(int size) {
+            super(size);
+        }
+
+        void checksum(CRC32 crc) {
+            crc.reset();
+            crc.update(buf, 0, count);
+        }
+    }
+
+    public static class Writer implements Closeable {
+        final DataOutputStream out;
+        final TagBuffer buffer = new TagBuffer(1 << 16);
+        final CRC32 crc = new CRC32();
+        boolean closed;
+
+        // offset of every tag, and the number of the tag each layer header is
+        final LongArray offsets = new LongArray();
+        final IntArray layers = new IntArray();
+        long position;
+
+        public Writer(OutputStream out) throws IOException {
+            this(out, true);
+        }
+
+        Writer(OutputStream out, boolean header) throws IOException {
+            this.out = new DataOutputStream(new BufferedOutputStream(out));
+            if (header) {
+                this.out.write(MAGIC);
+                this.out.writeByte(Const.QSF_VERSION);
+                position = MAGIC.length + 1;
+            }
+        }
+
+        Writer() {
+            out = null;
+        }
+
+        /**
+         * Marks the next tag as the header of a new layer
+         */
+        public void beginLayer() {
+            layers.add(offsets.size);
+        }
+
+        /**
+         * Writes the tag and frees it
+         */
+        public void write(CompoundTag tag) throws IOException {
+            buffer.reset();
+            NBT.write(buffer, tag, CompressionType.Fast);
+
+            buffer.checksum(crc);
+
+            offsets.add(position);
+            out.writeInt(buffer.size());
+            out.writeInt((int) crc.getValue());
+            buffer.writeTo(out);
+            position += 8 + buffer.size();
+
+            tag.free();
+        }
+
+        /**
+         * Writes and frees the tag of the builder
+         */
+        public void write(Builder b) throws IOException {
+            write(b.Get());
+        }
+
+        /**
+         * Writes the index and closes the file. Only to be called once everything has been written successfully,
+         * since the index marks the file as complete.
+         */
+        public void finish() throws IOException {
+            if (closed) return;
+            writeIndex();
+            close();
+        }
+
+        void writeIndex() throws IOException {
+            long indexOffset = position;
+            out.writeInt(offsets.size);
+            for (int i = 0; i < offsets.size; i++)
+                out.writeLong(offsets.get(i));
+            out.writeInt(layers.size);
+            for (int i = 0; i < layers.size; i++)
+                out.writeInt(layers.get(i));
+
+            out.writeLong(indexOffset);
+            out.write(INDEX_MAGIC);
+        }
+
+        /**
+         * Closes the file. Without {@link #finish()} it has no index and is only read in order up to where it ends.
+         */
+        @Override
+        public void close() throws IOException {
+            if (closed) return;
+            closed = true;
+            out.close();
+        }
+    }
+
+    /**
+     * Collects the tags of a save instead of writing them, so the world only has to hold still while its tags are
+     * built. Compressing and writing them out can then be done without any locks.
+     */
+    public static class Snapshot extends Writer {
+        final Array<CompoundTag> tags = new Array<>();
+
+        @Override
+        public void beginLayer() {
+            layers.add(tags.size);
+        }
+
+        @Override
+        public void write(CompoundTag tag) {
+            tags.add(tag);
+        }
+
+        /**
+         * Writes out all collected tags in order, freeing each after it has been written
+         */
+        public void writeTo(Writer w) throws IOException {
+            int layer = 0;
+            for (int i = 0; i < tags.size; i++) {
+                if (layer < layers.size && layers.get(layer) == i) {
+                    w.beginLayer();
+                    layer++;
+                }
+
+                CompoundTag tag = tags.get(i);
+                tags.set(i, null);
+                w.write(tag);
+            }
+            tags.clear();
+        }
+
+        /**
+         * Frees the tags that have not been written
+         */
+        public void free() {
+            for (CompoundTag tag : tags)
+                if (tag != null) tag.free();
+            tags.clear();
+        }
+
+        @Override
+        public void finish() {}
+
+        @Override
+        public void close() {}
+    }
+
+    /**
+     * Appends a delta to the journal of a save, without an index
+     */
+    public static class JournalWriter extends Writer {
+        public JournalWriter(FileHandle journal) throws IOException {
+            this(journal, !journal.exists() || journal.length() == 0);
+        }
+
+        JournalWriter(FileHandle journal, boolean header) throws IOException {
+            super(journal.write(true), header);
+        }
+
+        @Override
+        void writeIndex() {}
+    }
+
+    /**
+     * Autosaves only write the whole world every {@link #MAX_DELTAS} times. In between they append a delta to a journal
+     * next to the save, holding what changed since. A delta is a <code>Delta</code> tag with the id of the save it
+     * belongs to and the layers and chunks it holds, followed by the save header, the headers of layers added since
+     * and the tags of those chunks. A delta that was not written completely is ignored along with everything after it.
+     */
+    public static class Journal {
+        public static final int MAX_DELTAS = 16;
+
+        public CompoundTag header;
+        public int deltas;
+
+        final IntMap<byte[]> layers = new IntMap<>();
+        // keyed by layer << 16 | chunk
+        final IntMap<byte[]> chunks = new IntMap<>();
+
+        public static FileHandle getFile(FileHandle save) {
+            return save.sibling(save.nameWithoutExtension() + ".qsj");
+        }
+
+        /**
+         * @return the deltas of the journal next to the given save, or null if there are none for this save
+         */
+        public static Journal read(FileHandle save, long saveId) {
+            FileHandle file = getFile(save);
+            if (!file.exists()) return null;
+
+            Journal j = new Journal();
+            byte[] header = null;
+
+            Reader r = null;
+            try {
+                r = new Reader(file.read());
+                IntMap<byte[]> layers = new IntMap<>();
+                IntMap<byte[]> chunks = new IntMap<>();
+
+                while (true) {
+                    CompoundTag delta = r.next();
+                    if (delta == null) break;
+
+                    try {
+                        if (delta.Long("saveId") != saveId) break;
+
+                        byte[] h = r.nextBytes();
+                        if (h == null) break;
+
+                        layers.clear();
+                        chunks.clear();
+                        boolean complete = true;
+                        for (int l : delta.IntArray("layers")) {
+                            byte[] b = r.nextBytes();
+                            if (b == null) complete = false;
+                            layers.put(l, b);
+                        }
+                        for (int c : delta.IntArray("chunks")) {
+                            byte[] b = r.nextBytes();
+                            if (b == null) complete = false;
+                            chunks.put(c, b);
+                        }
+
+                        if (!complete) break;
+
+                        header = h;
+                        j.layers.putAll(layers);
+                        j.chunks.putAll(chunks);
+                        j.deltas++;
+                    } finally {
+                        delta.free();
+                    }
+                }
+            } catch (EOFException e) {
+                // the last delta was cut off
+            } catch (IOException e) {
+                Quarry.Q.pi.message(PlatformInterface.MSG_EXCEPTION, e);
+            } catch (NBTException e) {
+                Quarry.Q.pi.message(PlatformInterface.MSG_EXCEPTION, e);
+            } finally {
+                if (r != null) {
+                    try {
+                        r.close();
+                    } catch (IOException e) {}
+                }
+            }
+
+            if (header == null) return null;
+
+            try {
+                j.header = r.parse(header);
+            } catch (IOException e) {
+                Quarry.Q.pi.message(PlatformInterface.MSG_EXCEPTION, e);
+            }
+
+            return j.header != null ? j : null;
+        }
+    }
+
+    /**
+     * Reads the tags of a streamed save in order. Saves with an index can instead be read at any layer and chunk, when
+     * the file can be opened for random access.
+     */
+    public static class Reader implements Closeable {
+        final DataInputStream in;
+        final RandomAccessFile file;
+        final int version;
+        final CRC32 crc = new CRC32();
+        final byte[] frame = new byte[8];
+        byte[] buffer = new byte[1 << 16];
+
+        long[] offsets;
+        int[] layers;
+
+        public Reader(FileHandle handle) throws IOException {
+            this(isSeekable(handle) ? new RandomAccessFile(handle.file(), "r") : null, isSeekable(handle) ? null : handle.read());
+        }
+
+        /**
+         * Reads the tags in order, without the index
+         */
+        public Reader(InputStream in) throws IOException {
+            this(null, in);
+        }
+
+        Reader(RandomAccessFile file, InputStream in) throws IOException {
+            this.file = file;
+            this.in = in != null ? new DataInputStream(new BufferedInputStream(in)) : null;
+
+            readFully(frame, 0, MAGIC.length + 1);
+            for (int i = 0; i < MAGIC.length; i++)
+                if (frame[i] != MAGIC[i]) throw new IOException("Not a streamed save file");
+            version = frame[MAGIC.length] & 0xff;
+
+            if (version >= INDEXED_VERSION && file != null) {
+                readIndex();
+            }
+        }
+
+        static boolean isSeekable(FileHandle handle) {
+            return handle.type() == FileType.Local || handle.type() == FileType.External || handle.type() == FileType.Absolute;
+        }
+
+        void readIndex() throws IOException {
+            long end = file.length();
+            if (end < 12 + MAGIC.length + 1) return;
+
+            file.seek(end - 12);
+            long indexOffset = file.readLong();
+            for (byte b : INDEX_MAGIC)
+                if (file.readByte() != b) return; // no index, written incompletely
+
+            if (indexOffset < MAGIC.length + 1 || indexOffset > end - 20) return;
+
+            byte[] data = new byte[(int) Math.min(Integer.MAX_VALUE, end - 12 - indexOffset)];
+            file.seek(indexOffset);
+            file.readFully(data);
+            file.seek(MAGIC.length + 1);
+
+            // anything that does not add up is read in order instead
+            DataInputStream index = new DataInputStream(new ByteArrayInputStream(data));
+            int tags = index.readInt();
+            if (tags < 0 || tags > (data.length - 8) / 8) return;
+            long[] o = new long[tags];
+            for (int i = 0; i < tags; i++) {
+                o[i] = index.readLong();
+                if (o[i] < MAGIC.length + 1 || o[i] > indexOffset - 8) return;
+            }
+
+            int count = index.readInt();
+            if (count < 0 || 8L + tags * 8L + count * 4L != data.length) return;
+            int[] l = new int[count];
+            for (int i = 0; i < count; i++) {
+                l[i] = index.readInt();
+                if (l[i] < 0 || l[i] >= tags) return;
+            }
+
+            offsets = o;
+            layers = l;
+        }
+
+        void readFully(byte[] b, int off, int len) throws IOException {
+            if (file != null) file.readFully(b, off, len);
+            else in.readFully(b, off, len);
+        }
+
+        public int getVersion() {
+            return version;
+        }
+
+        public boolean isIndexed() {
+            return layers != null;
+        }
+
+        /**
+         * Reads the next frame into the buffer
+         *
+         * @return the length of the compressed tag, or -1 if it failed its checksum
+         */
+        int readFrame() throws IOException {
+            int headerLength = version >= INDEXED_VERSION ? 8 : 4;
+            readFully(frame, 0, headerLength);
+
+            int length = ((frame[0] & 0xff) << 24) | ((frame[1] & 0xff) << 16) | ((frame[2] & 0xff) << 8) | (frame[3] & 0xff);
+            if (length < 0) throw new IOException("Invalid tag length " + length);
+            if (buffer.length < length) buffer = new byte[length];
+
+            readFully(buffer, 0, length);
+
+            if (headerLength == 8) {
+                int checksum = ((frame[4] & 0xff) << 24) | ((frame[5] & 0xff) << 16) | ((frame[6] & 0xff) << 8) | (frame[7] & 0xff);
+                crc.reset();
+                crc.update(buffer, 0, length);
+                if ((int) crc.getValue() != checksum) return -1;
+            }
+
+            return length;
+        }
+
+        CompoundTag parse(byte[] bytes, int length) throws IOException {
+            try {
+                return NBT.read(new ByteArrayInputStream(bytes, 0, length), CompressionType.Fast);
+            } catch (IOException e) {
+                // only trusted if the checksum was fine
+                if (version >= INDEXED_VERSION) throw e;
+                return null;
+            }
+        }
+
+        /**
+         * Decompresses and parses a tag returned by {@link #nextBytes()}. Does not touch the file, so it can be
+         * called from any thread.
+         *
+         * @return the tag, or null if the bytes are null or broken
+         */
+        public CompoundTag parse(byte[] bytes) throws IOException {
+            if (bytes == null) return null;
+            return parse(bytes, bytes.length);
+        }
+
+        /**
+         * @return the next tag, or null if it failed its checksum
+         */
+        public CompoundTag next() throws IOException {
+            int length = readFrame();
+            if (length < 0) return null;
+            return parse(buffer, length);
+        }
+
+        /**
+         * Like {@link #next()}, but leaves the expensive part of decompressing and parsing the tag to
+         * {@link #parse(byte[])}.
+         *
+         * @return the compressed tag, or null if it failed its checksum
+         */
+        public byte[] nextBytes() throws IOException {
+            int length = readFrame();
+            if (length < 0) return null;
+            return Arrays.copyOf(buffer, length);
+        }
+
+        /**
+         * @return the tag with the given number in the file, or null if it failed its checksum or is not in the file
+         */
+        public CompoundTag read(int tag) throws IOException {
+            if (tag < 0 || tag >= offsets.length) return null;
+            file.seek(offsets[tag]);
+            return next();
+        }
+
+        /**
+         * @return the number of the tag of the given chunk of a layer in the index, or -1 if there is none
+         */
+        int getChunkTag(int layer, int chunk) {
+            if (layer < 0 || layer >= layers.length || chunk < 0) return -1;
+            int tag = layers[layer] + 1 + chunk;
+            int next = layer + 1 < layers.length ? layers[layer + 1] : offsets.length;
+            return tag < next ? tag : -1;
+        }
+
+        /**
+         * @return the header of the given layer, when reading in order the next tag. Null if it is corrupted or missing
+         */
+        public CompoundTag readLayer(int layer) throws IOException {
+            if (!isIndexed()) {
+                try {
+                    return next();
+                } catch (EOFException e) {
+                    return null;
+                }
+            }
+            if (layer < 0 || layer >= layers.length) return null;
+            return read(layers[layer]);
+        }
+
+        /**
+         * @return the given chunk of a layer, when reading in order the next tag. Null if it is corrupted or missing
+         */
+        public CompoundTag readChunk(int layer, int chunk) throws IOException {
+            if (!isIndexed()) {
+                try {
+                    return next();
+                } catch (EOFException e) {
+                    return null;
+                }
+            }
+            int tag = getChunkTag(layer, chunk);
+            if (tag < 0) return null;
+            return read(tag);
+        }
+
+        /**
+         * @return the compressed tag of the given chunk, see {@link #readChunk(int, int)} and {@link #nextBytes()}
+         */
+        public byte[] readChunkBytes(int layer, int chunk) throws IOException {
+            if (isIndexed()) {
+                int tag = getChunkTag(layer, chunk);
+                if (tag < 0) return null;
+                file.seek(offsets[tag]);
+            }
+            try {
+                return nextBytes();
+            } catch (EOFException e) {
+                // cut off, the rest of the chunks start out blank
+                return null;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (file != null) file.close();
+            else in.close();
+        }
+    }
+}
@@ -0,0 +1,384 @@
+/*******************************************************************************
+ * Copyright 2019 Maximilian Stark | Dakror <mail@dakror.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package de.dakror.quarry.game;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+import com.badlogic.gdx.graphics.g2d.Batch;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+
+import de.dakror.quarry.Const;
+import de.dakror.quarry.Quarry;
+import de.dakror.quarry.game.Tile.TileMeta;
+import de.dakror.quarry.game.Tile.TileType;
+
+/**
+ * The terrain quads of a chunk in {@link Batch} vertex layout, drawn straight from the atlas.
+ * Quads are kept per tile, so changing a tile only rebuilds the quads of it and its direct neighbors
+ * and then copies the runs of all tiles back to back into the array that gets drawn.
+ * Meshes are only built and drawn on the main thread.
+ *
+ * @author Maximilian Stark | Dakror
+ */
+class TerrainMesh {
+    static final TextureRegion overhang = Quarry.Q.atlas.findRegion("overhang");
+    static final TextureRegion fogOverhang = Quarry.Q.atlas.findRegion("overhang_fog");
+    static final TextureRegion fogOverhangInner = Quarry.Q.atlas.findRegion("overhang_fog_inner");
+    static final TextureRegion fogOfWar = Quarry.Q.atlas.findRegion("tile_fog");
+
+    // (base, (blend, tex))
+    static final int COR = 0;
+    static final int INN = 1;
+    static final int MID = 2;
+    static final int HOL = 3;
+    static final HashMap<TileType, HashMap<TileType, TextureRegion[]>> texLookup = new HashMap<>();
+
+    // x, y, color, u, v for each of the 4 corners
+    static final int QUAD_SIZE = 20;
+
+    static final int TILES = Const.CHUNK_SIZE * Const.CHUNK_SIZE;
+
+    // quads of the tile that is being built
+    static float[] buffer = new float[QUAD_SIZE * 32];
+    static int length;
+
+    // neighbors of the tile that is being built which it blends into
+    static final TileType[][] neighbors = new TileType[3][3];
+
+    final Chunk chunk;
+
+    // one bit per tile that has to be rebuilt
+    final long[] dirtyTiles = new long[TILES / 64];
+    final long[] pending = new long[TILES / 64];
+    volatile boolean dirty;
+
+    float[][] tiles;
+    float[] vertices;
+    int vertexCount;
+
+    TerrainMesh(Chunk chunk) {
+        this.chunk = chunk;
+    }
+
+    /**
+     * @param x chunk relative
+     * @param y chunk relative
+     */
+    void markDirty(int x, int y) {
+        int i = x * Const.CHUNK_SIZE + y;
+        synchronized (dirtyTiles) {
+            dirtyTiles[i >> 6] |= 1L << (i & 63);
+            dirty = true;
+        }
+    }
+
+    /**
+     * Rebuilds all tiles if the chunk is {@link Chunk#dirty}, otherwise only the ones marked since the last build
+     */
+    void build() {
+        if (texLookup.isEmpty()) initTexCache();
+
+        if (tiles == null) {
+            tiles = new float[TILES][];
+            chunk.dirty = true;
+        }
+
+        // clear before, so that spontaneous terrain changes cause another build
+        boolean all = chunk.dirty;
+        chunk.dirty = false;
+
+        synchronized (dirtyTiles) {
+            if (all) Arrays.fill(pending, -1L);
+            else System.arraycopy(dirtyTiles, 0, pending, 0, pending.length);
+            Arrays.fill(dirtyTiles, 0);
+            dirty = false;
+        }
+
+        for (int i = 0; i < pending.length; i++) {
+            long bits = pending[i];
+            while (bits != 0) {
+                buildTile((i << 6) + Long.numberOfTrailingZeros(bits));
+                bits &= bits - 1;
+            }
+        }
+
+        int count = 0;
+        for (float[] t : tiles)
+            if (t != null) count += t.length;
+
+        if (vertices == null || vertices.length < count) {
+            vertices = new float[count + count / 8];
+        }
+
+        int offset = 0;
+        for (float[] t : tiles) {
+            if (t == null) continue;
+            System.arraycopy(t, 0, vertices, offset, t.length);
+            offset += t.length;
+        }
+        vertexCount = count;
+    }
+
+    void draw(Batch batch) {
+        if (vertexCount > 0)
+            batch.draw(fogOfWar.getTexture(), vertices, 0, vertexCount);
+    }
+
+    void dispose() {
+        tiles = null;
+        vertices = null;
+        vertexCount = 0;
+    }
+
+    private void buildTile(int i) {
+        length = 0;
+
+        short d = chunk.data[i];
+        byte b = (byte) (d & 0xff);
+        int m = d >> 8;
+
+        TileType t = Tile.tiles[b];
+
+        if (t.name != null) {
+            int x = i / Const.CHUNK_SIZE;
+            int y = i % Const.CHUNK_SIZE;
+            int tx = (chunk.ax + x) * Const.TILE_SIZE;
+            int ty = (chunk.ay + y) * Const.TILE_SIZE;
+
+            if ((m & TileMeta.FOG_OF_WAR) == TileMeta.FOG_OF_WAR) {
+                quad(fogOfWar, tx, ty, 0);
+            } else {
+                buildTile(t, m, x, y, tx, ty);
+            }
+        }
+
+        float[] q = tiles[i];
+        if (length == 0) {
+            tiles[i] = null;
+        } else if (q == null || q.length != length) {
+            tiles[i] = Arrays.copyOf(buffer, length);
+        } else {
+            System.arraycopy(buffer, 0, q, 0, length);
+        }
+    }
+
+    private void buildTile(TileType t, int m, int x, int y, int tx, int ty) {
+        Layer layer = chunk.layer;
+        int ax = chunk.ax + x;
+        int ay = chunk.ay + y;
+
+        if (t.base != null) {
+            buildBaseTile(t.base, ax, ay, tx, ty);
+        }
+
+        TextureRegion tex = t.tex;
+
+        if ((m & TileMeta.ALT_TEX) == TileMeta.ALT_TEX && (t.meta & TileMeta.ALT_TEX) != 0) {
+            tex = t.texAlt;
+        }
+
+        if ((m & TileMeta.ROT_TEX) == TileMeta.ROT_TEX && (t.meta & TileMeta.ROT_TEX) != 0) {
+            int rot = 0;
+            if ((m & TileMeta.ROT_TEX_90) == TileMeta.ROT_TEX_90)
+                rot = 90;
+            else if ((m & TileMeta.ROT_TEX_180) == TileMeta.ROT_TEX_180)
+                rot = 180;
+            else if ((m & TileMeta.ROT_TEX_270) == TileMeta.ROT_TEX_270)
+                rot = 270;
+
+            quad(tex, tx, ty, rot);
+        } else if ((m & TileMeta.ROT_TEX) == 0 && (m & TileMeta.BASE_TILE) == TileMeta.BASE_TILE) {
+            buildBaseTile(t, ax, ay, tx, ty);
+        } else if ((m & TileMeta.ROT_TEX) == 0) {
+            quad(tex, tx, ty, 0);
+        }
+
+        // one lookup per neighbor, bit (j + 1) * 3 + k + 1 is set if the tile at j,k is in FOW
+        int fog = 0;
+        for (int j = -1; j < 2; j++) {
+            for (int k = -1; k < 2; k++) {
+                if (!(j == 0 && k == 0) && (layer.getMeta(ax + j, ay + k) & TileMeta.FOG_OF_WAR) == TileMeta.FOG_OF_WAR)
+                    fog |= 1 << ((j + 1) * 3 + k + 1);
+            }
+        }
+
+        boolean left = (fog & 1 << 1) != 0;
+        boolean right = (fog & 1 << 7) != 0;
+        boolean below = (fog & 1 << 3) != 0;
+        boolean above = (fog & 1 << 5) != 0;
+
+        if (above) quad(fogOverhang, tx, ty, 0);
+        if (below) quad(fogOverhang, tx, ty, 180);
+        if (left) quad(fogOverhang, tx, ty, 90);
+        if (right) quad(fogOverhang, tx, ty, 270);
+
+        // bottom left
+        if ((fog & 1 << 0) != 0 && !left && !below) quad(fogOverhangInner, tx, ty, 180);
+        // top left
+        if ((fog & 1 << 2) != 0 && !left && !above) quad(fogOverhangInner, tx, ty, 90);
+        // bottom right
+        if ((fog & 1 << 6) != 0 && !right && !below) quad(fogOverhangInner, tx, ty, -90);
+        // top right
+        if ((fog & 1 << 8) != 0 && !right && !above) quad(fogOverhangInner, tx, ty, 0);
+
+        if (ay == layer.height - 1) quad(overhang, tx, ty, 0);
+        if (ay == 0) quad(overhang, tx, ty, 180);
+        if (ax == 0) quad(overhang, tx, ty, 90);
+        if (ax == layer.width - 1) quad(overhang, tx, ty, 270);
+    }
+
+    private void buildBaseTile(TileType t, int ax, int ay, int tx, int ty) {
+        quad(t.tex, tx, ty, 0);
+
+        // Make smooth transition to dirt
+        boolean any = false;
+
+        for (int j = -1; j < 2; j++) {
+            for (int k = -1; k < 2; k++) {
+                neighbors[j + 1][k + 1] = null;
+                if (!(j == 0 && k == 0)) {
+                    TileType u = chunk.layer.get(ax + j, ay + k);
+                    if (u.base != null) u = u.base;
+                    if ((u.meta & TileMeta.BLENDING) == TileMeta.BLENDING && u != t) {
+                        neighbors[j + 1][k + 1] = u;
+                        any = true;
+                    }
+                }
+            }
+        }
+
+        if (!any) return;
+
+        // if a 1x1 hole, fill it
+        if (neighbors[1][0] != null && neighbors[1][2] != null && neighbors[0][1] != null && neighbors[2][1] != null) {
+            chunk.layer.set(ax, ay, neighbors[1][0]);
+            quad(neighbors[1][0].tex, tx, ty, 0);
+            return;
+        }
+
+        HashMap<TileType, TextureRegion[]> lookup = texLookup.get(t);
+
+        // corners
+        if (neighbors[0][0] != null && neighbors[1][0] == null && neighbors[0][1] == null) {
+            quad(lookup.get(neighbors[0][0])[COR], tx, ty, 0);
+        }
+        if (neighbors[0][2] != null && neighbors[1][2] == null && neighbors[0][1] == null) {
+            quad(lookup.get(neighbors[0][2])[COR], tx, ty, -90);
+        }
+        if (neighbors[2][2] != null && neighbors[1][2] == null && neighbors[2][1] == null) {
+            quad(lookup.get(neighbors[2][2])[COR], tx, ty, 180);
+        }
+        if (neighbors[2][0] != null && neighbors[1][0] == null && neighbors[2][1] == null) {
+            quad(lookup.get(neighbors[2][0])[COR], tx, ty, 90);
+        }
+
+        // middle pieces
+        if (neighbors[1][0] != null && neighbors[0][1] == null && neighbors[2][1] == null) {
+            quad(lookup.get(neighbors[1][0])[MID], tx, ty, 0);
+        }
+        if (neighbors[0][1] != null && neighbors[1][0] == null && neighbors[1][2] == null) {
+            quad(lookup.get(neighbors[0][1])[MID], tx, ty, -90);
+        }
+        if (neighbors[1][2] != null && neighbors[0][1] == null && neighbors[2][1] == null) {
+            quad(lookup.get(neighbors[1][2])[MID], tx, ty, 180);
+        }
+        if (neighbors[2][1] != null && neighbors[1][0] == null && neighbors[1][2] == null) {
+            quad(lookup.get(neighbors[2][1])[MID], tx, ty, 90);
+        }
+
+        /**
+         * 0,2 1,2 2,2
+         * 0,1 1,1 2,1
+         * 0,0 1,0 2,0
+         */
+        // holes vs inners
+        if (neighbors[1][0] != null && neighbors[0][1] == neighbors[1][0] && neighbors[1][2] == neighbors[0][1]) {
+            quad(lookup.get(neighbors[1][0])[HOL], tx, ty, 0);
+        } else if (neighbors[0][1] != null && neighbors[1][2] == neighbors[0][1] && neighbors[2][1] == neighbors[0][1]) {
+            quad(lookup.get(neighbors[0][1])[HOL], tx, ty, -90);
+        } else if (neighbors[1][0] != null && neighbors[1][2] == neighbors[1][0] && neighbors[2][1] == neighbors[1][0]) {
+            quad(lookup.get(neighbors[1][0])[HOL], tx, ty, 180);
+        } else if (neighbors[0][1] != null && neighbors[2][1] == neighbors[0][1] && neighbors[1][0] == neighbors[0][1]) {
+            quad(lookup.get(neighbors[0][1])[HOL], tx, ty, 90);
+        } else {
+            if (neighbors[1][0] != null && neighbors[0][1] == neighbors[1][0]) {
+                quad(lookup.get(neighbors[1][0])[INN], tx, ty, 0);
+            }
+            if (neighbors[0][1] != null && neighbors[1][2] == neighbors[0][1]) {
+                quad(lookup.get(neighbors[0][1])[INN], tx, ty, -90);
+            }
+            if (neighbors[2][1] != null && neighbors[1][2] == neighbors[2][1]) {
+                quad(lookup.get(neighbors[2][1])[INN], tx, ty, 180);
+            }
+            if (neighbors[1][0] != null && neighbors[2][1] == neighbors[1][0]) {
+                quad(lookup.get(neighbors[1][0])[INN], tx, ty, 90);
+            }
+        }
+    }
+
+    /**
+     * Appends a tile sized quad. Rotations are multiples of 90 degrees around the center of the tile,
+     * so instead of moving the corners the texture coordinates are shifted around them.
+     */
+    private static void quad(TextureRegion r, int tx, int ty, int rotation) {
+        if (length + QUAD_SIZE > buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+
+        float x2 = tx + Const.TILE_SIZE;
+        float y2 = ty + Const.TILE_SIZE;
+        int turns = ((rotation / 90) % 4 + 4) % 4;
+
+        // corners counter clockwise from the bottom left: bottom left, top left, top right, bottom right
+        for (int p = 0; p < 4; p++) {
+            int c = (p + turns) & 3;
+            buffer[length++] = p < 2 ? tx : x2;
+            buffer[length++] = p == 0 || p == 3 ? ty : y2;
+            buffer[length++] = Chunk.WHITE;
+            buffer[length++] = c < 2 ? r.getU() : r.getU2();
+            buffer[length++] = c == 0 || c == 3 ? r.getV2() : r.getV();
+        }
+    }
+
+    private static void initTexCache() {
+        HashMap<TileType, TextureRegion[]> stone = new HashMap<>();
+        stone.put(TileType.Dirt, new TextureRegion[] {
+                Quarry.Q.atlas.findRegion("tile_dirt_corner"),
+                Quarry.Q.atlas.findRegion("tile_dirt_inner"),
+                Quarry.Q.atlas.findRegion("tile_dirt_middle"),
+                Quarry.Q.atlas.findRegion("tile_dirt_hole"),
+        });
+        stone.put(TileType.CrudeOil, new TextureRegion[] {
+                Quarry.Q.atlas.findRegion("tile_crude_oil_corner"),
+                Quarry.Q.atlas.findRegion("tile_crude_oil_inner"),
+                Quarry.Q.atlas.findRegion("tile_crude_oil_middle"),
+                Quarry.Q.atlas.findRegion("tile_crude_oil_hole"),
+        });
+
+        HashMap<TileType, TextureRegion[]> dirt = new HashMap<>();
+        dirt.put(TileType.CrudeOil, new TextureRegion[] {
+                Quarry.Q.atlas.findRegion("tile_crude_oil_dirt_corner"),
+                Quarry.Q.atlas.findRegion("tile_crude_oil_dirt_inner"),
+                Quarry.Q.atlas.findRegion("tile_crude_oil_dirt_middle"),
+                Quarry.Q.atlas.findRegion("tile_crude_oil_dirt_hole"),
+        });
+
+        texLookup.put(TileType.Stone, stone);
+        texLookup.put(TileType.Dirt, dirt);
+    }
+}
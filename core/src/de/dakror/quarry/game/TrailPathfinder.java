@@ -0,0 +1,330 @@
+/*******************************************************************************
+ * Copyright 2019 Maximilian Stark | Dakror <mail@dakror.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+
+package de.dakror.quarry.game;
+
+import java.util.Arrays;
+
+import com.badlogic.gdx.utils.IntArray;
+
+import de.dakror.quarry.game.Tile.TileType;
+
+/**
+ * A* over the tiles of a layer for laying out the trail of a draggable structure.
+ * Nodes are tile indices and all search state lives in arrays sized to the layer, which are kept between searches.
+ * Whether a tile can be passed is looked up once and then kept in a bitset until the collisions of the layer change.
+ * The search grows from the end of the trail that stayed in place, so while only the other end is dragged around,
+ * the tiles settled by the previous search stay valid and the search just carries on towards the new end.
+ *
+ * @author Maximilian Stark | Dakror
+ */
+public class TrailPathfinder {
+    // cost of passing a tile that is not stone, unless laying cables
+    static final float ROUGH_COST = 1.25f;
+
+    Layer layer;
+    int mode = -1;
+    int changes;
+    int size;
+
+    // per tile bits, whether the tile has been looked up, can be passed and is rough
+    long[] known, passable, rough;
+
+    // per tile search state, only valid where seen matches the current search
+    float[] g, f;
+    int[] parent, heapIndex, seen;
+    long[] closed;
+    int search;
+
+    // binary min heap of open tiles by f
+    int[] heap;
+    int heapSize;
+
+    // a search can only be carried on while it is valid, from the same source
+    boolean valid;
+    int source = -1, target = -1;
+
+    /**
+     * Finds the cheapest trail between the two tiles, both included, in the order from start to end
+     *
+     * @param cable whether cables are laid, which may cross structures but not other cables
+     * @param checkItemDocks whether the tiles in front of item docks are blocked
+     * @param checkFluidDocks whether the tiles in front of fluid docks are blocked
+     * @return false if there is no such trail, the path is empty then
+     */
+    public boolean findPath(Layer layer, boolean cable, boolean checkItemDocks, boolean checkFluidDocks, int start, int end, IntArray path) {
+        path.clear();
+        prepare(layer, (cable ? 1 : 0) | (checkItemDocks ? 2 : 0) | (checkFluidDocks ? 4 : 0));
+
+        if (start < 0 || end < 0 || start >= size || end >= size || !canEnd(start) || !canEnd(end)) return false;
+
+        // keep growing from whichever end the previous search started at
+        if (valid && source == end) {
+            retarget(start);
+        } else if (valid && source == start) {
+            retarget(end);
+        } else {
+            reset(end, start);
+        }
+
+        if (!run()) return false;
+
+        for (int i = target; i != -1; i = parent[i])
+            path.add(i);
+
+        if (source == start) path.reverse();
+        return true;
+    }
+
+    private void prepare(Layer layer, int mode) {
+        int s = layer.width * layer.height;
+        if (g == null || g.length < s) {
+            g = new float[s];
+            f = new float[s];
+            parent = new int[s];
+            heapIndex = new int[s];
+            seen = new int[s];
+            heap = new int[s];
+            known = new long[(s + 63) / 64];
+            passable = new long[known.length];
+            rough = new long[known.length];
+            closed = new long[known.length];
+            search = 0;
+            this.layer = null;
+        }
+
+        if (this.layer != layer || this.mode != mode || changes != layer.getCollisionChanges()) {
+            this.layer = layer;
+            this.mode = mode;
+            changes = layer.getCollisionChanges();
+            size = s;
+            Arrays.fill(known, 0);
+            valid = false;
+        }
+    }
+
+    private void reset(int source, int target) {
+        this.source = source;
+        this.target = target;
+
+        if (++search == Integer.MAX_VALUE) {
+            Arrays.fill(seen, 0);
+            search = 1;
+        }
+        Arrays.fill(closed, 0);
+        heapSize = 0;
+
+        seen[source] = search;
+        g[source] = 0;
+        parent[source] = -1;
+        push(source, h(source));
+
+        valid = true;
+    }
+
+    private void retarget(int target) {
+        int old = this.target;
+        this.target = target;
+        if (old == target) return;
+
+        // a target that can't be passed was only entered as the end, without going on from it
+        if (old != source && seen[old] == search && !isPassable(old)) {
+            seen[old] = 0;
+            closed[old >> 6] &= ~(1L << (old & 63));
+        }
+
+        if (!is(closed, target) && !isPassable(target)) {
+            // never entered, as it only can be as the end. Do what expanding its settled neighbors would have done
+            int x = target / layer.height;
+            int y = target % layer.height;
+            for (int i = 0; i < 4; i++) {
+                int n = neighbor(x, y, i);
+                if (n != -1 && is(closed, n) && (n == source || isPassable(n))) relax(n, target);
+            }
+        }
+
+        // the estimates of the open tiles were made towards the previous target
+        for (int i = 0; i < heapSize; i++)
+            f[heap[i]] = g[heap[i]] + h(heap[i]);
+        for (int i = heapSize / 2 - 1; i >= 0; i--)
+            down(i);
+    }
+
+    private boolean run() {
+        while (!is(closed, target)) {
+            if (heapSize == 0) return false;
+
+            int node = pop();
+            closed[node >> 6] |= 1L << (node & 63);
+
+            // tiles that only may be the end are not gone through
+            if (node != source && !isPassable(node)) continue;
+
+            int x = node / layer.height;
+            int y = node % layer.height;
+            for (int i = 0; i < 4; i++) {
+                int n = neighbor(x, y, i);
+                if (n != -1 && !is(closed, n) && (n == target ? canEnd(n) : isPassable(n))) relax(node, n);
+            }
+        }
+        return true;
+    }
+
+    private void relax(int from, int to) {
+        float cost = g[from] + ((mode & 1) == 0 && isRough(to) ? ROUGH_COST : 1);
+
+        if (seen[to] != search) {
+            seen[to] = search;
+            g[to] = cost;
+            parent[to] = from;
+            push(to, cost + h(to));
+        } else if (cost < g[to]) {
+            g[to] = cost;
+            parent[to] = from;
+            f[to] = cost + h(to);
+            up(heapIndex[to]);
+        }
+    }
+
+    private int neighbor(int x, int y, int direction) {
+        switch (direction) {
+            case 0:
+                y++;
+                break;
+            case 1:
+                x++;
+                break;
+            case 2:
+                y--;
+                break;
+            default:
+                x--;
+                break;
+        }
+
+        if (x < 0 || y < 0 || x >= layer.width || y >= layer.height) return -1;
+        return x * layer.height + y;
+    }
+
+    private float h(int node) {
+        // manhattan distance
+        return Math.abs(node / layer.height - target / layer.height) + Math.abs(node % layer.height - target % layer.height);
+    }
+
+    static boolean is(long[] bits, int i) {
+        return (bits[i >> 6] & (1L << (i & 63))) != 0;
+    }
+
+    private void lookup(int i) {
+        int x = i / layer.height;
+        int y = i % layer.height;
+
+        boolean pass;
+        if (layer.isInFogOfWar(x, y)) {
+            pass = false;
+        } else if ((mode & 1) != 0) {
+            pass = layer.getCable(x, y) == null && !layer.isPowerDockCollision(x, y);
+        } else {
+            pass = !layer.isCollision(x, y, (mode & 2) != 0, (mode & 4) != 0);
+        }
+
+        long bit = 1L << (i & 63);
+        if (pass) passable[i >> 6] |= bit;
+        else passable[i >> 6] &= ~bit;
+        if (layer.get(x, y) != TileType.Stone) rough[i >> 6] |= bit;
+        else rough[i >> 6] &= ~bit;
+        known[i >> 6] |= bit;
+    }
+
+    /**
+     * @return whether the tile can be part of the trail anywhere
+     */
+    boolean isPassable(int i) {
+        if (!is(known, i)) lookup(i);
+        return is(passable, i);
+    }
+
+    boolean isRough(int i) {
+        if (!is(known, i)) lookup(i);
+        return is(rough, i);
+    }
+
+    /**
+     * @return whether the tile can be an end of the trail, ends may connect to what is already there
+     */
+    boolean canEnd(int i) {
+        int x = i / layer.height;
+        int y = i % layer.height;
+        if (layer.isInFogOfWar(x, y)) return false;
+        return (mode & 1) == 0 || !layer.isPowerDockCollision(x, y);
+    }
+
+    private void push(int node, float value) {
+        f[node] = value;
+        heap[heapSize] = node;
+        heapIndex[node] = heapSize;
+        up(heapSize++);
+    }
+
+    private int pop() {
+        int node = heap[0];
+        heap[0] = heap[--heapSize];
+        heapIndex[heap[0]] = 0;
+        down(0);
+        return node;
+    }
+
+    private void up(int i) {
+        int node = heap[i];
+        while (i > 0) {
+            int p = (i - 1) / 2;
+            if (f[heap[p]] <= f[node]) break;
+            heap[i] = heap[p];
+            heapIndex[heap[i]] = i;
+            i = p;
+        }
+        heap[i] = node;
+        heapIndex[node] = i;
+    }
+
+    private void down(int i) {
+        int node = heap[i];
+        while (true) {
+            int c = 2 * i + 1;
+            if (c >= heapSize) break;
+            if (c + 1 < heapSize && f[heap[c + 1]] < f[heap[c]]) c++;
+            if (f[heap[c]] >= f[node]) break;
+            heap[i] = heap[c];
+            heapIndex[heap[i]] = i;
+            i = c;
+        }
+        heap[i] = node;
+        heapIndex[node] = i;
+    }
+
+    public int getOpenCount() {
+        return valid ? heapSize : 0;
+    }
+
+    public int getOpen(int i) {
+        return heap[i];
+    }
+
+    public boolean isClosed(int i) {
+        return valid && i < size && is(closed, i);
+    }
+}
@@ -0,0 +1,62 @@
+package de.dakror.quarry.game.power;
+
+import com.badlogic.gdx.utils.IntIntMap;
+
+/**
+ * Union-find over structure indices that are connected by power poles.
+ * Joining is done in place when an edge is added. Union-find cannot split sets, so removing an edge marks the
+ * components dirty and they are rebuilt from the network's edges on the next lookup.
+ *
+ * @author Maximilian Stark | Dakror
+ */
+class HighPowerComponents {
+    final IntIntMap parents = new IntIntMap();
+    final IntIntMap ranks = new IntIntMap();
+
+    boolean dirty;
+
+    void clear() {
+        parents.clear();
+        ranks.clear();
+        dirty = false;
+    }
+
+    /**
+     * @return the root of the component, or -1 if the index is not connected to anything by power poles
+     */
+    int find(int key) {
+        int parent = parents.get(key, -1);
+        if (parent == -1) return -1;
+
+        // path halving
+        while (parent != key) {
+            int grandParent = parents.get(parent, parent);
+            parents.put(key, grandParent);
+            key = grandParent;
+            parent = parents.get(key, key);
+        }
+
+        return key;
+    }
+
+    void union(int a, int b) {
+        if (!parents.containsKey(a)) parents.put(a, a);
+        if (!parents.containsKey(b)) parents.put(b, b);
+
+        int rootA = find(a);
+        int rootB = find(b);
+        if (rootA == rootB) return;
+
+        int rankA = ranks.get(rootA, 0);
+        int rankB = ranks.get(rootB, 0);
+
+        if (rankA < rankB) {
+            parents.put(rootA, rootB);
+        } else if (rankA > rankB) {
+            parents.put(rootB, rootA);
+        } else {
+            parents.put(rootB, rootA);
+            ranks.put(rootA, rankA + 1);
+        }
+    }
+}
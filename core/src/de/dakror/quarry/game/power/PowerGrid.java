@@ -33,12 +33,10 @@ public class PowerGrid {
 
     public void addNetwork(PowerNetwork network) {
         networks.add(network);
-        clearHighPowerCache();
     }
 
     public void removeNetwork(PowerNetwork network) {
         networks.removeValue(network, true);
-        clearHighPowerCache();
     }
 
     public boolean mergeNetworks(PowerNetwork a, PowerNetwork b) {
@@ -39,9 +39,9 @@ public class PowerNetwork {
     private Set<Edge> edgeSet;
     private IntMap<Edge[]> edges;
 
-    // cached complete graph for fast lookup of connections. 
-    // recalculated when a high power member of this network is modified
-    private IntMap<IntMap<Boolean>> highPowerConnections;
+    // components of structures connected by power poles, for fast lookup of connections.
+    // rebuilt when a power pole edge of this network is removed
+    private final HighPowerComponents highPowerComponents = new HighPowerComponents();
 
     // structures with power storage
     private OrderedSet<Structure<?>> donorVertices;
@@ -52,9 +52,6 @@ public class PowerNetwork {
 
     private OrderedSet<Structure<?>> allVertices;
 
-    private int numLowReceiverSlices;
-    private int numHighReceiverSlices;
-
     private boolean hadEdgeDeletion;
 
     private final WindowedMean inTickMean = new WindowedMean(60);
@@ -69,7 +66,13 @@ public class PowerNetwork {
 
     int id;
 
-    final IntSet dfsScratch = new IntSet();
+    // receivers in rounds of at most MAX_ROUNDS, more only matters for receivers refusing their share
+    static final int MAX_ROUNDS = 3;
+
+    final PowerSolver solver = new PowerSolver();
+    int[] receiverPriorities = new int[4];
+    double[] donorDraws = new double[16];
+    final IntSet sourceGroups = new IntSet();
 
     Array<Edge> minimumSpanningTree = new Array<Edge>();
     boolean minimumSpanningTreeDirty = true;
@@ -84,7 +87,6 @@ public class PowerNetwork {
 
         neutralVertices = new OrderedSet<>();
         allVertices = new OrderedSet<>();
-        highPowerConnections = new IntMap<>();
 
         donorVertices = new OrderedSet<>();
         /*new Comparator<Structure<?>>() {
@@ -136,12 +138,6 @@ public class PowerNetwork {
 
         if (node.getReceiverPriority() > 0) {
             if (!receiverVertices.add(node)) return false;
-
-            if (node.getSchema().highPower)
-                numHighReceiverSlices += node.getReceiverPriority();
-
-            if (node.getSchema().lowPower)
-                numLowReceiverSlices += node.getReceiverPriority();
         }
 
         if (node.getDonorPriority() == 0 && node.getReceiverPriority() == 0) {
@@ -152,10 +148,6 @@ public class PowerNetwork {
             edges.put(node.getIndex(), new Edge[node.getSchema().powerDocks]);
         }
 
-        if (node.getSchema().highPower && !highPowerConnections.containsKey(node.getIndex())) {
-            highPowerConnections.put(node.getIndex(), new IntMap<Boolean>());
-        }
-
         node.setPowerNetwork(this);
         minimumSpanningTreeDirty = true;
         return true;
@@ -190,13 +182,8 @@ public class PowerNetwork {
             edgesOfB[dockB] = e;
             edges.put(keyB, edgesOfB);
 
-            if (networkStrength == NetworkStrength.PowerPole) {
-                IntMap<Boolean> connectionsA = highPowerConnections.get(keyA);
-                connectionsA.put(keyA, true);
-                IntMap<Boolean> connectionsB = highPowerConnections.get(keyB);
-                connectionsB.put(keyB, true);
-
-                grid.clearHighPowerCache();
+            if (networkStrength == NetworkStrength.PowerPole && !highPowerComponents.dirty) {
+                highPowerComponents.union(keyA, keyB);
             }
 
             return e;
@@ -214,12 +201,6 @@ public class PowerNetwork {
         }
         if (node.getReceiverPriority() > 0) {
             if (!receiverVertices.remove(node)) return false;
-
-            if (node.getSchema().highPower)
-                numHighReceiverSlices += node.getReceiverPriority();
-
-            if (node.getSchema().lowPower)
-                numLowReceiverSlices += node.getReceiverPriority();
         }
         if (node.getDonorPriority() == 0 && node.getReceiverPriority() == 0) {
             if (!neutralVertices.remove(node)) return false;
@@ -242,36 +223,21 @@ public class PowerNetwork {
         if (donor.getSchema().highPower) {
             // high power has to be distributed per building
             // because its not known where it could go at what speed
-            double remainder = power;
-
             int donorPriority = donor.getDonorPriority();
+            int donorGroup = getHighPowerGroup(donor);
 
-            int receiverSlices = numHighReceiverSlices;
-
-            for (int i = 0; i < 5; i++) {
-                if (remainder == 0) break;
-                for (Structure<?> n : receiverVertices) {
-                    if (donorPriority > 0 && (n.getDonorPriority() > donorPriority)) continue;
-
-                    double piece = Math.min(remainder / receiverSlices * n.getReceiverPriority(), remainder);
-
-                    // lookup if high power connection exists     
-                    NetworkStrength strength = getConnectionNetworkStrength(donor, n);
-                    if (strength == null) continue;
+            double copper = NetworkStrength.CopperCable.maxPowerPerSecond * deltaTime * gameSpeed;
+            double pole = NetworkStrength.PowerPole.maxPowerPerSecond * deltaTime * gameSpeed;
 
-                    double networkStrength = strength.maxPowerPerSecond * deltaTime * gameSpeed;
-
-                    double leftover = n.acceptPower(piece, networkStrength);
-
-                    if (!(n instanceof Substation)) {
-                        outTick += piece - leftover;
-                    }
-
-                    remainder = remainder - piece + leftover;
+            solver.clear();
+            for (Structure<?> n : receiverVertices) {
+                if (donorPriority > 0 && (n.getDonorPriority() > donorPriority)) continue;
 
-                    if (remainder == 0) break;
-                }
+                double networkStrength = n.getSchema().highPower && donorGroup > -1 && getHighPowerGroup(n) == donorGroup ? pole : copper;
+                solver.add(n, n.getReceiverPriority(), getDemand(n, networkStrength), networkStrength);
             }
+
+            double remainder = handOut(power);
             inTick += power - remainder;
         } else {
             // instead of distributing each offered amount individually,
@@ -280,89 +246,198 @@ public class PowerNetwork {
         }
     }
 
-    private void distributeOfferedLowPower(double deltaTime, int gameSpeed) {
-        double networkStrength = NetworkStrength.CopperCable.maxPowerPerSecond * deltaTime * gameSpeed;
-        double remainder = accumulatedOfferedPower;
+    private double getDemand(Structure<?> r, double networkStrength) {
+        return Math.min(r.getPowerCapacity() - r.getPowerLevel(), networkStrength - r.getPowerReceivedThisTick());
+    }
 
-        int receiverSlices = numLowReceiverSlices;
+    /**
+     * Hands out power to the receivers currently in the solver.
+     * Receivers that refuse their share are left out of the following rounds.
+     * 
+     * @return the power nobody took
+     */
+    private double handOut(double power) {
+        double remainder = power;
 
-        for (int i = 0; i < 5; i++) {
-            if (remainder == 0) break;
-            for (Structure<?> n : receiverVertices) {
-                if (remainder == 0) break;
+        for (int i = 0; i < MAX_ROUNDS; i++) {
+            if (remainder <= 0 || solver.totalDemand <= 0) break;
 
-                double piece = Math.min(remainder / receiverSlices * n.getReceiverPriority(), remainder);
-                double leftover = n.acceptPower(piece, networkStrength);
+            solver.solve(remainder);
+
+            for (int j = 0; j < solver.size; j++) {
+                double piece = solver.getShare(j);
+                if (piece <= 0) continue;
+
+                Structure<?> n = solver.entries[j];
+                double leftover = n.acceptPower(piece, solver.strengths[j]);
 
                 if (!(n instanceof Substation)) {
                     outTick += piece - leftover;
                 }
 
                 remainder = remainder - piece + leftover;
-                //receiverSlices -= n.getReceiverPriority();
-
-                if (remainder == 0) break;
+                solver.settle(j, piece - leftover, leftover > 0);
             }
         }
 
+        return Math.max(0, remainder);
+    }
+
+    private void distributeOfferedLowPower(double deltaTime, int gameSpeed) {
+        double networkStrength = NetworkStrength.CopperCable.maxPowerPerSecond * deltaTime * gameSpeed;
+
+        solver.clear();
+        for (Structure<?> n : receiverVertices) {
+            solver.add(n, n.getReceiverPriority(), getDemand(n, networkStrength), networkStrength);
+        }
+
+        double remainder = handOut(accumulatedOfferedPower);
+
         inTick += accumulatedOfferedPower - remainder;
 
         // reset amount offered
         accumulatedOfferedPower = remainder;
     }
 
+    /**
+     * Moves stored power from donors to receivers of a higher receiver priority, one priority at a time from the
+     * highest down. Donors of the same priority are evened out to the same power ratio afterwards.
+     */
     private void distributeStoredPower(double deltaTime, int gameSpeed) {
+        if (donorVertices.size == 0) return;
+
+        double copper = NetworkStrength.CopperCable.maxPowerPerSecond * deltaTime * gameSpeed;
+        double pole = NetworkStrength.PowerPole.maxPowerPerSecond * deltaTime * gameSpeed;
+
+        int priorities = 0;
         for (Structure<?> r : receiverVertices) {
-            double delta = r.getPowerCapacity() - r.getPowerLevel();
+            int p = r.getReceiverPriority();
+            int j = 0;
+            while (j < priorities && receiverPriorities[j] > p)
+                j++;
+            if (j < priorities && receiverPriorities[j] == p) continue;
 
-            if (delta > 0) {
-                double remainingRequest = delta;
+            if (priorities == receiverPriorities.length) {
+                int[] rp = new int[priorities * 2];
+                System.arraycopy(receiverPriorities, 0, rp, 0, priorities);
+                receiverPriorities = rp;
+            }
+            System.arraycopy(receiverPriorities, j, receiverPriorities, j + 1, priorities - j);
+            receiverPriorities[j] = p;
+            priorities++;
+        }
 
-                for (Structure<?> d : donorVertices) {
-                    if (remainingRequest == 0) break;
+        for (int i = 0; i < priorities; i++) {
+            int p = receiverPriorities[i];
 
-                    if (d == r) continue;
+            // donors with a lower priority
+            double supply = 0;
+            sourceGroups.clear();
+            for (Structure<?> d : donorVertices) {
+                if (d.getReceiverPriority() < p && d.getPowerLevel() > 0) {
+                    supply += d.getPowerLevel();
+                    if (d.getSchema().highPower) sourceGroups.add(getHighPowerGroup(d));
+                }
+            }
 
-                    if (d.getReceiverPriority() > r.getReceiverPriority()
-                            || (d.getReceiverPriority() == r.getReceiverPriority()
-                                    && r.getPowerRatio() >= d.getPowerRatio())) {
-                        continue;
-                    }
+            if (supply >= 1) {
+                solver.clear();
+                for (Structure<?> r : receiverVertices) {
+                    if (r.getReceiverPriority() != p) continue;
+                    double networkStrength = r.getSchema().highPower && sourceGroups.contains(getHighPowerGroup(r)) ? pole : copper;
+                    solver.add(r, p, getDemand(r, networkStrength), networkStrength);
+                }
 
-                    double request = remainingRequest;
+                double drawn = drawStoredPower(p, false, 0, Math.min(supply, solver.totalDemand), supply, copper, pole);
+                refundStoredPower(handOut(drawn), drawn);
+            }
 
-                    if (d.getReceiverPriority() == r.getReceiverPriority()) {
-                        request = Math.min((d.getPowerRatio() - r.getPowerRatio()) / 2 * r.getPowerCapacity(), request);
-                    }
+            // even out donors of the same priority
+            double level = 0, capacity = 0;
+            sourceGroups.clear();
+            for (Structure<?> d : donorVertices) {
+                if (d.getReceiverPriority() == p) {
+                    level += d.getPowerLevel();
+                    capacity += d.getPowerCapacity();
+                }
+            }
 
-                    // skip super small differences
-                    if (request < 1) continue;
+            if (capacity <= 0) continue;
+            double ratio = level / capacity;
 
-                    // lookup if high power connection exists
+            double surplus = 0;
+            for (Structure<?> d : donorVertices) {
+                if (d.getReceiverPriority() == p) {
+                    double diff = (d.getPowerRatio() - ratio) * d.getPowerCapacity();
+                    if (diff > 0) {
+                        surplus += diff;
+                        if (d.getSchema().highPower) sourceGroups.add(getHighPowerGroup(d));
+                    }
+                }
+            }
 
-                    NetworkStrength strength = getConnectionNetworkStrength(d, r);
-                    if (strength == null) continue;
+            // skip super small differences
+            if (surplus < 1) continue;
 
-                    double networkStrength = strength.maxPowerPerSecond * deltaTime * gameSpeed;
+            solver.clear();
+            for (Structure<?> r : donorVertices) {
+                if (r.getReceiverPriority() != p) continue;
+                double diff = (ratio - r.getPowerRatio()) * r.getPowerCapacity();
+                if (diff < 1) continue;
 
-                    request = Math.min(request, networkStrength);
+                double networkStrength = r.getSchema().highPower && sourceGroups.contains(getHighPowerGroup(r)) ? pole : copper;
+                solver.add(r, p, Math.min(diff, networkStrength - r.getPowerReceivedThisTick()), networkStrength);
+            }
 
-                    double gotten = d.requestPower(request, networkStrength);
+            double drawn = drawStoredPower(p, true, ratio, Math.min(surplus, solver.totalDemand), surplus, copper, pole);
+            refundStoredPower(handOut(drawn), drawn);
+        }
+    }
 
-                    if (gotten > 0) {
-                        double leftover = r.acceptPower(gotten, networkStrength);
+    /**
+     * Takes the given amount from the donors proportionally to what they can give, before any of it is handed out.
+     * What each donor gave is kept for {@link #refundStoredPower(double, double)}.
+     *
+     * @return the amount the donors actually gave
+     */
+    private double drawStoredPower(int priority, boolean samePriority, double ratio, double amount, double available, double copper, double pole) {
+        if (amount <= 0) return 0;
+        if (donorDraws.length < donorVertices.size) donorDraws = new double[donorVertices.size];
+
+        double fraction = Math.min(1, amount / available);
+        double drawn = 0;
+
+        int i = 0;
+        for (Structure<?> d : donorVertices) {
+            double give = 0;
+            if (samePriority) {
+                if (d.getReceiverPriority() == priority)
+                    give = (d.getPowerRatio() - ratio) * d.getPowerCapacity();
+            } else {
+                if (d.getReceiverPriority() < priority)
+                    give = d.getPowerLevel();
+            }
 
-                        // refund the leftover to the donor
-                        d.refundPower(leftover);
+            double got = 0;
+            if (give > 0) got = d.requestPower(give * fraction, d.getSchema().highPower ? pole : copper);
+            donorDraws[i++] = got;
+            drawn += got;
+        }
 
-                        if (!(r instanceof Substation)) {
-                            outTick += gotten - leftover;
-                        }
+        return drawn;
+    }
 
-                        remainingRequest -= gotten - leftover;
-                    }
-                }
-            }
+    /**
+     * Gives power the receivers did not take back to the donors, in proportion to what they gave
+     */
+    private void refundStoredPower(double leftover, double drawn) {
+        if (leftover <= 0 || drawn <= 0) return;
+
+        double fraction = Math.min(1, leftover / drawn);
+        int i = 0;
+        for (Structure<?> d : donorVertices) {
+            if (donorDraws[i] > 0) d.refundPower(donorDraws[i] * fraction);
+            i++;
         }
     }
 
@@ -393,92 +468,34 @@ public class PowerNetwork {
         if (!a.getSchema().highPower || !b.getSchema().highPower) {
             return NetworkStrength.CopperCable;
         } else {
-            IntMap<Boolean> connectionsA = highPowerConnections.get(a.getIndex());
-
-            // might not actually be connectd
-            if (connectionsA == null) return null;
-
-            Boolean connectionA = connectionsA.get(b.getIndex());
-
-            if (connectionA == null) {
-                // we dont know about the connection: search it
-                dfsScratch.clear();
-                return findConnection(a, b);
-            } else if (connectionA) {
-                // we know of a fast connection
+            int groupA = getHighPowerGroup(a);
+            if (groupA > -1 && groupA == getHighPowerGroup(b)) {
                 return NetworkStrength.PowerPole;
             } else {
-                // we know that no fast connection exists
                 return NetworkStrength.CopperCable;
             }
         }
     }
 
+    public void clearHighPowerCache() {
+        highPowerComponents.dirty = true;
+    }
+
     /**
-     * Recursively search for a connection between a and b
+     * @return the index of a structure reachable through power poles that stands for all of them, or -1 if the
+     *         structure has no power pole connection
      */
-    private NetworkStrength findConnection(Structure<?> a, Structure<?> b) {
-        int keyA = a.getIndex();
-        int keyB = b.getIndex();
-
-        dfsScratch.add(keyA);
-
-        IntMap<Boolean> connectionsA = highPowerConnections.get(keyA);
-        Boolean connectionA = connectionsA.get(keyB);
-
-        if (connectionA == null) {
-            // go through directly connected neighbors, 
-            // maybe it's them or they already know about
-            // the transitive connection
+    int getHighPowerGroup(Structure<?> s) {
+        if (highPowerComponents.dirty) {
+            highPowerComponents.clear();
 
-            // BFS first round for direct neighbors
-            for (Edge e : edges.get(keyA)) {
-                if (e != null && e.getNetworkStrength() == NetworkStrength.PowerPole) {
-                    Structure<?> edgeB = e.getOther(a);
-
-                    // do not go backwards in the path
-                    if (dfsScratch.contains(edgeB.getIndex())) continue;
-
-                    if (edgeB.getIndex() == keyB) {
-                        // our direct neighbor is B
-                        connectionA = true;
-                        break;
-                    }
-                }
+            for (Edge e : edgeSet) {
+                if (e.getNetworkStrength() == NetworkStrength.PowerPole)
+                    highPowerComponents.union(e.getA().getIndex(), e.getB().getIndex());
             }
-
-            // go deeper if no direct neighbor
-            if (connectionA == null) {
-                for (Edge e : edges.get(keyA)) {
-                    if (e != null && e.getNetworkStrength() == NetworkStrength.PowerPole) {
-                        Structure<?> edgeB = e.getOther(a);
-
-                        // do not go backwards in the path
-                        if (dfsScratch.contains(edgeB.getIndex())) continue;
-
-                        connectionA = findConnection(edgeB, b) == NetworkStrength.PowerPole;
-                        if (connectionA != null) break;
-                    }
-                }
-            }
-
-            // if we could not find a path, there is none.
-            if (connectionA == null) {
-                connectionA = false;
-            }
-
-            // store information
-            connectionsA.put(keyB, connectionA);
-            IntMap<Boolean> connectionsB = highPowerConnections.get(keyB);
-            connectionsB.put(keyA, connectionA);
         }
 
-        return connectionA ? NetworkStrength.PowerPole : NetworkStrength.CopperCable;
-    }
-
-    public void clearHighPowerCache() {
-        for (IntMap<Boolean> set : highPowerConnections.values())
-            if (set != null) set.clear();
+        return highPowerComponents.find(s.getIndex());
     }
 
     public boolean isEmpty() {
@@ -550,18 +567,26 @@ public class PowerNetwork {
         if (existingEdge == null) {
             PowerNetwork oldNetwork = target.getPowerNetwork();
 
-            addEdge(node, nodeDockIndex, target, targetDockIndex, networkStrength);
-            grid.mergeNetworks(node.getPowerNetwork(), oldNetwork);
+            // join the smaller network into the larger one, so that connecting many new structures stays linear
+            if (oldNetwork != null && oldNetwork != this && oldNetwork.edgeSet.size() > edgeSet.size()) {
+                oldNetwork.addEdge(node, nodeDockIndex, target, targetDockIndex, networkStrength);
+                grid.mergeNetworks(oldNetwork, this);
+            } else {
+                addEdge(node, nodeDockIndex, target, targetDockIndex, networkStrength);
+                grid.mergeNetworks(node.getPowerNetwork(), oldNetwork);
+            }
         } else if (existingEdge.getA() == node && target != existingEdge.getB()) {
             existingEdge.setB(target);
             existingEdge.setDockA(nodeDockIndex);
             existingEdge.setDockB(targetDockIndex);
             addVertex(target);
+            if (existingEdge.getNetworkStrength() == NetworkStrength.PowerPole) highPowerComponents.dirty = true;
         } else if (existingEdge.getB() == node && target != existingEdge.getA()) {
             existingEdge.setA(target);
             existingEdge.setDockA(targetDockIndex);
             existingEdge.setDockB(nodeDockIndex);
             addVertex(target);
+            if (existingEdge.getNetworkStrength() == NetworkStrength.PowerPole) highPowerComponents.dirty = true;
         }
     }
 
@@ -645,6 +670,12 @@ public class PowerNetwork {
 
                 j++;
             }
+
+            // joined into another network or split off, the remaining docks have to be checked over there
+            if (node.getPowerNetwork() != this) {
+                node.getPowerNetwork().updateConnections(node);
+                return;
+            }
         }
     }
 
@@ -672,12 +703,7 @@ public class PowerNetwork {
             edges.put(keyB, edgesOfB);
 
             if (e.getNetworkStrength() == NetworkStrength.PowerPole) {
-                IntMap<Boolean> connectionsA = highPowerConnections.get(keyA);
-                connectionsA.remove(keyB);
-                IntMap<Boolean> connectionsB = highPowerConnections.get(keyB);
-                connectionsB.remove(keyA);
-
-                grid.clearHighPowerCache();
+                highPowerComponents.dirty = true;
             }
 
             if (createIslandNetworks) {
@@ -0,0 +1,127 @@
+package de.dakror.quarry.game.power;
+
+import de.dakror.quarry.structure.base.Structure;
+
+/**
+ * Splits an amount of power across a set of structures in closed form instead of handing out slices in passes.
+ * This is the split the passes were approaching: every entry is offered the same piece per point of priority, and
+ * whatever an entry does not need is shared among the others the same way. So each entry gets
+ * <code>min(demand, mu * priority)</code>, with <code>mu</code> picked such that the whole supply is handed out.
+ * Unlike the passes the result does not depend on the order of the entries.
+ *
+ * @author Maximilian Stark | Dakror
+ */
+class PowerSolver {
+    Structure<?>[] entries = new Structure<?>[16];
+    double[] demands = new double[16];
+    double[] strengths = new double[16];
+    int[] priorities = new int[16];
+    boolean[] saturated = new boolean[16];
+    int size;
+
+    double totalDemand;
+
+    // power per point of priority for the entries that are not saturated
+    double mu;
+
+    void clear() {
+        for (int i = 0; i < size; i++)
+            entries[i] = null;
+        size = 0;
+        totalDemand = 0;
+        mu = 0;
+    }
+
+    void add(Structure<?> s, int priority, double demand, double networkStrength) {
+        if (demand <= 0 || priority <= 0) return;
+
+        if (size == entries.length) {
+            int len = size * 2;
+            Structure<?>[] e = new Structure<?>[len];
+            System.arraycopy(entries, 0, e, 0, size);
+            entries = e;
+            double[] d = new double[len];
+            System.arraycopy(demands, 0, d, 0, size);
+            demands = d;
+            double[] st = new double[len];
+            System.arraycopy(strengths, 0, st, 0, size);
+            strengths = st;
+            int[] p = new int[len];
+            System.arraycopy(priorities, 0, p, 0, size);
+            priorities = p;
+            saturated = new boolean[len];
+        }
+
+        entries[size] = s;
+        demands[size] = demand;
+        strengths[size] = networkStrength;
+        priorities[size] = priority;
+        size++;
+
+        totalDemand += demand;
+    }
+
+    /**
+     * Lowers the demand of an entry after it got power. An entry that refused part of its share is dropped from
+     * further rounds.
+     */
+    void settle(int index, double got, boolean refused) {
+        double d = refused ? demands[index] : Math.min(got, demands[index]);
+        demands[index] -= d;
+        totalDemand -= d;
+
+        if (demands[index] < 1) {
+            totalDemand -= demands[index];
+            demands[index] = 0;
+        }
+    }
+
+    /**
+     * Works out which entries get their whole demand and the piece per point of priority for the rest.
+     * Solves sum(min(demand, mu * priority)) = supply. Every sweep saturates the entries whose demand fits below the
+     * current mu, which can only raise mu for the others, until a sweep saturates no one.
+     *
+     * @return the amount of power handed out
+     */
+    double solve(double supply) {
+        if (supply <= 0 || totalDemand <= 0) {
+            for (int i = 0; i < size; i++)
+                saturated[i] = false;
+            mu = 0;
+            return 0;
+        }
+
+        if (supply >= totalDemand) {
+            for (int i = 0; i < size; i++)
+                saturated[i] = true;
+            return totalDemand;
+        }
+
+        double rest = supply;
+        long weight = 0;
+        for (int i = 0; i < size; i++) {
+            saturated[i] = demands[i] <= 0;
+            if (!saturated[i]) weight += priorities[i];
+        }
+
+        boolean changed = true;
+        while (changed && weight > 0) {
+            mu = rest / weight;
+            changed = false;
+            for (int i = 0; i < size; i++) {
+                if (!saturated[i] && demands[i] <= mu * priorities[i]) {
+                    saturated[i] = true;
+                    rest -= demands[i];
+                    weight -= priorities[i];
+                    changed = true;
+                }
+            }
+        }
+
+        return supply;
+    }
+
+    double getShare(int index) {
+        return saturated[index] ? demands[index] : mu * priorities[index];
+    }
+}
@@ -28,7 +28,6 @@ import java.util.EnumMap;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -67,6 +66,7 @@ import com.badlogic.gdx.scenes.scene2d.Actor;
 import com.badlogic.gdx.scenes.scene2d.utils.TextureRegionDrawable;
 import com.badlogic.gdx.utils.Array;
 import com.badlogic.gdx.utils.Base64Coder;
+import com.badlogic.gdx.utils.IntArray;
 import com.badlogic.gdx.utils.IntMap;
 import com.badlogic.gdx.utils.IntSet;
 import com.badlogic.gdx.utils.IntSet.IntSetIterator;
@@ -91,9 +91,6 @@ import de.dakror.common.libgdx.io.NBT.ListTag;
 import de.dakror.common.libgdx.io.NBT.NBTException;
 import de.dakror.common.libgdx.io.NBT.Tag;
 import de.dakror.common.libgdx.io.NBT.TagType;
-import de.dakror.common.libgdx.math.AStar;
-import de.dakror.common.libgdx.math.AStar.Network;
-import de.dakror.common.libgdx.math.AStar.Visitor;
 import de.dakror.common.libgdx.render.BatchDelegate;
 import de.dakror.common.libgdx.render.DepthSpriter;
 import de.dakror.common.libgdx.ui.ColorUtil;
@@ -108,11 +105,14 @@ import de.dakror.quarry.game.Item.ItemType;
 import de.dakror.quarry.game.Item.Items;
 import de.dakror.quarry.game.Item.Items.Amount;
 import de.dakror.quarry.game.Layer;
+import de.dakror.quarry.game.LayerLoader;
 import de.dakror.quarry.game.LoadingCompat;
+import de.dakror.quarry.game.SaveFile;
 import de.dakror.quarry.game.Science;
 import de.dakror.quarry.game.Science.ScienceType;
 import de.dakror.quarry.game.Tile.TileMeta;
 import de.dakror.quarry.game.Tile.TileType;
+import de.dakror.quarry.game.TrailPathfinder;
 import de.dakror.quarry.game.power.Edge;
 import de.dakror.quarry.game.power.PowerGrid;
 import de.dakror.quarry.game.power.PowerNetwork;
@@ -689,21 +689,16 @@ public class Game extends GameScene {
                 return;
 
             activeStructureTrail.clear();
-            activeStructurePath.clear();
-            if (activeStructure instanceof CopperCable) {
-                activeStructurePath.addAll(tilePathfinding.findPath(cableNetwork,
-                        (int) (endB.x * layer.height + endB.y),
-                        (int) (endA.x * layer.height + endA.y)));
-            } else {
-                activeStructurePath.addAll(tilePathfinding.findPath(tileNetwork,
-                        (int) (endB.x * layer.height + endB.y),
-                        (int) (endA.x * layer.height + endA.y)));
-            }
+            trailPathfinder.findPath(layer, activeStructure instanceof CopperCable,
+                    !(activeStructure instanceof Conveyor), !(activeStructure instanceof FluidTubeStructure),
+                    (int) (endB.x * layer.height + endB.y),
+                    (int) (endA.x * layer.height + endA.y), activeStructurePath);
 
             Structure<?> last = null;
 
-            if (activeStructurePath.size() > 0) {
-                for (int i : activeStructurePath) {
+            if (activeStructurePath.size > 0) {
+                for (int k = 0; k < activeStructurePath.size; k++) {
+                    int i = activeStructurePath.items[k];
                     int x = i / layer.height;
                     int y = i % layer.height;
 
@@ -1049,14 +1044,14 @@ public class Game extends GameScene {
                 return false;
 
             if (endB.x > -1) {
-                if (activeStructurePath.isEmpty()) {
+                if (activeStructurePath.size == 0) {
                     return false;
                 }
 
                 synchronized (highlightLock) {
                     if (tutorialHighlight.size > 0) {
-                        for (int i : activeStructurePath) {
-                            if (!tutorialHighlight.contains(i))
+                        for (int k = 0; k < activeStructurePath.size; k++) {
+                            if (!tutorialHighlight.contains(activeStructurePath.items[k]))
                                 return false;
                         }
                     }
@@ -1210,10 +1205,10 @@ public class Game extends GameScene {
                 // check if pre-existing conveyor at endA should be rotated
                 if (activeStructure instanceof Conveyor
                         && !activeStructureTrail.containsKey((int) (endA.x * layer.height + endA.y))
-                        && activeStructurePath.size() > 0) {
+                        && activeStructurePath.size > 0) {
                     Structure<?> s = layer.getStructure((int) endA.x, (int) endA.y);
                     if (s != null && s instanceof Conveyor) {
-                        int first = activeStructurePath.get(activeStructurePath.size() - 1);
+                        int first = activeStructurePath.peek();
                         int dx = first / layer.height - (int) endA.x;
                         int dy = first % layer.height - (int) endA.y;
 
@@ -1256,6 +1251,7 @@ public class Game extends GameScene {
                 placingTrail = false;
             } else {
                 if (pasteMode) {
+                    Array<Structure<?>> placed = new Array<>();
                     Array<Pair<Structure<?>, CompoundTag>> pairs = new Array<>();
                     for (Pair<Structure<?>, CompoundTag> p : copyStructures.values()) {
                         Structure<?> s = p.getKey();
@@ -1282,19 +1278,29 @@ public class Game extends GameScene {
                             pairs.add(new Pair<Structure<?>, CompoundTag>(q, p.getVal()));
                         } else {*/
                         Structure<?> q = (Structure<?>) s.clone();
-                        placeStructure(layer, q);
+                        placed.add(q);
                         pairs.add(new Pair<Structure<?>, CompoundTag>(q, p.getVal()));
                         //}
                     }
 
                     for (Pair<Structure<?>, CompoundTag> s : copyCables.values()) {
                         Structure<?> q = (Structure<?>) s.getKey().clone();
-                        placeStructure(layer, q);
+                        placed.add(q);
                         pairs.add(new Pair<Structure<?>, CompoundTag>(q, s.getVal()));
                     }
 
-                    for (Pair<Structure<?>, CompoundTag> s : pairs) {
-                        s.getKey().paste(copyRegion, s.getVal());
+                    if (layer.addStructures(placed)) {
+                        for (Structure<?> q : placed) {
+                            onStructurePlaced(layer, q);
+                        }
+
+                        if (Quarry.Q.sound.isPlaySound()) {
+                            buildSfx.play(Quarry.Q.sound.getSoundVolume(), (float) (Math.random() * 0.4 + 0.6), 0);
+                        }
+
+                        for (Pair<Structure<?>, CompoundTag> s : pairs) {
+                            s.getKey().paste(copyRegion, s.getVal());
+                        }
                     }
                 } else {
                     // check if conveyor next to endA has a free end and could be made to fit us
@@ -1332,60 +1338,67 @@ public class Game extends GameScene {
 
         protected void placeStructure(Layer currentLayer, Structure<?> structure) {
             if (currentLayer.addStructure(structure)) {
-                if (!GOD_MODE) {
-                    Items costs = structure.getSchema().buildCosts;
+                onStructurePlaced(currentLayer, structure);
 
-                    for (Amount e : costs.entries) {
-                        removeResources(e.getItem(), e.getAmount(), true);
-                    }
+                //                spatializedPlayer.play(structure, buildSfx, (float) (Math.random() * 0.4 + 0.6), false);
+                if (Quarry.Q.sound.isPlaySound()) {
+                    buildSfx.play(Quarry.Q.sound.getSoundVolume(), (float) (Math.random() * 0.4 + 0.6), 0);
                 }
+            }
+        }
 
-                synchronized (highlightLock) {
-                    if (tutorialHighlight.size > 0) {
-                        for (int i = 0; i < structure.getWidth(); i++) {
-                            for (int j = 0; j < structure.getHeight(); j++) {
-                                tutorialHighlight.remove((i + structure.x) * currentLayer.height + (j + structure.y));
-                            }
-                        }
-                    }
+        /**
+         * Pays for a structure that has been placed and plays its dust effect
+         */
+        protected void onStructurePlaced(Layer currentLayer, Structure<?> structure) {
+            if (!GOD_MODE) {
+                Items costs = structure.getSchema().buildCosts;
+
+                for (Amount e : costs.entries) {
+                    removeResources(e.getItem(), e.getAmount(), true);
                 }
+            }
 
-                if (!structure.getSchema().has(Flags.NoDustEffect)) {
-                    // pfx
+            synchronized (highlightLock) {
+                if (tutorialHighlight.size > 0) {
                     for (int i = 0; i < structure.getWidth(); i++) {
-                        PooledEffect effect = dustPfxD.obtain();
-                        effect.reset();
-                        effect.setPosition(Const.TILE_SIZE * (structure.x + i), Const.TILE_SIZE * structure.y);
-                        effect.setDuration(10);
-                        layer.addParticleEffect(effect, true);
-
-                        effect = dustPfxU.obtain();
-                        effect.reset();
-                        effect.setPosition(Const.TILE_SIZE * (structure.x + i),
-                                Const.TILE_SIZE * (structure.y + structure.getHeight()));
-                        effect.setDuration(10);
-                        currentLayer.addParticleEffect(effect, true);
+                        for (int j = 0; j < structure.getHeight(); j++) {
+                            tutorialHighlight.remove((i + structure.x) * currentLayer.height + (j + structure.y));
+                        }
                     }
+                }
+            }
 
-                    for (int i = 0; i < structure.getHeight(); i++) {
-                        PooledEffect effect = dustPfxL.obtain();
-                        effect.reset();
-                        effect.setPosition(Const.TILE_SIZE * structure.x, Const.TILE_SIZE * (structure.y + i));
-                        effect.setDuration(10);
-                        layer.addParticleEffect(effect, true);
-
-                        effect = dustPfxR.obtain();
-                        effect.reset();
-                        effect.setPosition(Const.TILE_SIZE * (structure.x + structure.getWidth()),
-                                Const.TILE_SIZE * (structure.y + i));
-                        effect.setDuration(10);
-                        currentLayer.addParticleEffect(effect, true);
-                    }
+            if (!structure.getSchema().has(Flags.NoDustEffect)) {
+                // pfx
+                for (int i = 0; i < structure.getWidth(); i++) {
+                    PooledEffect effect = dustPfxD.obtain();
+                    effect.reset();
+                    effect.setPosition(Const.TILE_SIZE * (structure.x + i), Const.TILE_SIZE * structure.y);
+                    effect.setDuration(10);
+                    layer.addParticleEffect(effect, true);
+
+                    effect = dustPfxU.obtain();
+                    effect.reset();
+                    effect.setPosition(Const.TILE_SIZE * (structure.x + i),
+                            Const.TILE_SIZE * (structure.y + structure.getHeight()));
+                    effect.setDuration(10);
+                    currentLayer.addParticleEffect(effect, true);
                 }
 
-                //                spatializedPlayer.play(structure, buildSfx, (float) (Math.random() * 0.4 + 0.6), false);
-                if (Quarry.Q.sound.isPlaySound()) {
-                    buildSfx.play(Quarry.Q.sound.getSoundVolume(), (float) (Math.random() * 0.4 + 0.6), 0);
+                for (int i = 0; i < structure.getHeight(); i++) {
+                    PooledEffect effect = dustPfxL.obtain();
+                    effect.reset();
+                    effect.setPosition(Const.TILE_SIZE * structure.x, Const.TILE_SIZE * (structure.y + i));
+                    effect.setDuration(10);
+                    layer.addParticleEffect(effect, true);
+
+                    effect = dustPfxR.obtain();
+                    effect.reset();
+                    effect.setPosition(Const.TILE_SIZE * (structure.x + structure.getWidth()),
+                            Const.TILE_SIZE * (structure.y + i));
+                    effect.setDuration(10);
+                    currentLayer.addParticleEffect(effect, true);
                 }
             }
         }
@@ -1493,6 +1506,10 @@ public class Game extends GameScene {
     public static boolean SINGLE_FRAME = false;
     public static boolean UI_VISIBLE = true;
     public static boolean SMOOTH_CAMERA = false;
+    /** 0: classic chunk by chunk update, 1: scheduled update on the update thread, &gt;1: scheduled update on that many threads */
+    public static int UPDATE_THREADS = 0;
+    /** layers further away from the active one drop their GL state and are paged out when idle */
+    public static final int PAGE_DISTANCE = 3;
 
     private static final Pattern fileRegex = Pattern.compile("[^0-9a-zA-Z-_]");
 
@@ -1509,7 +1526,6 @@ public class Game extends GameScene {
     Batch batch;
     BatchDelegate delegate;
     OrthographicCamera cam;
-    OrthographicCamera fboCam;
     ShaderProgram colorShader;
     ShapeRenderer shaper;
     DepthSpriter spriter;
@@ -1524,99 +1540,24 @@ public class Game extends GameScene {
     // Player stuff
     private Array<Layer> layers;
     private LayerIterable layerIter = new LayerIterable();
-    FrameBuffer[] chunkFBOs; // array of fbo, one for each chunk per layer
     int layerIndex;
     public Layer layer;
     int deltaLayer;
+    // autosaves append to the journal of this save file, null if the next autosave has to write everything
+    String journalFile;
+    long journalSaveId;
+    int journalDeltas;
+    // layers that are in the save or its journal
+    int journalLayers;
     public final PowerGrid powerGrid = new PowerGrid();
-    AStar<Integer> tilePathfinding;
-    Network<Integer> tileNetwork = new AStar.Network<Integer>() {
-
-        @Override
-        public float getH(Integer start, Integer end) {
-            int x1 = start / layer.height;
-            int y1 = start % layer.height;
-
-            int x2 = end / layer.height;
-            int y2 = end % layer.height;
-
-            // euclid distance
-            //            return (float) Math.sqrt(Math.pow(x1 - x2, 2) + Math.pow(y1 - y2, 2));
-            // manhattan distance
-            return Math.abs(x2 - x1) + Math.abs(y2 - y1);
-        }
-
-        @Override
-        public float getEdgeLength(Integer start, Integer end) {
-            return layer.get(end / layer.height, end % layer.height) != TileType.Stone ? 1.25f : 1;
-        }
-
-        @Override
-        public void visitNeighbors(Integer node, Integer start, Integer end, Visitor<Integer> visitor) {
-            int x1 = node / layer.height;
-            int y1 = node % layer.height;
-
-            for (Direction d : Direction.values) {
-                int x2 = x1 + d.dx;
-                int y2 = y1 + d.dy;
-
-                if (x2 < 0 || y2 < 0 || x2 >= layer.width || y2 >= layer.height)
-                    continue;
-
-                int index = x2 * layer.height + y2;
-
-                if (trailStructureCanBePlaced(index, start, end)) {
-                    visitor.visit(index);
-                }
-            }
-        }
-    };
-    Network<Integer> cableNetwork = new AStar.Network<Integer>() {
-
-        @Override
-        public float getH(Integer start, Integer end) {
-            int x1 = start / layer.height;
-            int y1 = start % layer.height;
-
-            int x2 = end / layer.height;
-            int y2 = end % layer.height;
-
-            // euclid distance
-            //            return (float) Math.sqrt(Math.pow(x1 - x2, 2) + Math.pow(y1 - y2, 2));
-            // manhattan distance
-            return Math.abs(x2 - x1) + Math.abs(y2 - y1);
-        }
-
-        @Override
-        public float getEdgeLength(Integer start, Integer end) {
-            return 1;
-        }
-
-        @Override
-        public void visitNeighbors(Integer node, Integer start, Integer end, Visitor<Integer> visitor) {
-            int x1 = node / layer.height;
-            int y1 = node % layer.height;
-
-            for (Direction d : Direction.values) {
-                int x2 = x1 + d.dx;
-                int y2 = y1 + d.dy;
-
-                if (x2 < 0 || y2 < 0 || x2 >= layer.width || y2 >= layer.height)
-                    continue;
-
-                int index = x2 * layer.height + y2;
-
-                if (trailStructureCanBePlaced(index, start, end)) {
-                    visitor.visit(index);
-                }
-            }
-        }
-    };
+    final TrailPathfinder trailPathfinder = new TrailPathfinder();
 
     public EnumSet<ScienceType> sciences;
     public EnumSet<ScienceType> currentSciences;
 
     protected EnumMap<ItemType, Integer> resources;
+    // scratch space for removeResources
+    final Array<StorageStructure> resourceHolders = new Array<>(StorageStructure.class);
     protected EnumSet<ItemType> seenResources;
 
     // fbo / saving
@@ -1642,7 +1583,7 @@ public class Game extends GameScene {
     // Is controlled (partly) by BuildRing
     public Structure<?> activeStructure;
     public final IntMap<Structure<?>> activeStructureTrail = new IntMap<>();
-    public final List<Integer> activeStructurePath = new LinkedList<>();
+    public final IntArray activeStructurePath = new IntArray();
     public boolean structureDestroyMode;
     public boolean cableDestroyMode;
     public boolean bulkDestroyMode;
@@ -1707,6 +1648,8 @@ public class Game extends GameScene {
     long lastAutosave;
     boolean autosaving;
 
+    boolean headless;
+
     // smooth camera
     Vector3 cameraVelocity = new Vector3();
     final Vector3 tmp3 = new Vector3();
@@ -1735,10 +1678,7 @@ public class Game extends GameScene {
         delegate = new BatchDelegate(Quarry.Q.atlas.getTextures().first(), batch);
         pfxBatch = new SpriterDelegateBatch(spriter);
 
-        fboCam = new OrthographicCamera(Const.CHUNK_FULL_SIZE, Const.CHUNK_FULL_SIZE);
         viewport = new FitViewport(Const.W, Const.H, cam);
-        fboCam.position.set(0.5f * Const.CHUNK_FULL_SIZE, 0.5f * Const.CHUNK_FULL_SIZE, fboCam.near);
-        fboCam.update();
         caret = Quarry.Q.atlas.findRegion("caret_down");
 
         currentSciences = EnumSet.noneOf(ScienceType.class);
@@ -1755,9 +1695,6 @@ public class Game extends GameScene {
         //        cam.position.set(Const.W / 2, Const.H / 2, 0);
         input.addProcessor(camControl.input);
 
-        chunkFBOs = new FrameBuffer[(Const.DEFAULT_LAYER_SIZE / Const.CHUNK_SIZE)
-                * (Const.DEFAULT_LAYER_SIZE / Const.CHUNK_SIZE)];
-
         spatializer = new StructureSoundSpatializer();
         spatializer.setVerticalRange(8);
         spatializer.setHorizontalRange(8);
@@ -1775,9 +1712,6 @@ public class Game extends GameScene {
         baseAmb = new AmbientSound(Quarry.Q.assets.get("sfx/ambience_base" + Const.SFX_FORMAT, Sound.class), 0.25f);
         heavyAmb = new AmbientSound(Quarry.Q.assets.get("sfx/ambience_heavy" + Const.SFX_FORMAT, Sound.class), 0.25f);
 
-        tilePathfinding = new AStar<>();
-        tilePathfinding.setMaxTime(100);
-
         ///// Pallet item generator
         //        int meta = 2;
         //        for (ItemType i : ItemType.values()) {
@@ -1787,6 +1721,26 @@ public class Game extends GameScene {
         //        }
     }
 
+    /**
+     * Sets up only what is needed to load and simulate a save. No shaders, ui, camera or sound are created.
+     */
+    public void initHeadless() {
+        G = this;
+        headless = true;
+
+        currentSciences = EnumSet.noneOf(ScienceType.class);
+        sciences = EnumSet.noneOf(ScienceType.class);
+        resources = new EnumMap<>(ItemType.class);
+        seenResources = EnumSet.noneOf(ItemType.class);
+        copyCost = new EnumMap<>(ItemType.class);
+
+        initParticles();
+    }
+
+    public boolean isHeadless() {
+        return headless;
+    }
+
     protected void initParticles() {
         ParticleEffect fire = new ParticleEffect();
         fire.load(Gdx.files.internal("pfx/oven_fire.p"), Quarry.Q.atlas);
@@ -1932,31 +1886,6 @@ public class Game extends GameScene {
         ui.menu.init();
 
         Gdx.input.setCatchBackKey(true);
-
-        // initialize fbos
-        int chunksH = (int) Math.ceil(Const.DEFAULT_LAYER_SIZE / Const.CHUNK_SIZE);
-
-        for (int i = 0; i < Const.DEFAULT_LAYER_SIZE; i += Const.CHUNK_SIZE) {
-            for (int j = 0; j < Const.DEFAULT_LAYER_SIZE; j += Const.CHUNK_SIZE) {
-                chunkFBOs[i / Const.CHUNK_SIZE * chunksH + j / Const.CHUNK_SIZE] = new FrameBuffer(Format.RGB565,
-                        Const.CHUNK_FULL_SIZE, Const.CHUNK_FULL_SIZE, false);
-            }
-        }
-    }
-
-    @Override
-    public void hide() {
-        super.hide();
-
-        for (int i = 0; i < chunkFBOs.length; i++) {
-            try {
-                // apparently can be run on non-main thread. too lazy to introduce a proper main-thread looper
-                chunkFBOs[i].dispose();
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
-            chunkFBOs[i] = null;
-        }
     }
 
     @Override
@@ -2035,28 +1964,10 @@ public class Game extends GameScene {
 
         camControl.update();
         if (SINGLE_FRAME) {
-            powerGrid.update(deltaTime, gameSpeed);
-
-            synchronized (layerLock) {
-                for (Layer l : layers) {
-                    l.update(deltaTime, gameSpeed);
-                    if (l.getIndex() != layerIndex) {
-                        l.postUpdate();
-                    }
-                }
-            }
+            updateWorld(deltaTime, gameSpeed);
             SINGLE_FRAME = false;
         } else {
-            powerGrid.update(deltaTime, gamePaused ? 0 : gameSpeed);
-
-            synchronized (layerLock) {
-                for (Layer l : layers) {
-                    l.update(deltaTime, gamePaused ? 0 : gameSpeed);
-                    if (l.getIndex() != layerIndex) {
-                        l.postUpdate();
-                    }
-                }
-            }
+            updateWorld(deltaTime, gamePaused ? 0 : gameSpeed);
         }
 
         ui.update(deltaTime);
@@ -2098,6 +2009,24 @@ public class Game extends GameScene {
         //        System.out.println("I: " + layer.getEntityCount());
     }
 
+    /**
+     * Advances the power grid and all layers by one tick. Does not touch camera, input or sound, so it can be driven
+     * without any rendering going on.
+     */
+    public void updateWorld(double deltaTime, int gameSpeed) {
+        powerGrid.update(deltaTime, gameSpeed);
+
+        synchronized (layerLock) {
+            for (Layer l : layers) {
+                l.update(deltaTime, gameSpeed);
+                // the active layer's dirty bounds get consumed when drawing, which never happens in headless mode
+                if (headless || l.getIndex() != layerIndex) {
+                    l.postUpdate();
+                }
+            }
+        }
+    }
+
     private void takeScreenShot(final boolean record) {
         FrameBuffer fbo = record ? recordFbo : screenshotFbo;
 
@@ -2111,7 +2040,7 @@ public class Game extends GameScene {
 
         batch.setProjectionMatrix(cam.combined);
         batch.begin();
-        layer.draw(cam, fboCam, null, batch, spriter, shaper, pfxBatch);
+        layer.draw(cam, batch, spriter, shaper, pfxBatch);
         batch.end();
 
         Gdx.gl.glPixelStorei(GL20.GL_PACK_ALIGNMENT, 1);
@@ -2189,7 +2118,7 @@ public class Game extends GameScene {
             batch.setProjectionMatrix(thumbCam.combined);
 
             batch.begin();
-            layer.draw(thumbCam, fboCam, viewport, batch, spriter, shaper, pfxBatch);
+            layer.draw(thumbCam, batch, spriter, shaper, pfxBatch);
             batch.end();
 
             byte[] pixels = ScreenUtils.getFrameBufferPixels(0, 0, fbo.getWidth(), fbo.getHeight(), true);
@@ -2275,7 +2204,7 @@ public class Game extends GameScene {
         batch.begin();
 
         synchronized (layerLock) {
-            layer.draw(cam, fboCam, viewport, batch, spriter, shaper, pfxBatch);
+            layer.draw(cam, batch, spriter, shaper, pfxBatch);
         }
 
         batch.end();
@@ -2775,17 +2704,16 @@ public class Game extends GameScene {
                 }
             }
 
-            List<Integer> open = tilePathfinding.getOpenList();
-            for (int i : open) {
+            for (int k = 0; k < trailPathfinder.getOpenCount(); k++) {
                 shaper.setColor(0, 0, 1, 0.3f);
+                int i = trailPathfinder.getOpen(k);
                 int x = i / layer.height;
                 int y = i % layer.height;
                 shaper.rect(x * Const.TILE_SIZE, y * Const.TILE_SIZE, Const.TILE_SIZE, Const.TILE_SIZE);
             }
-            List<Integer> closed = tilePathfinding.getClosedList();
-            shaper.setColor(0, 1, 0, 0.3f);
-            for (int i : closed) {
-                shaper.setColor(1, 0, 0, 0.3f);
+            shaper.setColor(1, 0, 0, 0.3f);
+            for (int i = 0; i < layer.width * layer.height; i++) {
+                if (!trailPathfinder.isClosed(i)) continue;
                 int x = i / layer.height;
                 int y = i % layer.height;
                 shaper.rect(x * Const.TILE_SIZE, y * Const.TILE_SIZE, Const.TILE_SIZE, Const.TILE_SIZE);
@@ -2848,8 +2776,7 @@ public class Game extends GameScene {
                 if (l >= 0 && l < layers.size) {
                     layerIndex += deltaLayer;
                     layer = layers.get(layerIndex);
-                    for (Chunk c : layer.getChunks())
-                        c.dirty = true;
+                    pageLayers();
 
                     if (!layer.pendingBounds.isEmpty()) {
                         layer.dirtyBounds.add(layer.pendingBounds);
@@ -3085,7 +3012,7 @@ public class Game extends GameScene {
                     return false;
                 } else {
                     activeStructureTrail.remove(i);
-                    activeStructurePath.remove((Integer) i);
+                    activeStructurePath.removeValue(i);
                 }
             }
         }
@@ -3120,7 +3047,8 @@ public class Game extends GameScene {
                     }
 
                     if (remaining > 0) {
-                        ui.toast.show(Quarry.Q.i18n.get("toast.refund_full"));
+                        if (ui != null)
+                            ui.toast.show(Quarry.Q.i18n.get("toast.refund_full"));
                         // Delete items forever
                         amount -= remaining;
                     }
@@ -3136,7 +3064,8 @@ public class Game extends GameScene {
             resourceChangeNotifier.notify(Type.ADD, resourceChangePair.set(item, amount));
             getSeenResources().add(item);
 
-            ui.updateResources(true);
+            if (ui != null)
+                ui.updateResources(true);
             if (activeStructure != null)
                 camControl.updateActiveElementPlaceable();
         }
@@ -3161,23 +3090,21 @@ public class Game extends GameScene {
 
             if (removeFromAStorage) {
                 synchronized (layerLock) {
-                    for (Layer layer : layers) {
-                        for (Chunk c : layer.getChunks()) {
-                            if (c != null && c.isInit()) {
-                                for (Structure<?> s : c.getStructures()) {
-                                    if (s instanceof StorageStructure) {
-                                        remaining = ((StorageStructure) s).removeFromInventoryWithRest(item, remaining);
-                                        if (remaining == 0)
-                                            break;
-                                    }
-                                }
-                            }
+                    o: for (Layer layer : layers) {
+                        layer.getHolders(item, resourceHolders);
+                        for (int i = 0; i < resourceHolders.size; i++) {
+                            remaining = resourceHolders.get(i).removeFromInventoryWithRest(item, remaining);
+                            if (remaining == 0)
+                                break o;
                         }
+                        resourceHolders.clear();
                     }
+                    resourceHolders.clear();
                 }
             }
 
-            ui.updateResources(true);
+            if (ui != null)
+                ui.updateResources(true);
             if (activeStructure != null)
                 camControl.updateActiveElementPlaceable();
 
@@ -3200,7 +3127,7 @@ public class Game extends GameScene {
 
     public synchronized void addSeenResource(ItemType item) {
         synchronized (resourceLock) {
-            if (getSeenResources().add(item))
+            if (getSeenResources().add(item) && ui != null)
                 ui.updateResources(true);
         }
     }
@@ -3225,26 +3152,22 @@ public class Game extends GameScene {
         EnumMap<ItemType, Integer> res = new EnumMap<>(ItemType.class);
         synchronized (layerLock) {
             for (Layer l : layers) {
-                for (Chunk c : l.getChunks()) {
-                    if (c != null) {
-                        for (Structure<?> s : c.getStructures()) {
-                            if (s instanceof Storage) {
-                                CInventory ci = (CInventory) s.getComponents()[0];
-                                for (EnumMap.Entry<ItemType, Integer> e : ci.getAll()) {
-                                    Integer v = res.get(e.getKey());
-                                    v = v == null ? 0 : v;
-                                    res.put(e.getKey(), v + e.getValue());
-                                }
-                            }
-                            if (s instanceof Barrel) {
-                                CSingleInventory ci = (CSingleInventory) s.getComponents()[0];
+                for (StorageStructure s : l.storages) {
+                    if (s instanceof Storage) {
+                        CInventory ci = (CInventory) s.getComponents()[0];
+                        for (int i = 0; i < ci.getTypeCount(); i++) {
+                            Integer v = res.get(ci.getType(i));
+                            v = v == null ? 0 : v;
+                            res.put(ci.getType(i), v + ci.getAmount(i));
+                        }
+                    }
+                    if (s instanceof Barrel) {
+                        CSingleInventory ci = (CSingleInventory) s.getComponents()[0];
 
-                                if (ci.getItem() != null) {
-                                    Integer v = res.get(ci.getItem());
-                                    v = v == null ? 0 : v;
-                                    res.put(ci.getItem(), v + ci.getCount());
-                                }
-                            }
+                        if (ci.getItem() != null) {
+                            Integer v = res.get(ci.getItem());
+                            v = v == null ? 0 : v;
+                            res.put(ci.getItem(), v + ci.getCount());
                         }
                     }
                 }
@@ -3254,7 +3177,8 @@ public class Game extends GameScene {
             resources.clear();
             resources.putAll(res);
             seenResources.addAll(res.keySet());
-            ui.updateResources(true);
+            if (ui != null)
+                ui.updateResources(true);
         }
     }
 
@@ -3384,88 +3308,193 @@ public class Game extends GameScene {
             meta.free();
 
             // Write data
-            Builder builder = new Builder("Save");
-            builder
-                    .Byte("version", Const.QSF_VERSION)
-                    .Int("build", Quarry.Q.versionNumber)
-                    .Byte("full", (byte) (Quarry.Q.fullVersion ? 1 : 0))
-                    .Long("playTime", playTime)
-                    .String("name", save)
-
-                    .Short("layer", (short) layerIndex)
-                    .Byte("infinite", (byte) (infinite ? 1 : 0))
-                    .Long("seed", Generator.G.getSeed())
-                    .LongArray("rng", Generator.G.getState())
-                    .List("Map", TagType.Compound);
-
-            synchronized (layerLock) {
-                for (Layer l : layers)
-                    l.save(builder);
-            }
-
-            builder
-                    .End()
-                    .Compound("Resources");
-            synchronized (resourceLock) {
-                Array<Short> seen = new Array<>();
+            FileHandle fh1 = Quarry.Q.file("TheQuarry/saves/" + file + ".qsf", true);
+            FileHandle journal = SaveFile.Journal.getFile(fh1);
 
-                for (ItemType seenResource : getSeenResources())
-                    seen.add(seenResource.value);
+            if (isAutosave && file.equals(journalFile) && journalDeltas < SaveFile.Journal.MAX_DELTAS && fh1.exists()
+                    && journal.length() < fh1.length()) {
+                // the save stays as it is, only the chunks that changed since the last autosave are appended to the journal
+                SaveFile.Snapshot snapshot = new SaveFile.Snapshot();
+                writeDelta(snapshot, save, file);
 
-                // god dammit
-                short[] s = new short[seen.size];
-                int i = 0;
-                for (Short q : seen)
-                    s[i++] = q;
+                SaveFile.Writer writer = new SaveFile.JournalWriter(journal);
+                try {
+                    snapshot.writeTo(writer);
+                    writer.finish();
+                } finally {
+                    snapshot.free();
+                    writer.close();
+                }
 
-                Util.NBTwriteInventory(builder, resources);
-                builder.ShortArray("Seen", s);
-            }
-            builder.End();
-
-            if (sciences.size() > 0) {
-                byte[] science = new byte[sciences.size()];
-                int i = 0;
-                for (ScienceType s : sciences)
-                    science[i++] = s.id;
-                builder.ByteArray("Sciences", science);
-            }
+                journalDeltas++;
+            } else {
+                if (fh1.exists()) {
+                    fh1.copyTo(Quarry.Q.file("TheQuarry/saves/" + file + "-old.qsf", true));
+                }
 
-            builder.Compound("camera")
-                    .Float("x", cam.position.x)
-                    .Float("y", cam.position.y)
-                    .Float("z", cam.position.z)
-                    .Float("zoom", cam.zoom)
-                    .End();
+                long saveId = MathUtils.random.nextLong();
+
+                if (isAutosave) {
+                    // only take a snapshot of the world while the simulation is stopped,
+                    // compression and writing to disk happen afterwards on this thread
+                    SaveFile.Snapshot snapshot = new SaveFile.Snapshot();
+                    writeWorld(snapshot, save, file, saveId, true);
+
+                    SaveFile.Writer writer = new SaveFile.Writer(fh1.write(false));
+                    try {
+                        snapshot.writeTo(writer);
+                        writer.finish();
+                    } finally {
+                        snapshot.free();
+                        writer.close();
+                    }
+                } else {
+                    // the world is streamed out layer by layer and chunk by chunk
+                    SaveFile.Writer writer = new SaveFile.Writer(fh1.write(false));
+                    try {
+                        writeWorld(writer, save, file, saveId, false);
+                        writer.finish();
+                    } finally {
+                        writer.close();
+                    }
+                }
 
-            CompoundTag data = builder.Get();
+                // belongs to the previous save id anyway
+                journal.delete();
 
-            FileHandle fh1 = Quarry.Q.file("TheQuarry/saves/" + file + ".qsf", true);
-            if (fh1.exists()) {
-                fh1.copyTo(Quarry.Q.file("TheQuarry/saves/" + file + "-old.qsf", true));
+                if (isAutosave) {
+                    journalFile = file;
+                    journalSaveId = saveId;
+                    journalDeltas = 0;
+                } else if (file.equals(journalFile)) {
+                    journalFile = null;
+                }
             }
 
-            NBT.write(fh1.write(false), data, CompressionType.Fast);
-
-            //            // This is debug only and its super slow
-            if (Quarry.Q.desktop && Quarry.Q.version.equals("debug"))
-                Quarry.Q.file("TheQuarry/saves/" + file + ".txt", true).writeString(data.toString(), false);
-
             saveThumbnailCache.remove(file);
 
-            data.free();
-
             ui.toast.show(Quarry.Q.i18n.get("toast.game_saved"));
             if (saveCallback != null) {
                 saveCallback.call(null);
                 saveCallback = null;
             }
         } catch (Exception e) {
+            // changes might be marked as saved, the next autosave has to write everything
+            journalFile = null;
             Quarry.Q.pi.message(PlatformInterface.MSG_EXCEPTION, e);
             ui.toast.show(Quarry.Q.i18n.get("toast.save_error"));
         }
     }
 
+    /**
+     * Writes the save header and all layers while holding the layer lock.
+     * Autosaves mark all chunks as saved, the journal only holds what changes after.
+     */
+    private void writeWorld(SaveFile.Writer writer, String save, String file, long saveId, boolean autosave) throws IOException {
+        synchronized (layerLock) {
+            writer.write(getSaveHeader(save, file, saveId));
+
+            for (Layer l : layers) {
+                l.save(writer);
+                if (autosave) l.clearChanges();
+            }
+
+            if (autosave) journalLayers = layers.size;
+        }
+    }
+
+    /**
+     * Writes a journal delta of everything that changed since the last autosave while holding the layer lock,
+     * see {@link SaveFile.Journal}
+     */
+    private void writeDelta(SaveFile.Writer writer, String save, String file) throws IOException {
+        synchronized (layerLock) {
+            IntArray added = new IntArray();
+            IntArray chunks = new IntArray();
+            for (Layer l : layers) {
+                boolean isNew = l.getIndex() >= journalLayers;
+                if (isNew) added.add(l.getIndex());
+                l.getChanges(chunks, isNew);
+            }
+
+            writer.write(new Builder("Delta")
+                    .Long("saveId", journalSaveId)
+                    .IntArray("layers", added.toArray())
+                    .IntArray("chunks", chunks.toArray()));
+            writer.write(getSaveHeader(save, file, journalSaveId));
+
+            for (int i = 0; i < added.size; i++)
+                layers.get(added.get(i)).saveHeader(writer);
+
+            for (int i = 0; i < chunks.size; i++) {
+                int key = chunks.get(i);
+                layers.get(key >>> 16).saveChunk(writer, key & 0xffff);
+            }
+
+            journalLayers = layers.size;
+        }
+    }
+
+    /**
+     * Has to be called while holding the layer lock
+     */
+    private CompoundTag getSaveHeader(String save, String file, long saveId) {
+        Builder builder = new Builder("Save");
+        builder
+                .Byte("version", Const.QSF_VERSION)
+                .Int("build", Quarry.Q.versionNumber)
+                .Byte("full", (byte) (Quarry.Q.fullVersion ? 1 : 0))
+                .Long("playTime", playTime)
+                .String("name", save)
+                .Long("saveId", saveId)
+
+                .Short("layer", (short) layerIndex)
+                .Byte("infinite", (byte) (infinite ? 1 : 0))
+                .Long("seed", Generator.G.getSeed())
+                .LongArray("rng", Generator.G.getState())
+                .Int("layers", layers.size)
+                .Compound("Resources");
+        synchronized (resourceLock) {
+            Array<Short> seen = new Array<>();
+
+            for (ItemType seenResource : getSeenResources())
+                seen.add(seenResource.value);
+
+            // god dammit
+            short[] s = new short[seen.size];
+            int i = 0;
+            for (Short q : seen)
+                s[i++] = q;
+
+            Util.NBTwriteInventory(builder, resources);
+            builder.ShortArray("Seen", s);
+        }
+        builder.End();
+
+        if (sciences.size() > 0) {
+            byte[] science = new byte[sciences.size()];
+            int i = 0;
+            for (ScienceType s : sciences)
+                science[i++] = s.id;
+            builder.ByteArray("Sciences", science);
+        }
+
+        builder.Compound("camera")
+                .Float("x", cam.position.x)
+                .Float("y", cam.position.y)
+                .Float("z", cam.position.z)
+                .Float("zoom", cam.zoom)
+                .End();
+
+        CompoundTag data = builder.Get();
+
+        //            // This is debug only and its super slow
+        if (Quarry.Q.desktop && Quarry.Q.version.equals("debug"))
+            Quarry.Q.file("TheQuarry/saves/" + file + ".txt", true).writeString(data.toString(), false);
+
+        return data;
+    }
+
     public Texture getThumbnail(String filename) {
         return saveThumbnailCache.get(filename);
     }
@@ -3486,10 +3515,7 @@ public class Game extends GameScene {
             } else {
                 CompoundTag data = null;
                 try {
-                    data = NBT.read(
-                            new BufferedInputStream(
-                                    Quarry.Q.file("TheQuarry/saves/" + filename + ".qsf", false).read()),
-                            CompressionType.Fast);
+                    data = loadSaveHeader(qsf);
                 } catch (Exception e) {
                     Quarry.Q.pi.message(PlatformInterface.MSG_EXCEPTION, e);
                 }
@@ -3530,18 +3556,80 @@ public class Game extends GameScene {
     }
 
     public CompoundTag loadSaveData(String filename) throws IOException {
-        if (!Quarry.Q.file("TheQuarry/saves/" + filename + ".qsf", false).exists()) {
+        return loadSaveData(Quarry.Q.file("TheQuarry/saves/" + filename + ".qsf", false));
+    }
+
+    /**
+     * Reads the save as a single tag. Only works for saves of versions before streamed saves, see {@link SaveFile}
+     */
+    public CompoundTag loadSaveData(FileHandle file) throws IOException {
+        if (!file.exists()) {
             throw new FileNotFoundException();
         }
 
         long t = System.currentTimeMillis();
-        CompoundTag data = NBT.read(
-                new BufferedInputStream(Quarry.Q.file("TheQuarry/saves/" + filename + ".qsf", false).read()),
-                CompressionType.Fast);
+        CompoundTag data = NBT.read(new BufferedInputStream(file.read()), CompressionType.Fast);
         System.out.println("NBT loading took " + (System.currentTimeMillis() - t));
         return data;
     }
 
+    /**
+     * Reads the top level tag of a save without any layers, in either format
+     */
+    public CompoundTag loadSaveHeader(FileHandle file) throws IOException {
+        if (!SaveFile.isStreamed(file)) {
+            return loadSaveData(file);
+        }
+
+        SaveFile.Reader r = new SaveFile.Reader(file);
+        try {
+            CompoundTag data = r.next();
+            if (data == null) throw new IOException("Corrupted save header");
+            return data;
+        } finally {
+            r.close();
+        }
+    }
+
+    /**
+     * Reads the world from a save file in either format, see {@link #loadWorld(CompoundTag, int)}.
+     * 
+     * @return the top level tag of the save, has to be freed by the caller
+     */
+    public CompoundTag loadWorld(FileHandle file, Array<Layer> myLayers) throws IOException, NBTException {
+        if (!SaveFile.isStreamed(file)) {
+            CompoundTag data = loadSaveData(file);
+            myLayers.addAll(loadWorld(data, data.Int("build", 0)));
+            return data;
+        }
+
+        SaveFile.Reader r = new SaveFile.Reader(file);
+        try {
+            CompoundTag data = r.next();
+            if (data == null) throw new IOException("Corrupted save header");
+
+            long saveId = data.Long("saveId", 0);
+            SaveFile.Journal journal = r.isIndexed() ? SaveFile.Journal.read(file, saveId) : null;
+            if (journal != null) {
+                // the header of the newest delta is the current one
+                data.free();
+                data = journal.header;
+            }
+
+            myLayers.addAll(loadWorld(data, r, journal));
+
+            // autosaves to this file can keep appending to its journal
+            journalFile = file.nameWithoutExtension();
+            journalSaveId = saveId;
+            journalDeltas = journal != null ? journal.deltas : 0;
+            journalLayers = myLayers.size;
+
+            return data;
+        } finally {
+            r.close();
+        }
+    }
+
     public void load(final String filename, final Callback<Object> callback) {
         try {
             reset();
@@ -3628,45 +3716,20 @@ public class Game extends GameScene {
 
     protected void loadData(CompoundTag meta, String filename, Callback<Object> callback, int build) {
         try {
-            CompoundTag data = loadSaveData(filename);
+            long t0 = System.currentTimeMillis();
+
+            final Array<Layer> myLayers = new Array<>();
+            CompoundTag data = loadWorld(Quarry.Q.file("TheQuarry/saves/" + filename + ".qsf", false), myLayers);
             if (data == null) {
                 callback.call(false);
                 return;
             }
 
-            long t0 = System.currentTimeMillis();
-            if (build < Quarry.Q.versionNumber) {
-                LoadingCompat.instance.upgrade(data, build);
-            }
-
             currentGameName = meta.String("name");
 
             playTime = meta.Long("playTime", 0);
             lastTimerStart = System.currentTimeMillis();
 
-            infinite = data.Byte("infinite", (byte) 0) == 1;
-
-            Generator.G.setSeed(data.Long("seed", 0));
-            if (data.has("rng"))
-                Generator.G.setState(data.LongArray("rng"));
-
-            try {
-                layerIndex = data.Short("layer");
-            } catch (NBTException e) {
-                layerIndex = data.Byte("layer");
-                if (layerIndex < 0)
-                    layerIndex = 0;
-            }
-            ListTag map = data.List("Map", TagType.Compound);
-
-            final Array<Layer> myLayers = new Array<>();
-
-            int index = 0;
-            for (Tag c : map.data) {
-                Layer l = Layer.load(index++, (CompoundTag) c);
-                myLayers.add(l);
-            }
-
             Layer active = myLayers.get(layerIndex);
 
             final int fbuild = build;
@@ -3679,28 +3742,6 @@ public class Game extends GameScene {
                 cam.update();
             }
 
-            CompoundTag res = data.Compound("Resources");
-
-            Util.NBTreadInventory(res, resources);
-
-            getSeenResources().clear();
-            short[] seen = res.ShortArray("Seen");
-            for (short s : seen) {
-                ItemType t = Item.get(s);
-                if (t != null) {
-                    getSeenResources().add(t);
-                }
-            }
-
-            byte[] science = data.ByteArray("Sciences", null);
-            if (science != null) {
-                sciences.clear();
-                for (byte s : science)
-                    sciences.add(Science.sciences[s & 0xff]);
-            }
-
-            // for older versions. root science must be included
-            sciences.add(ScienceType.Start);
             ui.buildMenuSciences.clear();
             ui.onScienceChange();
 
@@ -3708,34 +3749,13 @@ public class Game extends GameScene {
 
             ui.updateResources(true);
 
-            // re-validate all layers
-            for (Layer l : myLayers) {
-                l.dirtyBounds.set(0, 0, l.width, l.height, Integer.MAX_VALUE);
-            }
-
             System.out.println("Game loading took " + (System.currentTimeMillis() - t0));
 
             Gdx.app.postRunnable(new Runnable() {
                 @Override
                 public void run() {
                     synchronized (layerLock) {
-                        if (layers == null) {
-                            layers = new Array<>();
-                        }
-                        if (layers.size > 0) {
-                            for (Layer l : layers)
-                                l.dispose();
-                            layers.clear();
-                        }
-                        layers.addAll(myLayers);
-                        for (Layer l : layers)
-                            l.postAllLayersLoad(true);
-                        for (Layer l : layers)
-                            l.postAllLayersLoad(false);
-
-                        powerGrid.clearHighPowerCache();
-
-                        layer = layers.get(layerIndex);
+                        linkLayers(myLayers);
                         lastAutosave = System.currentTimeMillis();
 
                         System.gc();
@@ -3757,6 +3777,135 @@ public class Game extends GameScene {
         }
     }
 
+    /**
+     * Reads the world state (layers, resources, sciences) from save data. The returned layers are not yet linked
+     * with each other, see {@link #linkLayers(Array)}.
+     */
+    public Array<Layer> loadWorld(CompoundTag data, int build) throws IOException, NBTException {
+        if (build < Quarry.Q.versionNumber) {
+            LoadingCompat.instance.upgrade(data, build);
+        }
+
+        loadWorldHeader(data);
+
+        ListTag map = data.List("Map", TagType.Compound);
+
+        LayerLoader loader = new LayerLoader();
+        for (Tag c : map.data) {
+            loader.add((CompoundTag) c, ((CompoundTag) c).List("Chunks", TagType.Compound).data);
+        }
+
+        Array<Layer> myLayers = loader.load();
+
+        loadWorldState(data, myLayers);
+
+        return myLayers;
+    }
+
+    /**
+     * Same as {@link #loadWorld(CompoundTag, int)} for streamed saves, the layers are read from the reader with the
+     * chunks of the journal taking precedence, if there is one.
+     * Streamed saves are newer than every upgrade step in {@link LoadingCompat}, which operate on the single tag.
+     */
+    public Array<Layer> loadWorld(CompoundTag data, SaveFile.Reader reader, SaveFile.Journal journal) throws IOException, NBTException {
+        loadWorldHeader(data);
+
+        LayerLoader loader = new LayerLoader();
+        loader.read(reader, data.Int("layers"), journal);
+
+        Array<Layer> myLayers = loader.load();
+
+        loadWorldState(data, myLayers);
+
+        return myLayers;
+    }
+
+    private void loadWorldHeader(CompoundTag data) throws NBTException {
+        infinite = data.Byte("infinite", (byte) 0) == 1;
+
+        Generator.G.setSeed(data.Long("seed", 0));
+        if (data.has("rng"))
+            Generator.G.setState(data.LongArray("rng"));
+
+        try {
+            layerIndex = data.Short("layer");
+        } catch (NBTException e) {
+            layerIndex = data.Byte("layer");
+            if (layerIndex < 0)
+                layerIndex = 0;
+        }
+    }
+
+    private void loadWorldState(CompoundTag data, Array<Layer> myLayers) throws NBTException {
+        CompoundTag res = data.Compound("Resources");
+
+        Util.NBTreadInventory(res, resources);
+
+        getSeenResources().clear();
+        short[] seen = res.ShortArray("Seen");
+        for (short s : seen) {
+            ItemType t = Item.get(s);
+            if (t != null) {
+                getSeenResources().add(t);
+            }
+        }
+
+        byte[] science = data.ByteArray("Sciences", null);
+        if (science != null) {
+            sciences.clear();
+            for (byte s : science)
+                sciences.add(Science.sciences[s & 0xff]);
+        }
+
+        // for older versions. root science must be included
+        sciences.add(ScienceType.Start);
+
+        // re-validate all layers
+        for (Layer l : myLayers) {
+            l.dirtyBounds.set(0, 0, l.width, l.height, Integer.MAX_VALUE);
+        }
+    }
+
+    /**
+     * Replaces the current layers with freshly loaded ones and resolves references across layers.
+     * Has to be called while holding the layer lock, or before any updating is going on.
+     */
+    public void linkLayers(Array<Layer> myLayers) {
+        long t = System.currentTimeMillis();
+
+        if (layers == null) {
+            layers = new Array<>();
+        }
+        if (layers.size > 0) {
+            for (Layer l : layers)
+                l.dispose();
+            layers.clear();
+        }
+        layers.addAll(myLayers);
+        for (Layer l : layers)
+            l.postAllLayersLoad(true);
+        for (Layer l : layers)
+            l.postAllLayersLoad(false);
+
+        powerGrid.clearHighPowerCache();
+
+        layer = layers.get(layerIndex);
+        pageLayers();
+
+        System.out.println("Linking layers took " + (System.currentTimeMillis() - t) + "ms");
+    }
+
+    /**
+     * Pages in the layers around the active one and pages out those further away that have nothing to simulate.
+     * Has to be called while holding the layer lock.
+     */
+    private void pageLayers() {
+        for (Layer l : layers) {
+            if (Math.abs(l.getIndex() - layerIndex) > PAGE_DISTANCE) l.pageOut();
+            else l.pageIn();
+        }
+    }
+
     //////////////////////////////////////////////////////
 
     public void exportBlueprint() {
@@ -3884,10 +4033,6 @@ public class Game extends GameScene {
 
     @Override
     public void dispose() {
-        for (FrameBuffer fbo : chunkFBOs)
-            if (fbo != null)
-                fbo.dispose();
-
         batch.dispose();
         synchronized (layerLock) {
             if (layers.size > 0) {
@@ -4165,7 +4310,9 @@ public class Game extends GameScene {
         synchronized (layerLock) {
             if (layers == null || index < 0 || index >= layers.size)
                 return null;
-            return layers.get(index);
+            Layer l = layers.get(index);
+            l.pageIn();
+            return l;
         }
     }
 
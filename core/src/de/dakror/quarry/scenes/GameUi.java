@@ -23,7 +23,6 @@ import java.text.DecimalFormat;
 import java.text.NumberFormat;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.EnumMap;
 import java.util.EnumSet;
 import java.util.HashMap;
@@ -640,9 +639,9 @@ public class GameUi implements Ui {
                     Game.G.endB.set(tx, ty);
 
                     Structure<?> last = null;
-                    Collections.reverse(Game.G.activeStructurePath);
-                    for (int i : Game.G.activeStructurePath) {
-                        Structure<?> s = Game.G.activeStructureTrail.get(i);
+                    Game.G.activeStructurePath.reverse();
+                    for (int i = 0; i < Game.G.activeStructurePath.size; i++) {
+                        Structure<?> s = Game.G.activeStructureTrail.get(Game.G.activeStructurePath.items[i]);
                         if (last != null) {
                             Direction rotation = null;
                             if (s.x == last.x) {
@@ -659,8 +658,8 @@ public class GameUi implements Ui {
                     }
 
                     // apply updates after all rotations done
-                    for (int i : Game.G.activeStructurePath) {
-                        Structure<?> s = Game.G.activeStructureTrail.get(i);
+                    for (int i = 0; i < Game.G.activeStructurePath.size; i++) {
+                        Structure<?> s = Game.G.activeStructureTrail.get(Game.G.activeStructurePath.items[i]);
                         s.update(0, 1, Game.G.layer.dirtyBounds);
                     }
 
@@ -2218,11 +2217,12 @@ public class GameUi implements Ui {
         // accumulate inventory counts
         for (int i = 0, j = 0; i < structure.getDocks().length; i++) {
             if (structure.getDocks()[i].type == DockType.ItemIn) {
-                for (Map.Entry<ItemType, Integer> e : ((CRecipeSlotStorage) inputs[j]).getAll()) {
-                    Integer val = structureUIInventorySum.get(e.getKey());
+                CRecipeSlotStorage inv = (CRecipeSlotStorage) inputs[j];
+                for (int k = 0; k < inv.getTypeCount(); k++) {
+                    Integer val = structureUIInventorySum.get(inv.getType(k));
                     if (val == null)
                         val = 0;
-                    structureUIInventorySum.put(e.getKey(), val + e.getValue());
+                    structureUIInventorySum.put(inv.getType(k), val + inv.getAmount(k));
                 }
                 j++;
             } else if (structure.getDocks()[i].type == DockType.FluidIn) {
@@ -66,22 +66,10 @@ public class LoadingScreen extends Scene {
 
     @Override
     public void init() {
-        FileHandleResolver resolver = new InternalFileHandleResolver();
-        AssetManager assets = new AssetManager(resolver);
+        AssetManager assets = createAssetManager();
         Quarry.Q.assets = assets;
-        assets.setLoader(SfxMusic.class, new SfxMusicLoader(resolver));
-        assets.setLoader(SfxSound.class, new SfxSoundLoader(resolver));
-
-        assets.load("tex.atlas", TextureAtlas.class);
-
-        FreeTypeFontGenerator generator = new FreeTypeFontGenerator(Gdx.files.internal("Roboto-Medium.ttf"));
-        ObjectMap<String, Object> fontMap = new ObjectMap<String, Object>();
-        fontMap.put("small-font", createFont(generator, 24));
-        fontMap.put("default-font", createFont(generator, 32));
-        fontMap.put("big-font", createFont(generator, 48));
-        SkinParameter param = new SkinParameter("tex.atlas", fontMap);
 
-        assets.load("skin.json", Skin.class, param);
+        loadBaseAssets(assets);
 
         assets.finishLoading();
 
@@ -113,6 +101,46 @@ public class LoadingScreen extends Scene {
 
         ///////////////////////////
 
+        loadSounds(assets);
+
+        assets.load("sfx/ambience_empty" + Const.SFX_FORMAT, Sound.class);
+        assets.load("sfx/ambience_base" + Const.SFX_FORMAT, Sound.class);
+        assets.load("sfx/ambience_heavy" + Const.SFX_FORMAT, Sound.class);
+
+        assets.load("music/Fading_into_the_Dream" + Const.MUSIC_FORMAT, Music.class);
+        assets.load("music/Impact Prelude" + Const.MUSIC_FORMAT, Music.class);
+
+        l = System.currentTimeMillis();
+    }
+
+    public static AssetManager createAssetManager() {
+        FileHandleResolver resolver = new InternalFileHandleResolver();
+        AssetManager assets = new AssetManager(resolver);
+        assets.setLoader(SfxMusic.class, new SfxMusicLoader(resolver));
+        assets.setLoader(SfxSound.class, new SfxSoundLoader(resolver));
+        return assets;
+    }
+
+    /**
+     * Queues the texture atlas and the skin, which everything else depends on
+     */
+    public static void loadBaseAssets(AssetManager assets) {
+        assets.load("tex.atlas", TextureAtlas.class);
+
+        FreeTypeFontGenerator generator = new FreeTypeFontGenerator(Gdx.files.internal("Roboto-Medium.ttf"));
+        ObjectMap<String, Object> fontMap = new ObjectMap<String, Object>();
+        fontMap.put("small-font", createFont(generator, 24));
+        fontMap.put("default-font", createFont(generator, 32));
+        fontMap.put("big-font", createFont(generator, 48));
+        SkinParameter param = new SkinParameter("tex.atlas", fontMap);
+
+        assets.load("skin.json", Skin.class, param);
+    }
+
+    /**
+     * Queues the structure and ui sounds, which are referenced by the structure schemas
+     */
+    public static void loadSounds(AssetManager assets) {
         assets.load("sfx/airpurifier" + Const.SFX_FORMAT, SfxSound.class);
         assets.load("sfx/anchorportal" + Const.SFX_FORMAT, SfxSound.class);
         assets.load("sfx/arcwelder" + Const.SFX_FORMAT, SfxSound.class);
@@ -158,18 +186,9 @@ public class LoadingScreen extends Scene {
         assets.load("sfx/build" + Const.SFX_FORMAT, Sound.class);
         assets.load("sfx/destroy" + Const.SFX_FORMAT, Sound.class);
         assets.load("sfx/cable" + Const.SFX_FORMAT, Sound.class);
-
-        assets.load("sfx/ambience_empty" + Const.SFX_FORMAT, Sound.class);
-        assets.load("sfx/ambience_base" + Const.SFX_FORMAT, Sound.class);
-        assets.load("sfx/ambience_heavy" + Const.SFX_FORMAT, Sound.class);
-
-        assets.load("music/Fading_into_the_Dream" + Const.MUSIC_FORMAT, Music.class);
-        assets.load("music/Impact Prelude" + Const.MUSIC_FORMAT, Music.class);
-
-        l = System.currentTimeMillis();
     }
 
-    protected BitmapFont createFont(FreeTypeFontGenerator gen, float dp) {
+    protected static BitmapFont createFont(FreeTypeFontGenerator gen, float dp) {
         FreeTypeFontParameter param = new FreeTypeFontParameter();
         param.magFilter = TextureFilter.Linear;
         param.minFilter = TextureFilter.Linear;
@@ -102,7 +102,7 @@ public class MainMenu extends Scene implements Ui {
 
     SpriteBatch batch;
     FitViewport viewport;
-    OrthographicCamera cam, fboCam;
+    OrthographicCamera cam;
 
     Music music;
 
@@ -467,9 +467,6 @@ public class MainMenu extends Scene implements Ui {
         stage.addActor(modalOverlay);
 
         cam = new OrthographicCamera(Const.W, Const.H);
-        fboCam = new OrthographicCamera(Const.CHUNK_FULL_SIZE, Const.CHUNK_FULL_SIZE);
-        fboCam.position.set(0.5f * Const.CHUNK_FULL_SIZE, 0.5f * Const.CHUNK_FULL_SIZE, fboCam.near);
-        fboCam.update();
 
         Label l = new Label(Quarry.Q.version, Quarry.Q.skin);
         l.setFontScale(0.75f);
@@ -509,7 +506,7 @@ public class MainMenu extends Scene implements Ui {
         cam.update();
         batch.setProjectionMatrix(cam.combined);
         batch.begin();
-        layers.get(0).draw(cam, fboCam, stage.getViewport(), batch, spriter, shaper, pfxBatch);
+        layers.get(0).draw(cam, batch, spriter, shaper, pfxBatch);
         batch.end();
 
         if (alpha == 1) stage.draw();
@@ -317,6 +317,12 @@ public class Booster extends Structure<Schema> {
         }
     }
 
+    @Override
+    public boolean isChunkLocal() {
+        // meshes span any distance
+        return false;
+    }
+
     @Override
     public void update(double deltaTime, int gameSpeed, Bounds dirtyBounds) {
         super.update(deltaTime, gameSpeed, dirtyBounds);
@@ -366,6 +372,8 @@ public class Booster extends Structure<Schema> {
     }
 
     private void updateUI() {
+        if (Game.G.ui == null) return;
+
         if (meshMode && mesh.contains(Game.G.ui.currentClickedStructure)) {
             ((Booster) Game.G.ui.currentClickedStructure).updateUI();
             return;
@@ -171,6 +171,12 @@ public class ScienceLab extends Structure<Schema> {
         return true;
     }
 
+    @Override
+    public boolean isChunkLocal() {
+        // the active science is shared between all labs
+        return false;
+    }
+
     @Override
     public void update(double deltaTime, int gameSpeed, Bounds dirtyBounds) {
         super.update(deltaTime, gameSpeed, dirtyBounds);
@@ -124,6 +124,12 @@ public class ShaftDrill extends ProducerStructure {
         return isJammed();
     }
 
+    @Override
+    public boolean isChunkLocal() {
+        // can add a new layer
+        return false;
+    }
+
     @Override
     protected void doProductionStep() {
         Layer l = null;
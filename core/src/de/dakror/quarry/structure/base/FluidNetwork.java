@@ -0,0 +1,256 @@
+/*******************************************************************************
+ * Copyright 2019 Maximilian Stark | Dakror <mail@dakror.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+
+package de.dakror.quarry.structure.base;
+
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IntArray;
+
+import de.dakror.quarry.Const;
+import de.dakror.quarry.game.Item;
+import de.dakror.quarry.game.Item.FluidType;
+import de.dakror.quarry.game.Item.ItemType;
+import de.dakror.quarry.structure.base.Dock.DockType;
+import de.dakror.quarry.structure.logistics.Valve;
+
+/**
+ * A connected group of tubes of the same kind within one chunk that hold their fluid as a single volume.
+ * Fluid moving inside the group is considered to be at rest, so the group only has to push fluid out through its
+ * connections to the outside once per tick instead of every tube equalizing with each of its neighbors.
+ * The volume is only split up into levels per tube for drawing, saving, the connections to the outside and when the
+ * network is dissolved back into its tubes, which happens as soon as anything next to it changes.
+ *
+ * @author Maximilian Stark | Dakror
+ */
+public class FluidNetwork {
+    public static final int MIN_SIZE = 4;
+
+    final FluidTubeStructure[] members;
+    final int capacity;
+
+    // connections leaving the network, as member index << 2 | direction
+    final IntArray edges = new IntArray();
+
+    int volume;
+    FluidType fluid;
+    ItemType fluidItem;
+    float delay;
+
+    boolean dissolved;
+
+    FluidNetwork(FluidTubeStructure[] members) {
+        this.members = members;
+        capacity = members.length * members[0].getSchema().maxFluid;
+
+        for (int i = 0; i < members.length; i++) {
+            FluidTubeStructure t = members[i];
+            t.network = this;
+            t.networkIndex = i;
+
+            volume += t.fluidLevel;
+            delay = Math.max(delay, t.delay);
+            if (fluidItem == null && t.fluidItem != null) {
+                fluidItem = t.fluidItem;
+                fluid = t.fluid;
+            }
+        }
+
+        for (int i = 0; i < members.length; i++) {
+            for (int d = 0; d < 4; d++) {
+                Structure<?> s = members[i].structures[d];
+                if (s != null && !(s instanceof FluidTubeStructure && ((FluidTubeStructure) s).network == this))
+                    edges.add(i << 2 | d);
+            }
+        }
+    }
+
+    /**
+     * Groups all connected tubes inside the given chunk area that are not part of a network yet
+     */
+    public static void build(Array<Structure<?>> structures, int ax, int ay) {
+        boolean[] visited = null;
+        Array<FluidTubeStructure> group = null;
+
+        for (int i = 0; i < structures.size; i++) {
+            if (!(structures.items[i] instanceof FluidTubeStructure)) continue;
+            FluidTubeStructure start = (FluidTubeStructure) structures.items[i];
+            if (!isEligible(start, start, ax, ay)) continue;
+
+            if (visited == null) {
+                visited = new boolean[Const.CHUNK_SIZE * Const.CHUNK_SIZE];
+                group = new Array<>(FluidTubeStructure.class);
+            }
+
+            int index = (start.x - ax) * Const.CHUNK_SIZE + (start.y - ay);
+            if (visited[index]) continue;
+            visited[index] = true;
+
+            group.clear();
+            group.add(start);
+            ItemType fluidItem = start.fluidItem;
+
+            // the group doubles as the stack of the fill
+            for (int k = 0; k < group.size; k++) {
+                FluidTubeStructure t = group.items[k];
+                for (Direction d : Direction.values) {
+                    if (!(t.structures[d.ordinal()] instanceof FluidTubeStructure)) continue;
+                    FluidTubeStructure n = (FluidTubeStructure) t.structures[d.ordinal()];
+                    if (n.structures[d.inv().ordinal()] != t || !isEligible(n, start, ax, ay)) continue;
+                    if (fluidItem != null && n.fluidItem != null && n.fluidItem != fluidItem) continue;
+
+                    int j = (n.x - ax) * Const.CHUNK_SIZE + (n.y - ay);
+                    if (visited[j]) continue;
+                    visited[j] = true;
+
+                    if (fluidItem == null) fluidItem = n.fluidItem;
+                    group.add(n);
+                }
+            }
+
+            if (group.size >= MIN_SIZE) {
+                new FluidNetwork(group.toArray());
+            }
+        }
+    }
+
+    static boolean isEligible(FluidTubeStructure t, FluidTubeStructure start, int ax, int ay) {
+        return t.getClass() == start.getClass() && !(t instanceof Valve) && t.network == null && t.layer != null && !t.isDestroyed()
+                && t.x >= ax && t.y >= ay && t.x < ax + Const.CHUNK_SIZE && t.y < ay + Const.CHUNK_SIZE;
+    }
+
+    public FluidTubeStructure getOwner() {
+        return members[0];
+    }
+
+    /**
+     * @return the share of the volume held by the given member
+     */
+    int getLevel(int index) {
+        int v = volume;
+        return v / members.length + (index < v % members.length ? 1 : 0);
+    }
+
+    /**
+     * Takes the place of the fluid update of all members. Only the owner pushes fluid out of the network.
+     */
+    void update(FluidTubeStructure member, double deltaTime, int gameSpeed) {
+        if (member != members[0]) return;
+
+        synchronized (this) {
+            if (dissolved) return;
+
+            for (int k = 0; k < edges.size; k++) {
+                int e = edges.items[k];
+                FluidTubeStructure t = members[e >> 2];
+                if (t.decuppleTime[e & 3] > 0) {
+                    t.decuppleTime[e & 3] -= deltaTime * gameSpeed;
+                    if (t.decuppleTime[e & 3] <= 0) {
+                        t.decuppleTime[e & 3] = 0;
+                    }
+                }
+            }
+
+            if (volume <= 0 && fluid != null) {
+                volume = 0;
+                fluid = null;
+                fluidItem = null;
+                delay = 0;
+            }
+            if (fluid == null || gameSpeed == 0) return;
+
+            delay -= deltaTime * gameSpeed;
+            if (delay > 0) return;
+
+            for (int k = 0; k < edges.size; k++) {
+                int e = edges.items[k];
+                FluidTubeStructure t = members[e >> 2];
+                int i = e & 3;
+                Structure<?> s = t.structures[i];
+
+                if (s == null || t.types[i] == DockType.FluidOut || !s.canAccept(fluidItem, t.x, t.y, Direction.values[i])) continue;
+
+                int level = getLevel(e >> 2);
+                int dif = 0;
+                if (s instanceof FluidTubeStructure && !(s instanceof Valve)) {
+                    int other = ((FluidTubeStructure) s).getFluidLevel();
+                    if (other < level) {
+                        dif = level - other;
+                    }
+                } else {
+                    dif = level;
+                }
+
+                dif = (int) Math.ceil(dif * fluid.pressure);
+
+                if (dif > 0) {
+                    volume = volume - dif + s.acceptFluid(fluidItem, dif, t);
+                    t.decuppleTime[i] = FluidTubeStructure.decupple;
+                }
+            }
+
+            delay = fluid.viscosity;
+        }
+    }
+
+    synchronized boolean canAccept(ItemType item) {
+        if (dissolved || volume >= capacity) return false;
+        if (fluidItem != null) return item == fluidItem;
+        else return members[0].isAllowedFluid(item);
+    }
+
+    /**
+     * @return the amount that did not fit
+     */
+    synchronized int accept(ItemType item, int amount) {
+        if (dissolved || volume >= capacity) return amount;
+        if (fluidItem != null && item != fluidItem) return amount;
+
+        if (fluidItem == null) {
+            if (!members[0].isAllowedFluid(item)) return amount;
+            fluid = Item.fluid((byte) item.value);
+            fluidItem = item;
+        }
+
+        if (delay <= 0) delay = fluid.viscosity;
+        int old = volume;
+        volume = Math.min(capacity, volume + amount);
+
+        members[0].wake();
+
+        return Math.max(0, old + amount - volume);
+    }
+
+    /**
+     * Hands the volume back to the members as their own levels
+     */
+    public void dissolve() {
+        synchronized (this) {
+            if (dissolved) return;
+            dissolved = true;
+
+            for (int i = 0; i < members.length; i++) {
+                FluidTubeStructure t = members[i];
+                t.fluidLevel = getLevel(i);
+                t.fluid = fluid;
+                t.fluidItem = fluidItem;
+                t.delay = delay;
+                t.network = null;
+                t.wake();
+            }
+        }
+    }
+}
@@ -89,6 +89,10 @@ public abstract class FluidTubeStructure extends Structure<FluidTubeSchema> impl
     // determines when to cut the connection to or from Docks (only visually) gets renewed when acceptFluid is called
     protected float[] decuppleTime = new float[4];
 
+    // set while this tube is part of a network, which then holds the fluid instead
+    FluidNetwork network;
+    int networkIndex;
+
     Table ui;
     Container<Table> container;
     ItemType uiType;
@@ -113,6 +117,9 @@ public abstract class FluidTubeStructure extends Structure<FluidTubeSchema> impl
 
     @Override
     public boolean canAccept(ItemType item, int x, int y, Direction dir) {
+        FluidNetwork network = this.network;
+        if (network != null) return network.canAccept(item);
+
         if (fluidLevel >= getSchema().maxFluid) return false;
         if (fluid != null) return item == fluidItem;
         else return isAllowedFluid(item);
@@ -122,6 +129,13 @@ public abstract class FluidTubeStructure extends Structure<FluidTubeSchema> impl
 
     @Override
     public int acceptFluid(ItemType item, int amount, Structure<?> source) {
+        FluidNetwork network = this.network;
+        if (network != null) {
+            int rest = network.accept(item, amount);
+            if (clicked) updateUI();
+            return rest;
+        }
+
         if (fluidLevel >= getSchema().maxFluid) return amount;
         if (fluid != null && item != fluidItem) return amount;
 
@@ -145,9 +159,20 @@ public abstract class FluidTubeStructure extends Structure<FluidTubeSchema> impl
         super.update(deltaTime, gameSpeed, dirtyBounds);
 
         if (dirtyBounds.touches(this) || layer == null) {
+            if (network != null) network.dissolve();
             updateStructures();
         }
 
+        FluidNetwork network = this.network;
+        if (network != null) {
+            network.update(this, deltaTime, gameSpeed);
+
+            // the network only needs its owner ticking, and that one only while there is fluid to push
+            if (clicked) updateUI();
+            else if (network.getOwner() != this || network.fluid == null) sleep();
+            return;
+        }
+
         if (fluidLevel <= 0 && fluid != null) {
             fluidLevel = 0;
             fluid = null;
@@ -164,8 +189,9 @@ public abstract class FluidTubeStructure extends Structure<FluidTubeSchema> impl
                 if (structures[i] != null && types[i] != DockType.FluidOut && structures[i].canAccept(fluidItem, x, y, Direction.values[i])) {
                     int dif = 0;
                     if (structures[i] instanceof FluidTubeStructure && !(structures[i] instanceof Valve)) {
-                        if (((FluidTubeStructure) structures[i]).fluidLevel < fluidLevel) {
-                            dif = fluidLevel - ((FluidTubeStructure) structures[i]).fluidLevel;
+                        int other = ((FluidTubeStructure) structures[i]).getFluidLevel();
+                        if (other < fluidLevel) {
+                            dif = fluidLevel - other;
                         }
                     } else {
                         dif = fluidLevel;
@@ -195,6 +221,29 @@ public abstract class FluidTubeStructure extends Structure<FluidTubeSchema> impl
         }
     }
 
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        if (network != null) network.dissolve();
+    }
+
+    /**
+     * @return the level of this tube, or its share of the network's volume
+     */
+    public int getFluidLevel() {
+        FluidNetwork network = this.network;
+        return network != null ? network.getLevel(networkIndex) : fluidLevel;
+    }
+
+    public ItemType getFluidItem() {
+        FluidNetwork network = this.network;
+        return network != null ? network.fluidItem : fluidItem;
+    }
+
+    public FluidNetwork getNetwork() {
+        return network;
+    }
+
     @Override
     public void onPlacement(boolean fromLoading) {
         if (!fromLoading && layer == null) {
@@ -235,7 +284,11 @@ public abstract class FluidTubeStructure extends Structure<FluidTubeSchema> impl
     public void drawFrame(SpriteRenderer spriter, ShapeRenderer shaper, SpriterDelegateBatch pfxBatch) {
         super.drawFrame(spriter, shaper, pfxBatch);
 
-        if (fluidLevel > 0) {
+        FluidNetwork network = this.network;
+        int fluidLevel = network != null ? network.getLevel(networkIndex) : this.fluidLevel;
+        FluidType fluid = network != null ? network.fluid : this.fluid;
+
+        if (fluidLevel > 0 && fluid != null) {
             float width = Math.max(1, 27.5f * (fluidLevel / (float) getSchema().maxFluid));
 
             float o = (Const.TILE_SIZE - width) / 2;
@@ -268,9 +321,10 @@ public abstract class FluidTubeStructure extends Structure<FluidTubeSchema> impl
         }
         b.IntArray("structs", str);
 
+        ItemType fluidItem = getFluidItem();
         if (fluidItem != null) {
             b.Short("fluid", fluidItem.value);
-            b.Short("level", (short) fluidLevel);
+            b.Short("level", (short) getFluidLevel());
         }
     }
 
@@ -321,6 +375,38 @@ public abstract class FluidTubeStructure extends Structure<FluidTubeSchema> impl
         }
     }
 
+    @Override
+    protected boolean isPacked() {
+        return true;
+    }
+
+    @Override
+    protected void encode(StructureCodec.Writer w) {
+        super.encode(w);
+        for (int i = 0; i < 4; i++)
+            w.putInt(structures[i] == null ? -1 : structures[i].x * layer.height + structures[i].y);
+
+        ItemType fluidItem = getFluidItem();
+        w.putShort(fluidItem != null ? fluidItem.value : 0);
+        if (fluidItem != null) w.putInt(getFluidLevel());
+    }
+
+    @Override
+    protected void decode(StructureCodec.Reader r) throws NBTException {
+        super.decode(r);
+        structs = new int[4];
+        for (int i = 0; i < 4; i++)
+            structs[i] = r.getInt();
+
+        short flu = r.getShort();
+        if (flu != 0) {
+            fluidItem = Item.get(flu);
+            if (fluidItem != null)
+                fluid = Item.fluid((byte) fluidItem.value);
+            fluidLevel = r.getInt();
+        }
+    }
+
     @Override
     public void postLoad() {
         if (structs != null) {
@@ -331,6 +417,9 @@ public abstract class FluidTubeStructure extends Structure<FluidTubeSchema> impl
     }
 
     private void updateUI() {
+        ItemType fluidItem = getFluidItem();
+        int fluidLevel = getFluidLevel();
+
         if (container == null) {
             container = new Container<>();
         }
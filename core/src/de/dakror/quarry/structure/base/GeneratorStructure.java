@@ -85,6 +85,7 @@ public abstract class GeneratorStructure extends ProducerStructure {
     @Override
     protected void setRecipe(int index) {
         setItemNotifications();
+        wake();
         activeRecipeIndex = index;
         if (index > -1) {
             activeRecipe = getSchema().recipeList.recipes[activeRecipeIndex];
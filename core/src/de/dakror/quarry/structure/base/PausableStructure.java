@@ -30,6 +30,7 @@ public abstract class PausableStructure<T extends PausableSchema> extends Struct
 
     public void setSleeping(boolean sleeping) {
         this.sleeping = sleeping;
+        wake();
     }
 
     public boolean isSleeping() {
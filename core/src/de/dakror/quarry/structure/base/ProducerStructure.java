@@ -16,6 +16,8 @@
 
 package de.dakror.quarry.structure.base;
 
+import java.util.Arrays;
+
 import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.graphics.g2d.TextureRegion;
 import com.badlogic.gdx.graphics.glutils.ShapeRenderer;
@@ -98,6 +100,13 @@ public abstract class ProducerStructure extends PausableStructure<ProducerSchema
     protected final IStorage[] outputInventories;
     protected Items activeItems;
 
+    // scratch space for picking a recipe
+    private final ItemType[] pickedInputs;
+    private final long[] candidates;
+    // set when a full pick found no ready recipe. Until one is picked, only items received since can make a recipe
+    // ready, so only the recipes taking them need to be checked, see pickActiveRecipe(int, ItemType)
+    private boolean inputsChecked;
+
     protected boolean hasCapacity;
 
     protected double powerLevel;
@@ -120,6 +129,8 @@ public abstract class ProducerStructure extends PausableStructure<ProducerSchema
 
         inputInventories = new IStorage[schema.inputDocks];
         outputInventories = new IStorage[schema.outputDocks];
+        pickedInputs = new ItemType[schema.inputDocks];
+        candidates = new long[schema.recipeList.matcher.words];
 
         initInventories();
     }
@@ -175,6 +186,8 @@ public abstract class ProducerStructure extends PausableStructure<ProducerSchema
 
         powerLevel = add;
 
+        if (add > old) wake();
+
         return amount - (add - old);
     }
 
@@ -215,12 +228,13 @@ public abstract class ProducerStructure extends PausableStructure<ProducerSchema
             if (d.type == DockType.ItemIn) {
                 if ((d.filter == null || d.filter.accepts(item)) && inputInventories[i].canAccept(item)) {
                     inputInventories[i].add(item, 1);
+                    wake();
 
                     if (isClicked())
                         Game.G.ui.updateStructureUIInventory();
 
                     if (activeRecipe == null) {
-                        pickRandomActiveRecipe();
+                        pickActiveRecipe(i, item);
                     }
                     return true;
                 }
@@ -239,12 +253,13 @@ public abstract class ProducerStructure extends PausableStructure<ProducerSchema
             if (d.type == DockType.FluidIn && d.filter != null) {
                 if (inputInventories[i].hasSpace() && d.filter.accepts(item)) {
                     int rest = inputInventories[i].addWithRest(item, amount);
+                    wake();
 
                     if (isClicked())
                         Game.G.ui.updateStructureUIInventory();
 
                     if (activeRecipe == null) {
-                        pickRandomActiveRecipe();
+                        pickActiveRecipe(i, item);
                     }
                     return rest;
                 }
@@ -301,102 +316,115 @@ public abstract class ProducerStructure extends PausableStructure<ProducerSchema
         RecipeList s = getSchema().recipeList;
         if (s.hasInputs) {
             // pick first suiting recipe according to filter inventory
-            for (int index = 0; index < s.recipes.length; index++) {
-
-                Recipe r = s.recipes[index];
-                boolean ready = true;
-                Amount[] inputs = new Amount[r.input.entries.length];
-                for (int i = 0; i < r.input.entries.length; i++) {
-                    IStorage ci = inputInventories[i];
-                    Amount en = r.input.entries[i];
-                    if (en != null) {
-                        if (en.getCat() != null) {
-                            Amount[] es = ci.get(en.getCat());
-                            if (es == null || es.length == 0) {
-                                ready = false;
-                                break;
-                            }
-
-                            int sum = 0;
-                            for (Amount e : es) {
-                                if (e != null) {
-                                    sum += e.getAmount();
-                                }
-                            }
-                            if (sum < en.getAmount()) {
-                                ready = false;
-                                break;
-                            } else {
-                                if (es.length == 1 || es[0].getAmount() == en.getAmount()) {
-                                    inputs[i] = new Amount(es[0].getItem(), en.getAmount());
-                                } else {
-                                    inputs[i] = en;
-                                }
-                            }
-                        } else if (en.getItem() == Item.base(en.getItem())) {
-                            // else if the item given is a parent item like "Ore"
-                            Amount[] e = ci.getSimilar(en.getItem());
-                            if (e == null) {
-                                ready = false;
-                                break;
-                            }
-
-                            Amount correctAmount = null;
-
-                            for (Amount amount : e) {
-                                if (amount.getAmount() >= en.getAmount()) {
-                                    correctAmount = amount;
-                                    break;
-                                }
-                            }
-
-                            if (correctAmount == null) {
-                                ready = false;
-                                break;
-                            }
-
-                            inputs[i] = new Amount(correctAmount.getItem(), en.getAmount());
-                        } else {
-                            // given item is a specific item like "CoalOre"
-                            int e = ci.get(en.getItem());
-                            if (e < en.getAmount()) {
-                                ready = false;
-                                break;
-                            }
-                            inputs[i] = new Amount(en.getItem(), en.getAmount());
-                        }
-                    }
-                }
-
-                if (ready) {
-                    for (int i = 0; i < r.input.entries.length; i++) {
-                        Amount e = inputs[i];
-                        if (e != null) {
-                            if (e.getCat() != null) {
-                                inputInventories[i].remove(e.getCat(), e.getAmount());
-                            } else {
-                                inputInventories[i].remove(e.getItem(), e.getAmount());
-                            }
-                        }
-                    }
-
-                    if (isClicked())
-                        Game.G.ui.updateStructureUIInventory();
+            long[] set = candidates;
+            Arrays.fill(set, -1L);
+            s.matcher.filterStored(inputInventories, set);
 
-                    activeItems = new Items(inputs);
-                    setRecipe(index);
+            for (int index = RecipeMatcher.next(set, 0); index > -1 && index < s.recipes.length; index = RecipeMatcher.next(set, index + 1)) {
+                if (startRecipe(index)) {
+                    inputsChecked = false;
                     return;
                 }
             }
 
+            inputsChecked = true;
             setRecipe(-1);
         } else {
-            setRecipe(MathUtils.random(s.recipes.length - 1));
+            setRecipe(getRandom().nextInt(s.recipes.length));
         }
     }
 
+    /**
+     * Picks a recipe after the given item was put into the input slot. If nothing else got added since the last pick
+     * failed, only the recipes taking that item can have become ready.
+     */
+    protected void pickActiveRecipe(int slot, ItemType item) {
+        if (!inputsChecked) {
+            pickRandomActiveRecipe();
+            return;
+        }
+
+        RecipeList s = getSchema().recipeList;
+        long[] set = s.matcher.getAccepting(slot, item);
+        for (int index = RecipeMatcher.next(set, 0); index > -1; index = RecipeMatcher.next(set, index + 1)) {
+            if (startRecipe(index)) {
+                inputsChecked = false;
+                return;
+            }
+        }
+
+        setRecipe(-1);
+    }
+
+    /**
+     * Takes the inputs of the recipe out of the inventories and makes it the active one, if they are all there
+     */
+    private boolean startRecipe(int index) {
+        Recipe r = getSchema().recipeList.recipes[index];
+        for (int i = 0; i < r.input.entries.length; i++) {
+            IStorage ci = inputInventories[i];
+            Amount en = r.input.entries[i];
+            pickedInputs[i] = null;
+            if (en != null) {
+                if (en.getCat() != null) {
+                    ItemType first = ci.getFirst(en.getCat());
+                    if (first == null) return false;
+
+                    int sum = ci.getSum(en.getCat());
+                    if (sum < en.getAmount()) return false;
+
+                    int amount = ci.get(first);
+                    // only a single type stored, or the first one suffices
+                    if (amount == sum || amount == en.getAmount()) {
+                        pickedInputs[i] = first;
+                    }
+                } else if (en.getItem() == Item.base(en.getItem())) {
+                    // else if the item given is a parent item like "Ore"
+                    ItemType similar = ci.getSimilar(en.getItem(), en.getAmount());
+                    if (similar == null) return false;
+
+                    pickedInputs[i] = similar;
+                } else {
+                    // given item is a specific item like "CoalOre"
+                    int e = ci.get(en.getItem());
+                    if (e < en.getAmount()) return false;
+
+                    pickedInputs[i] = en.getItem();
+                }
+            }
+        }
+
+        // only allocate the amounts for the recipe that actually gets picked
+        Amount[] inputs = new Amount[r.input.entries.length];
+        for (int i = 0; i < inputs.length; i++) {
+            Amount en = r.input.entries[i];
+            if (en != null) {
+                inputs[i] = pickedInputs[i] != null ? new Amount(pickedInputs[i], en.getAmount()) : en;
+            }
+        }
+
+        for (int i = 0; i < r.input.entries.length; i++) {
+            Amount e = inputs[i];
+            if (e != null) {
+                if (e.getCat() != null) {
+                    inputInventories[i].remove(e.getCat(), e.getAmount());
+                } else {
+                    inputInventories[i].remove(e.getItem(), e.getAmount());
+                }
+            }
+        }
+
+        if (isClicked())
+            Game.G.ui.updateStructureUIInventory();
+
+        activeItems = new Items(inputs);
+        setRecipe(index);
+        return true;
+    }
+
     protected void setRecipe(int index) {
         setItemNotifications();
+        wake();
         activeRecipeIndex = index;
         if (index > -1) {
             activeRecipe = getSchema().recipeList.recipes[activeRecipeIndex];
@@ -444,6 +472,7 @@ public abstract class ProducerStructure extends PausableStructure<ProducerSchema
 
         if (sleeping || activeRecipe == null || !(hasCapacity = hasCapacityForProduction()) || noPower || additionalWorkBlockingCondition()) {
             pauseSfx();
+            if (isWaitingForInputs()) sleep();
             return;
         }
 
@@ -466,10 +495,33 @@ public abstract class ProducerStructure extends PausableStructure<ProducerSchema
         }
     }
 
+    @Override
+    public void wake() {
+        if (isIdle()) {
+            // the mean was not fed while idle, start over from the current level
+            powerLevelMean.clear();
+            for (int i = 0; i < powerLevelMean.getWindowSize(); i++)
+                powerLevelMean.addValue((float) powerLevel);
+        }
+        super.wake();
+    }
+
     protected boolean additionalWorkBlockingCondition() {
         return false;
     }
 
+    /**
+     * Nothing happens without a recipe until new inputs arrive, as long as there are no outputs left to pump out.
+     */
+    protected boolean isWaitingForInputs() {
+        if (sleeping || activeRecipe != null || clicked) return false;
+
+        for (IStorage s : outputInventories)
+            if (!s.isEmpty()) return false;
+
+        return true;
+    }
+
     protected void drawRecipeProgress(ShapeRenderer shaper) {
         if (activeRecipe != null && hasCapacity) {
             shaper.setColor(0, 0.5f, 0, 1);
@@ -139,6 +139,8 @@ public abstract class RecipeList {
 
     public final IntArray outputSizes, fluidInputs;
 
+    public final RecipeMatcher matcher;
+
     public RecipeList() {
         init();
         recipes = rec.toArray();
@@ -191,7 +193,7 @@ public abstract class RecipeList {
         if (inputs && withoutInputs) throw new IllegalArgumentException("Either all or no recipes have to contain inputs!");
 
         hasInputs = inputs;
-
+        matcher = new RecipeMatcher(recipes);
     }
 
     public void validateRecipes(Schema schema) {
@@ -0,0 +1,144 @@
+/*******************************************************************************
+ * Copyright 2019 Maximilian Stark | Dakror <mail@dakror.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package de.dakror.quarry.structure.base;
+
+import de.dakror.quarry.game.Item;
+import de.dakror.quarry.game.Item.ItemType;
+import de.dakror.quarry.game.Item.Items.Amount;
+import de.dakror.quarry.structure.base.RecipeList.Recipe;
+import de.dakror.quarry.structure.base.component.CInventory;
+import de.dakror.quarry.structure.base.component.CTank;
+import de.dakror.quarry.structure.base.component.IStorage;
+
+/**
+ * The inputs of a {@link RecipeList} compiled into sets of recipe indices, one bit per recipe.
+ * For every input slot and item type it knows the recipes taking that item in that slot, so the recipes an item can
+ * go into, or that may have become ready by receiving it, are found without going through the whole list.
+ * The sets only narrow the recipes down, the actual amounts still have to be checked against the inventories.
+ *
+ * @author Maximilian Stark | Dakror
+ */
+public class RecipeMatcher {
+    public final int words;
+    public final int slots;
+
+    // [slot][item ordinal], recipes whose input in the slot takes the item
+    final long[][][] accepting;
+    // [slot], recipes without an input in the slot
+    final long[][] unused;
+
+    final long[] none;
+
+    RecipeMatcher(Recipe[] recipes) {
+        words = (recipes.length + 63) / 64;
+        none = new long[words];
+
+        int s = 0;
+        for (Recipe r : recipes)
+            if (r.input != null) s = Math.max(s, r.input.entries.length);
+        slots = s;
+
+        accepting = new long[slots][ItemType.values.length][];
+        unused = new long[slots][words];
+
+        for (int index = 0; index < recipes.length; index++) {
+            Recipe r = recipes[index];
+            for (int slot = 0; slot < slots; slot++) {
+                Amount en = r.input == null || r.input.entries.length <= slot ? null : r.input.entries[slot];
+                if (en == null) {
+                    unused[slot][index >> 6] |= 1L << (index & 63);
+                    continue;
+                }
+
+                for (ItemType t : ItemType.values) {
+                    if (takes(en, t)) {
+                        long[] set = accepting[slot][t.ordinal()];
+                        if (set == null) accepting[slot][t.ordinal()] = set = new long[words];
+                        set[index >> 6] |= 1L << (index & 63);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Whether the input entry may be filled with the item, either through its category, as a variant of a parent item
+     * or as the exact item
+     */
+    static boolean takes(Amount en, ItemType t) {
+        if (en.getCat() != null) return t.categories.contains(en.getCat());
+        return en.getItem() == t || en.getItem() == Item.base(t)
+                || (en.getItem() == Item.base(en.getItem()) && (en.getItem().value & 0xff) == (t.value & 0xff));
+    }
+
+    /**
+     * @return the recipes taking the item in the given slot, must not be modified
+     */
+    public long[] getAccepting(int slot, ItemType item) {
+        if (slot >= slots) return none;
+        long[] set = accepting[slot][item.ordinal()];
+        return set == null ? none : set;
+    }
+
+    /**
+     * Narrows the set down to the recipes whose every input could be served by what the inventories hold right now.
+     * Inventories that can't tell what they hold keep all recipes of their slot.
+     */
+    public void filterStored(IStorage[] inventories, long[] set) {
+        for (int slot = 0; slot < slots && slot < inventories.length; slot++) {
+            IStorage inv = inventories[slot];
+
+            if (inv.isEmpty()) {
+                and(set, unused[slot]);
+            } else if (inv instanceof CInventory) {
+                CInventory ci = (CInventory) inv;
+                for (int i = 0; i < words; i++) {
+                    long stored = unused[slot][i];
+                    for (int j = 0; j < ci.getTypeCount(); j++) {
+                        long[] a = accepting[slot][ci.getType(j).ordinal()];
+                        if (a != null) stored |= a[i];
+                    }
+                    set[i] &= stored;
+                }
+            } else if (inv instanceof CTank && ((CTank) inv).getFluid() != null) {
+                long[] a = accepting[slot][((CTank) inv).getFluid().ordinal()];
+                for (int i = 0; i < words; i++)
+                    set[i] &= unused[slot][i] | (a == null ? 0 : a[i]);
+            }
+        }
+    }
+
+    static void and(long[] set, long[] mask) {
+        for (int i = 0; i < set.length; i++)
+            set[i] &= mask[i];
+    }
+
+    /**
+     * @return the smallest recipe index in the set that is at least from, or -1
+     */
+    public static int next(long[] set, int from) {
+        int word = from >> 6;
+        if (word >= set.length) return -1;
+
+        long bits = set[word] & (-1L << (from & 63));
+        while (true) {
+            if (bits != 0) return (word << 6) + Long.numberOfTrailingZeros(bits);
+            if (++word == set.length) return -1;
+            bits = set[word];
+        }
+    }
+}
@@ -41,6 +41,22 @@ public abstract class StorageStructure extends Structure<Schema> {
         return ((IStorage) components[0]).isEmpty();
     }
 
+    public boolean hasItemType(ItemType item) {
+        return ((IStorage) components[0]).get(item) > 0;
+    }
+
+    /**
+     * Called by the inventory whenever a new item type enters it.
+     */
+    public void onItemHeld(ItemType item) {
+        if (layer != null) layer.addHolder(item, this);
+    }
+
+    /**
+     * Registers all currently stored items with the layer, see {@link #onItemHeld(ItemType)}.
+     */
+    public abstract void registerHoldings();
+
     public int getSpace() {
         return ((IStorage) components[0]).getSize() - ((IStorage) components[0]).getCount();
     }
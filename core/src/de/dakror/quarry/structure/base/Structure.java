@@ -18,6 +18,7 @@ package de.dakror.quarry.structure.base;
 
 import java.util.EnumSet;
 import java.util.Objects;
+import java.util.Random;
 
 import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.graphics.g2d.TextureRegion;
@@ -37,6 +38,7 @@ import de.dakror.common.libgdx.math.QuadTree.Region;
 import de.dakror.common.libgdx.render.SpriteRenderer;
 import de.dakror.quarry.Const;
 import de.dakror.quarry.Quarry;
+import de.dakror.quarry.game.Chunk;
 import de.dakror.quarry.game.Item.ItemType;
 import de.dakror.quarry.game.Layer;
 import de.dakror.quarry.game.power.PowerNetwork;
@@ -89,6 +91,9 @@ public abstract class Structure<T extends Schema> implements Savable, Region {
     // relevant to item entities still referring to their source
     protected boolean destroyed;
 
+    // skipped by the chunk update until woken, see #sleep()
+    protected boolean idle;
+
     /**
      * for rotation
      */
@@ -275,7 +280,7 @@ public abstract class Structure<T extends Schema> implements Savable, Region {
 
     protected void setDirty() {
         if (layer != null) {
-            layer.dirtyBounds.add(this, 0);
+            layer.addDirty(this, 0);
         }
     }
 
@@ -440,18 +445,9 @@ public abstract class Structure<T extends Schema> implements Savable, Region {
 
     @Override
     public Object clone() {
-        try {
-            Structure<?> s = null;
-            if (getSchema().type.versionSwitch)
-                s = (Structure<?>) getSchema().type.constr.newInstance(x, y, version);
-            else
-                s = (Structure<?>) getSchema().type.constr.newInstance(x, y);
-            s.setUpDirection(upDirection);
-            return s;
-        } catch (Exception e) {
-            Quarry.Q.pi.message(PlatformInterface.MSG_EXCEPTION, e);
-            return null;
-        }
+        Structure<?> s = getSchema().type.create(x, y, version);
+        s.setUpDirection(upDirection);
+        return s;
     }
 
     public void onDestroy() {
@@ -471,12 +467,30 @@ public abstract class Structure<T extends Schema> implements Savable, Region {
 
     public void onClick(Table content) {
         clicked = true;
+        wake();
     }
 
     public boolean isClicked() {
         return clicked;
     }
 
+    public boolean isIdle() {
+        return idle;
+    }
+
+    /**
+     * Marks this structure as having nothing to do until {@link #wake()} is called.
+     * Only call this if update is a no-op until then, since the chunk won't tick this structure anymore,
+     * unless it is touched by the dirty bounds.
+     */
+    protected void sleep() {
+        idle = true;
+    }
+
+    public void wake() {
+        idle = false;
+    }
+
     public void onUnclick() {
         clicked = false;
     }
@@ -492,30 +506,70 @@ public abstract class Structure<T extends Schema> implements Savable, Region {
                 layer.setItemNotification(x + d.x + d.dir.dx, y + d.y + d.dir.dy);
     }
 
+    /**
+     * Whether {@link #update(double, int, Bounds)} only touches this structure's own chunk and the directly
+     * neighboring ones, which allows it to run concurrently with chunks further away.
+     * Everything connected to a power network is updated serially, and so is everything whose tiles or docks reach
+     * past the neighboring chunks. No structure is larger than a chunk, see {@link StructureType#checkFactories()}.
+     */
+    public boolean isChunkLocal() {
+        if (getSchema().powerDocks > 0) return false;
+
+        // the chunk of a structure is the one of its origin, docks reach one tile past its size
+        int cx = x / Const.CHUNK_SIZE;
+        int cy = y / Const.CHUNK_SIZE;
+        return x + getWidth() < (cx + 2) * Const.CHUNK_SIZE && y + getHeight() < (cy + 2) * Const.CHUNK_SIZE;
+    }
+
+    /**
+     * Whether {@link #drawFrame(SpriteRenderer, ShapeRenderer, SpriterDelegateBatch)} stays within this
+     * structure's tiles, so it can be skipped while those are off screen. Selected structures draw their range
+     * and links, so they never are.
+     */
+    public boolean isFrameCullable() {
+        return !clicked && Game.G.activeStructure != this && !Game.DRAW_DEBUG;
+    }
+
+    /**
+     * @return random source of the chunk this structure is in, so random choices don't depend on the update order
+     */
+    protected Random getRandom() {
+        if (layer == null) return MathUtils.random;
+
+        Chunk c = layer.getChunk(x, y);
+        return c != null ? c.getRandom() : MathUtils.random;
+    }
+
     protected void playSfx() {
         if (sfxPlaying || getSchema().sfx == null || !Quarry.Q.sound.isPlaySound() || Game.G.layer != layer)
             return;
 
-        if (sfxId != -1) {
-            Game.G.spatializedPlayer.resume(sfxId);
-            sfxPlaying = true;
-        } else {
-            sfxId = Game.G.spatializedPlayer.play(this, getSchema().sfx.sound, getSchema().sfx.pitch, true, true);
-            sfxPlaying = sfxId != -1;
+        synchronized (Game.G.spatializedPlayer) {
+            if (sfxId != -1) {
+                Game.G.spatializedPlayer.resume(sfxId);
+                sfxPlaying = true;
+            } else {
+                sfxId = Game.G.spatializedPlayer.play(this, getSchema().sfx.sound, getSchema().sfx.pitch, true, true);
+                sfxPlaying = sfxId != -1;
+            }
         }
     }
 
     protected void pauseSfx() {
         if (!sfxPlaying || sfxId == -1) return;
 
-        Game.G.spatializedPlayer.pause(sfxId);
+        synchronized (Game.G.spatializedPlayer) {
+            Game.G.spatializedPlayer.pause(sfxId);
+        }
         sfxPlaying = false;
     }
 
     public void stopSfx() {
         if (sfxId == -1) return;
 
-        Game.G.spatializedPlayer.stop(sfxId);
+        synchronized (Game.G.spatializedPlayer) {
+            Game.G.spatializedPlayer.stop(sfxId);
+        }
         sfxId = -1;
         sfxPlaying = false;
     }
@@ -528,7 +582,15 @@ public abstract class Structure<T extends Schema> implements Savable, Region {
                 .Int("x", x)
                 .Int("y", y);
 
-        saveData(b);
+        if (isPacked() && components.length == 0) {
+            if (version != 0) b.Byte("version", version);
+
+            StructureCodec.Writer w = new StructureCodec.Writer();
+            encode(w);
+            b.ByteArray(StructureCodec.TAG, w.toByteArray());
+        } else {
+            saveData(b);
+        }
 
         b.End();
     }
@@ -579,6 +641,26 @@ public abstract class Structure<T extends Schema> implements Savable, Region {
         }
     }
 
+    /**
+     * @return whether this structure is saved through {@link #encode(StructureCodec.Writer)} instead of
+     *         {@link #saveData(Builder)}. Only honored for structures without components.
+     */
+    protected boolean isPacked() {
+        return false;
+    }
+
+    /**
+     * Positional counterpart of {@link #saveData(Builder)}, every field has to be read back in the same order by
+     * {@link #decode(StructureCodec.Reader)}
+     */
+    protected void encode(StructureCodec.Writer w) {
+        w.putByte(upDirection.ordinal());
+    }
+
+    protected void decode(StructureCodec.Reader r) throws NBTException {
+        setUpDirection(Direction.values[r.getByte()]);
+    }
+
     protected void loadData(CompoundTag tag) throws NBTException {
         if (tag.has("upDir")) {
             setUpDirection(Direction.values[tag.Byte("upDir", (byte) 0)]);
@@ -622,22 +704,20 @@ public abstract class Structure<T extends Schema> implements Savable, Region {
             return null;
         }
 
-        Structure<?> s = null;
-
         int x = tag.Int("x");
         int y = tag.Int("y");
         int version = tag.Byte("version", (byte) 0) & 0xff;
 
-        try {
-            if (t.versionSwitch)
-                s = (Structure<?>) t.constr.newInstance(x, y, version);
-            else
-                s = (Structure<?>) t.constr.newInstance(x, y);
-        } catch (Exception e) {
-            Quarry.Q.pi.message(PlatformInterface.MSG_EXCEPTION, e);
-        }
+        Structure<?> s = t.create(x, y, version);
 
-        s.loadData(tag);
+        byte[] data = tag.ByteArray(StructureCodec.TAG, null);
+        if (data != null) {
+            StructureCodec.Reader r = new StructureCodec.Reader(data);
+            if (r.isKnownLayout()) s.decode(r);
+            else System.err.println("Not loading data of " + t.name() + " at " + x + "," + y + " with layout " + r.layout);
+        } else {
+            s.loadData(tag);
+        }
 
         return s;
     }
@@ -651,21 +731,10 @@ public abstract class Structure<T extends Schema> implements Savable, Region {
             return null;
         }
 
-        Structure<?> s = null;
-
         int x = tag.Int("x") + pasteRegion[0];
         int y = tag.Int("y") + pasteRegion[1];
         int version = tag.Byte("version", (byte) 0) & 0xff;
 
-        try {
-            if (t.versionSwitch)
-                s = (Structure<?>) t.constr.newInstance(x, y, version);
-            else
-                s = (Structure<?>) t.constr.newInstance(x, y);
-        } catch (Exception e) {
-            Quarry.Q.pi.message(PlatformInterface.MSG_EXCEPTION, e);
-        }
-
-        return s;
+        return t.create(x, y, version);
     }
 }
@@ -0,0 +1,161 @@
+/*******************************************************************************
+ * Copyright 2019 Maximilian Stark | Dakror <mail@dakror.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package de.dakror.quarry.structure.base;
+
+import java.util.Arrays;
+
+import de.dakror.common.libgdx.io.NBT.NBTException;
+
+/**
+ * Positional encoding of the state of structures that exist by the thousands, like conveyors, tubes and cables.
+ * Their fields are written one after the other into a single byte array, which is stored as the <code>data</code>
+ * tag of the structure. Loading then takes one tag lookup per structure instead of one per field.
+ * The order of the fields is the order of the {@link Structure#encode(Writer)} calls, from the base class down.
+ * <p>
+ * Every array starts with the {@link #LAYOUT} it was written with. Whenever any <code>encode</code> override
+ * changes what it writes, {@link #LAYOUT} has to be raised and the matching <code>decode</code> has to keep reading
+ * the older layouts, telling them apart through {@link Reader#layout}.
+ *
+ * @author Maximilian Stark | Dakror
+ */
+public class StructureCodec {
+    public static final String TAG = "data";
+
+    /**
+     * Layout of the arrays written by this build
+     */
+    public static final int LAYOUT = 1;
+
+    public static class Writer {
+        byte[] data = new byte[64];
+        int size;
+
+        public Writer() {
+            putByte(LAYOUT);
+        }
+
+        void ensure(int n) {
+            if (size + n > data.length) data = Arrays.copyOf(data, Math.max(data.length * 2, size + n));
+        }
+
+        public int position() {
+            return size;
+        }
+
+        public void putByte(int v) {
+            ensure(1);
+            data[size++] = (byte) v;
+        }
+
+        public void putShort(int v) {
+            ensure(2);
+            putShort(size, v);
+            size += 2;
+        }
+
+        /**
+         * Overwrites a short written earlier, for counts that are only known afterwards
+         */
+        public void putShort(int at, int v) {
+            data[at] = (byte) (v >> 8);
+            data[at + 1] = (byte) v;
+        }
+
+        public void putInt(int v) {
+            ensure(4);
+            data[size++] = (byte) (v >> 24);
+            data[size++] = (byte) (v >> 16);
+            data[size++] = (byte) (v >> 8);
+            data[size++] = (byte) v;
+        }
+
+        public void putLong(long v) {
+            putInt((int) (v >> 32));
+            putInt((int) v);
+        }
+
+        public void putFloat(float v) {
+            putInt(Float.floatToIntBits(v));
+        }
+
+        public void putDouble(double v) {
+            putLong(Double.doubleToLongBits(v));
+        }
+
+        public byte[] toByteArray() {
+            return Arrays.copyOf(data, size);
+        }
+    }
+
+    public static class Reader {
+        final byte[] data;
+        int pos;
+
+        /**
+         * The {@link StructureCodec#LAYOUT} the array was written with, or -1 if it is empty
+         */
+        public final int layout;
+
+        public Reader(byte[] data) {
+            this.data = data;
+            layout = data.length > 0 ? data[pos++] & 0xff : -1;
+        }
+
+        /**
+         * @return whether this build knows how to read the array
+         */
+        public boolean isKnownLayout() {
+            return layout > 0 && layout <= LAYOUT;
+        }
+
+        void check(int n) throws NBTException {
+            if (pos + n > data.length) throw new NBTException("Structure data ends after " + data.length + " bytes");
+        }
+
+        public byte getByte() throws NBTException {
+            check(1);
+            return data[pos++];
+        }
+
+        public short getShort() throws NBTException {
+            check(2);
+            short v = (short) (((data[pos] & 0xff) << 8) | (data[pos + 1] & 0xff));
+            pos += 2;
+            return v;
+        }
+
+        public int getInt() throws NBTException {
+            check(4);
+            int v = ((data[pos] & 0xff) << 24) | ((data[pos + 1] & 0xff) << 16) | ((data[pos + 2] & 0xff) << 8) | (data[pos + 3] & 0xff);
+            pos += 4;
+            return v;
+        }
+
+        public long getLong() throws NBTException {
+            long hi = getInt();
+            return (hi << 32) | (getInt() & 0xffffffffL);
+        }
+
+        public float getFloat() throws NBTException {
+            return Float.intBitsToFloat(getInt());
+        }
+
+        public double getDouble() throws NBTException {
+            return Double.longBitsToDouble(getLong());
+        }
+    }
+}
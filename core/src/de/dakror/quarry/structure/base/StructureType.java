@@ -16,8 +16,7 @@
 
 package de.dakror.quarry.structure.base;
 
-import java.lang.reflect.Constructor;
-
+import de.dakror.quarry.Const;
 import de.dakror.quarry.structure.Boiler;
 import de.dakror.quarry.structure.Booster;
 import de.dakror.quarry.structure.DistillationColumn;
@@ -103,135 +102,327 @@ import de.dakror.quarry.structure.storage.Warehouse;
  */
 public enum StructureType {
     // tube
-    Conveyor(1, Conveyor.class),
-    ConveyorBridge(2, ConveyorBridge.class),
-    BrickChannel(3, BrickChannel.class),
-    CopperTube(4, CopperTube.class),
-    SteelTube(5, SteelTube.class),
-    ElectricConveyor(6, ElectricConveyor.class),
-    ElectricConveyorCore(7, ElectricConveyorCore.class),
+    Conveyor(1),
+    ConveyorBridge(2),
+    BrickChannel(3),
+    CopperTube(4),
+    SteelTube(5),
+    ElectricConveyor(6),
+    ElectricConveyorCore(7),
 
     // distributors
-    Filter(10, Filter.class),
-    Distributor(11, Distributor.class),
-    Valve(12, Valve.class),
-    Hopper(13, Hopper.class),
-    VacuumPump(14, VacuumPump.class),
+    Filter(10),
+    Distributor(11),
+    Valve(12),
+    Hopper(13),
+    VacuumPump(14),
 
     // storage
-    Storage(20, Storage.class),
-    Warehouse(21, Warehouse.class),
-    Tank(22, Tank.class),
-    Barrel(23, Barrel.class),
-    Silo(24, Silo.class),
-    DigitalStorage(25, DigitalStorage.class),
+    Storage(20),
+    Warehouse(21),
+    Tank(22),
+    Barrel(23),
+    Silo(24),
+    DigitalStorage(25),
 
     // producers
-    Mine(40, Mine.class),
-    Lumberjack(41, Lumberjack.class),
-    GroundwaterPump(42, GroundwaterPump.class),
-    ShaftDrill(43, ShaftDrill.class),
-    AirPurifier(44, AirPurifier.class),
-    OilWell(45, OilWell.class),
-    Excavator(46, Excavator.class),
+    Mine(40),
+    Lumberjack(41),
+    GroundwaterPump(42),
+    ShaftDrill(43),
+    AirPurifier(44),
+    OilWell(45),
+    Excavator(46),
 
     // processors
-    Carpenter(70, Carpenter.class),
-    Furnace(71, Furnace.class),
-    RockCrusher(72, RockCrusher.class),
-    BallMill(73, BallMill.class),
-    IngotMold(74, IngotMold.class),
-    CharcoalMound(75, CharcoalMound.class),
-    Mason(76, Mason.class),
-    Boiler(77, Boiler.class),
-    WireDrawer(78, WireDrawer.class),
-    RollingMachine(79, RollingMachine.class),
-    BlastFurnace(80, BlastFurnace.class),
-    Condenser(81, Condenser.class),
-    Mixer(82, Mixer.class),
-    Kiln(83, Kiln.class),
-    SawMill(84, SawMill.class),
-    TubeBender(85, TubeBender.class),
-    Polarizer(86, Polarizer.class),
-    Compactor(87, Compactor.class),
-    Assembler(88, Assembler.class),
-    Refinery(89, Refinery.class),
-    DistillationColumn(90, DistillationColumn.class),
-    Polymerizer(91, Polymerizer.class),
-    Centrifuge(92, Centrifuge.class),
-    InjectionMolder(93, InjectionMolder.class),
-    Crucible(94, Crucible.class),
-    DeviceFabricator(95, DeviceFabricator.class),
-    InductionFurnace(96, InductionFurnace.class),
-    FillingMachine(97, FillingMachine.class),
-    BarrelDrainer(98, BarrelDrainer.class),
-    ArcWelder(99, ArcWelder.class),
+    Carpenter(70),
+    Furnace(71),
+    RockCrusher(72),
+    BallMill(73),
+    IngotMold(74),
+    CharcoalMound(75),
+    Mason(76),
+    Boiler(77),
+    WireDrawer(78),
+    RollingMachine(79),
+    BlastFurnace(80),
+    Condenser(81),
+    Mixer(82),
+    Kiln(83),
+    SawMill(84),
+    TubeBender(85),
+    Polarizer(86),
+    Compactor(87),
+    Assembler(88),
+    Refinery(89),
+    DistillationColumn(90),
+    Polymerizer(91),
+    Centrifuge(92),
+    InjectionMolder(93),
+    Crucible(94),
+    DeviceFabricator(95),
+    InductionFurnace(96),
+    FillingMachine(97),
+    BarrelDrainer(98),
+    ArcWelder(99),
 
     // power management
-    Substation(100, Substation.class),
-    CopperCable(101, CopperCable.class),
-    Capacitor(102, Capacitor.class),
-    PowerPole(103, PowerPole.class),
-    PowerPoleGhost(104, PowerPoleGhost.class),
-    AnchorPortal(105, AnchorPortal.class),
-    SuperCapacitor(106, SuperCapacitor.class),
+    Substation(100),
+    CopperCable(101),
+    Capacitor(102),
+    PowerPole(103),
+    PowerPoleGhost(104),
+    AnchorPortal(105),
+    SuperCapacitor(106),
 
     // generators
-    WaterWheel(110, WaterWheel.class),
-    SteamTurbine(111, SteamTurbine.class),
-    SolarPanelOutlet(112, SolarPanelOutlet.class),
-    SolarPanel(113, SolarPanel.class),
-    GasTurbine(114, GasTurbine.class),
+    WaterWheel(110),
+    SteamTurbine(111),
+    SolarPanelOutlet(112),
+    SolarPanel(113),
+    GasTurbine(114),
 
     // Science
-    ScienceLab(150, ScienceLab.class),
+    ScienceLab(150),
 
-    Booster(175, Booster.class),
+    Booster(175),
 
     // other
-    ShaftDrillHead(200, ShaftDrillHead.class),
+    ShaftDrillHead(200),
 
     // shafts
-    ItemLift(201, ItemLift.class),
-    ItemLiftBelow(202, ItemLiftBelow.class),
-    TubeShaft(203, TubeShaft.class),
-    TubeShaftBelow(204, TubeShaftBelow.class),
-    CableShaft(205, CableShaft.class),
-    CableShaftBelow(206, CableShaftBelow.class),
-    HighPowerShaft(207, HighPowerShaft.class),
-    HighPowerShaftBelow(208, HighPowerShaftBelow.class),
+    ItemLift(201),
+    ItemLiftBelow(202),
+    TubeShaft(203),
+    TubeShaftBelow(204),
+    CableShaft(205),
+    CableShaftBelow(206),
+    HighPowerShaft(207),
+    HighPowerShaftBelow(208),
 
     // Processors cnt.
-    Stacker(210, Stacker.class),
+    Stacker(210),
 
     ;
 
     public static final StructureType[] values = values();
 
     public final byte id;
-    public final Constructor<?> constr;
-    public final boolean versionSwitch;
 
-    StructureType(int id, Class<?> clazz) {
+    StructureType(int id) {
         this.id = (byte) id;
-        Constructor<?> con = null;
-        boolean switch_ = false;
-        try {
-            con = clazz.getConstructor(int.class, int.class, int.class);
-            clazz.getConstructor(int.class, int.class); // ensure second constructor exists too
-            switch_ = true;
-        } catch (Exception e) {
-            try {
-                con = clazz.getConstructor(int.class, int.class);
-                switch_ = false;
-            } catch (Exception e1) {
-                throw new IllegalStateException("Structure type " + name() + " does not contain appropriate constructor (int, int) or (int, int, int)");
-            }
-        }
-        this.constr = con;
-        this.versionSwitch = switch_;
         if (Structure.types[id] != null)
             throw new IllegalStateException("Structure with ID " + id + " is already taken!");
         Structure.types[id] = this;
     }
+
+    /**
+     * Creates a new structure of this type in its current version
+     */
+    public Structure<?> create(int x, int y) {
+        switch (this) {
+            case Conveyor:
+                return new Conveyor(x, y);
+            case ConveyorBridge:
+                return new ConveyorBridge(x, y);
+            case BrickChannel:
+                return new BrickChannel(x, y);
+            case CopperTube:
+                return new CopperTube(x, y);
+            case SteelTube:
+                return new SteelTube(x, y);
+            case ElectricConveyor:
+                return new ElectricConveyor(x, y);
+            case ElectricConveyorCore:
+                return new ElectricConveyorCore(x, y);
+            case Filter:
+                return new Filter(x, y);
+            case Distributor:
+                return new Distributor(x, y);
+            case Valve:
+                return new Valve(x, y);
+            case Hopper:
+                return new Hopper(x, y);
+            case VacuumPump:
+                return new VacuumPump(x, y);
+            case Storage:
+                return new Storage(x, y);
+            case Warehouse:
+                return new Warehouse(x, y);
+            case Tank:
+                return new Tank(x, y);
+            case Barrel:
+                return new Barrel(x, y);
+            case Silo:
+                return new Silo(x, y);
+            case DigitalStorage:
+                return new DigitalStorage(x, y);
+            case Mine:
+                return new Mine(x, y);
+            case Lumberjack:
+                return new Lumberjack(x, y);
+            case GroundwaterPump:
+                return new GroundwaterPump(x, y);
+            case ShaftDrill:
+                return new ShaftDrill(x, y);
+            case AirPurifier:
+                return new AirPurifier(x, y);
+            case OilWell:
+                return new OilWell(x, y);
+            case Excavator:
+                return new Excavator(x, y);
+            case Carpenter:
+                return new Carpenter(x, y);
+            case Furnace:
+                return new Furnace(x, y);
+            case RockCrusher:
+                return new RockCrusher(x, y);
+            case BallMill:
+                return new BallMill(x, y);
+            case IngotMold:
+                return new IngotMold(x, y);
+            case CharcoalMound:
+                return new CharcoalMound(x, y);
+            case Mason:
+                return new Mason(x, y);
+            case Boiler:
+                return new Boiler(x, y);
+            case WireDrawer:
+                return new WireDrawer(x, y);
+            case RollingMachine:
+                return new RollingMachine(x, y);
+            case BlastFurnace:
+                return new BlastFurnace(x, y);
+            case Condenser:
+                return new Condenser(x, y);
+            case Mixer:
+                return new Mixer(x, y);
+            case Kiln:
+                return new Kiln(x, y);
+            case SawMill:
+                return new SawMill(x, y);
+            case TubeBender:
+                return new TubeBender(x, y);
+            case Polarizer:
+                return new Polarizer(x, y);
+            case Compactor:
+                return new Compactor(x, y);
+            case Assembler:
+                return new Assembler(x, y);
+            case Refinery:
+                return new Refinery(x, y);
+            case DistillationColumn:
+                return new DistillationColumn(x, y);
+            case Polymerizer:
+                return new Polymerizer(x, y);
+            case Centrifuge:
+                return new Centrifuge(x, y);
+            case InjectionMolder:
+                return new InjectionMolder(x, y);
+            case Crucible:
+                return new Crucible(x, y);
+            case DeviceFabricator:
+                return new DeviceFabricator(x, y);
+            case InductionFurnace:
+                return new InductionFurnace(x, y);
+            case FillingMachine:
+                return new FillingMachine(x, y);
+            case BarrelDrainer:
+                return new BarrelDrainer(x, y);
+            case ArcWelder:
+                return new ArcWelder(x, y);
+            case Substation:
+                return new Substation(x, y);
+            case CopperCable:
+                return new CopperCable(x, y);
+            case Capacitor:
+                return new Capacitor(x, y);
+            case PowerPole:
+                return new PowerPole(x, y);
+            case PowerPoleGhost:
+                return new PowerPoleGhost(x, y);
+            case AnchorPortal:
+                return new AnchorPortal(x, y);
+            case SuperCapacitor:
+                return new SuperCapacitor(x, y);
+            case WaterWheel:
+                return new WaterWheel(x, y);
+            case SteamTurbine:
+                return new SteamTurbine(x, y);
+            case SolarPanelOutlet:
+                return new SolarPanelOutlet(x, y);
+            case SolarPanel:
+                return new SolarPanel(x, y);
+            case GasTurbine:
+                return new GasTurbine(x, y);
+            case ScienceLab:
+                return new ScienceLab(x, y);
+            case Booster:
+                return new Booster(x, y);
+            case ShaftDrillHead:
+                return new ShaftDrillHead(x, y);
+            case ItemLift:
+                return new ItemLift(x, y);
+            case ItemLiftBelow:
+                return new ItemLiftBelow(x, y);
+            case TubeShaft:
+                return new TubeShaft(x, y);
+            case TubeShaftBelow:
+                return new TubeShaftBelow(x, y);
+            case CableShaft:
+                return new CableShaft(x, y);
+            case CableShaftBelow:
+                return new CableShaftBelow(x, y);
+            case HighPowerShaft:
+                return new HighPowerShaft(x, y);
+            case HighPowerShaftBelow:
+                return new HighPowerShaftBelow(x, y);
+            case Stacker:
+                return new Stacker(x, y);
+            default:
+                throw new IllegalStateException("Structure type " + name() + " can't be created");
+        }
+    }
+
+    /**
+     * Creates a new structure of this type. The version is only passed to the types that keep multiple versions of
+     * their schema.
+     */
+    public Structure<?> create(int x, int y, int version) {
+        switch (this) {
+            case CharcoalMound:
+                return new CharcoalMound(x, y, version);
+            case Mixer:
+                return new Mixer(x, y, version);
+            case Assembler:
+                return new Assembler(x, y, version);
+            case Centrifuge:
+                return new Centrifuge(x, y, version);
+            case InjectionMolder:
+                return new InjectionMolder(x, y, version);
+            case InductionFurnace:
+                return new InductionFurnace(x, y, version);
+            case Capacitor:
+                return new Capacitor(x, y, version);
+            default:
+                return create(x, y);
+        }
+    }
+
+    /**
+     * Makes sure every type can be created, instead of only finding out once a save or blueprint holds a type that
+     * is missing from {@link #create(int, int)}, or is too large for the parallel chunk update.
+     * Needs the assets the structures use.
+     */
+    public static void checkFactories() {
+        for (StructureType t : values) {
+            Structure<?> s = t.create(0, 0);
+            if (s.getSchema().type != t)
+                throw new IllegalStateException("Structure type " + t.name() + " creates a " + s.getSchema().type.name());
+
+            // parallel chunk updates rely on this, see Structure#isChunkLocal()
+            if (s.getWidth() > Const.CHUNK_SIZE || s.getHeight() > Const.CHUNK_SIZE)
+                throw new IllegalStateException("Structure type " + t.name() + " is larger than a chunk");
+        }
+    }
 }
@@ -16,11 +16,7 @@
 
 package de.dakror.quarry.structure.base.component;
 
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.Map;
-import java.util.Map.Entry;
-import java.util.Set;
+import java.util.Arrays;
 
 import com.badlogic.gdx.utils.Array;
 
@@ -34,6 +30,7 @@ import de.dakror.quarry.game.Item.ItemCategory;
 import de.dakror.quarry.game.Item.ItemType;
 import de.dakror.quarry.game.Item.Items.Amount;
 import de.dakror.quarry.structure.base.Dock;
+import de.dakror.quarry.structure.base.StorageStructure;
 import de.dakror.quarry.structure.base.Structure;
 import de.dakror.quarry.structure.logistics.Conveyor;
 import de.dakror.quarry.structure.logistics.ElectricConveyorCore;
@@ -44,16 +41,36 @@ import de.dakror.quarry.util.Util;
  * @author Maximilian Stark | Dakror
  */
 public class CInventory extends Component implements IStorage {
+    // category ordinals per item type ordinal, so the category sums can be kept without iterating EnumSets
+    static final int[][] itemCategories = new int[ItemType.values.length][];
+
+    static {
+        for (ItemType t : ItemType.values) {
+            int[] cats = new int[t.categories.size()];
+            int i = 0;
+            for (ItemCategory c : t.categories)
+                cats[i++] = c.ordinal();
+            itemCategories[t.ordinal()] = cats;
+        }
+    }
+
     int size, count;
     int outputDock;
 
-    HashMap<ItemType, Integer> inventory;
+    // inventories only ever hold a handful of types, so a linear scan over these beats hashing
+    ItemType[] types;
+    int[] amounts;
+    int typeCount;
+    final int[] categorySums;
+
     float pumpOutDelay;
     boolean isTubeAtOutput;
     float pumpOutSpeed;
 
     public CInventory() {
-        inventory = new HashMap<>();
+        types = new ItemType[4];
+        amounts = new int[4];
+        categorySums = new int[ItemCategory.values.length];
         pumpOutDelay = Const.DEFAULT_PUMP_OUT_DELAY;
         pumpOutSpeed = Const.DEFAULT_PUMP_OUT_DELAY;
     }
@@ -129,7 +146,9 @@ public class CInventory extends Component implements IStorage {
     }
 
     public void clear() {
-        inventory.clear();
+        Arrays.fill(types, 0, typeCount, null);
+        Arrays.fill(categorySums, 0);
+        typeCount = 0;
         count = 0;
     }
 
@@ -173,11 +192,7 @@ public class CInventory extends Component implements IStorage {
         if (i < amount) return false;
         count -= amount;
 
-        int num = i - amount;
-
-        if (num > 0)
-            inventory.put(item, num);
-        else inventory.remove(item);
+        set(item, i - amount);
 
         return true;
     }
@@ -189,9 +204,7 @@ public class CInventory extends Component implements IStorage {
 
         int dif = Math.min(i, amount);
         count -= dif;
-        int num = i - dif;
-
-        inventory.put(item, Math.max(0, num));
+        set(item, Math.max(0, i - dif));
 
         return amount - dif;
     }
@@ -200,7 +213,7 @@ public class CInventory extends Component implements IStorage {
     public void addUnsafe(ItemType item, int amount) {
         int i = get(item);
         count += amount;
-        inventory.put(item, i + amount);
+        set(item, i + amount);
     }
 
     @Override
@@ -210,16 +223,52 @@ public class CInventory extends Component implements IStorage {
 
         int dif = Math.min(amount, size - count);
         count += dif;
-        inventory.put(item, get(item) + dif);
+        set(item, get(item) + dif);
 
         return amount - dif;
     }
 
     @Override
     public int get(ItemType item) {
-        Integer i = inventory.get(item);
-        if (i == null) return 0;
-        return i;
+        int i = indexOf(item);
+        if (i == -1) return 0;
+        return amounts[i];
+    }
+
+    int indexOf(ItemType item) {
+        for (int i = 0; i < typeCount; i++)
+            if (types[i] == item) return i;
+        return -1;
+    }
+
+    /**
+     * Sets the stored amount of the given item and keeps the category sums up to date. Does not touch {@link #count}.
+     */
+    protected void set(ItemType item, int amount) {
+        int i = indexOf(item);
+        int old = i == -1 ? 0 : amounts[i];
+        if (amount == old) return;
+
+        for (int c : itemCategories[item.ordinal()])
+            categorySums[c] += amount - old;
+
+        if (old == 0 && structure instanceof StorageStructure)
+            ((StorageStructure) structure).onItemHeld(item);
+
+        if (amount == 0) {
+            System.arraycopy(types, i + 1, types, i, typeCount - i - 1);
+            System.arraycopy(amounts, i + 1, amounts, i, typeCount - i - 1);
+            types[--typeCount] = null;
+        } else if (i == -1) {
+            if (typeCount == types.length) {
+                types = Arrays.copyOf(types, typeCount * 2);
+                amounts = Arrays.copyOf(amounts, typeCount * 2);
+            }
+            types[typeCount] = item;
+            amounts[typeCount++] = amount;
+        } else {
+            amounts[i] = amount;
+        }
     }
 
     /** Returns amount for the first matching itemtype with the same value but difference in meta
@@ -228,46 +277,70 @@ public class CInventory extends Component implements IStorage {
      */
     @Override
     public Amount[] getSimilar(ItemType item) {
-        Array<Amount> amounts = new Array<>(Amount.class);
+        Array<Amount> result = new Array<>(Amount.class);
         int base = item.value & 0xff;
-        for (Map.Entry<ItemType, Integer> e : inventory.entrySet()) {
-            if ((e.getKey().value & 0xff) == base) amounts.add(new Amount(e.getKey(), e.getValue()));
+        for (int i = 0; i < typeCount; i++) {
+            if ((types[i].value & 0xff) == base) result.add(new Amount(types[i], amounts[i]));
         }
 
-        return amounts.toArray();
+        return result.toArray();
+    }
+
+    @Override
+    public ItemType getSimilar(ItemType item, int minAmount) {
+        int base = item.value & 0xff;
+        for (int i = 0; i < typeCount; i++) {
+            if ((types[i].value & 0xff) == base && amounts[i] >= minAmount) return types[i];
+        }
+
+        return null;
     }
 
     @Override
     public Amount[] get(ItemCategory cat) {
-        Array<Amount> amounts = new Array<>(Amount.class);
-        for (Map.Entry<ItemType, Integer> e : inventory.entrySet()) {
-            if (e.getKey().categories.contains(cat)) {
-                amounts.add(new Amount(e.getKey(), e.getValue()));
+        Array<Amount> result = new Array<>(Amount.class);
+        for (int i = 0; i < typeCount; i++) {
+            if (types[i].categories.contains(cat)) {
+                result.add(new Amount(types[i], amounts[i]));
             }
         }
 
-        return amounts.toArray();
+        return result.toArray();
     }
 
     @Override
-    public int getSum(ItemCategory cat) {
-        int count = 0;
-        for (Map.Entry<ItemType, Integer> e : inventory.entrySet()) {
-            if (e.getKey().categories.contains(cat)) {
-                count += e.getValue();
-            }
+    public ItemType getFirst(ItemCategory cat) {
+        for (int i = 0; i < typeCount; i++) {
+            if (types[i].categories.contains(cat)) return types[i];
         }
-        return count;
+
+        return null;
     }
 
-    public Set<Map.Entry<ItemType, Integer>> getAll() {
-        return inventory.entrySet();
+    @Override
+    public int getSum(ItemCategory cat) {
+        return categorySums[cat.ordinal()];
+    }
+
+    /**
+     * @return number of different item types stored, for iterating with {@link #getType(int)} and {@link #getAmount(int)}
+     */
+    public int getTypeCount() {
+        return typeCount;
+    }
+
+    public ItemType getType(int index) {
+        return types[index];
+    }
+
+    public int getAmount(int index) {
+        return amounts[index];
     }
 
     @Override
     public void saveData(Builder b) {
         b.Compound();
-        Util.NBTwriteInventory(b, inventory);
+        Util.NBTwriteInventory(b, types, amounts, typeCount);
         if (outputDock > -1) b
                 .Float("pumpDelay", pumpOutDelay)
                 .Byte("output", (byte) (isTubeAtOutput ? 1 : 0));
@@ -277,8 +350,9 @@ public class CInventory extends Component implements IStorage {
     @Override
     public void loadData(CompoundTag tag) {
         int c = 0;
+        clear();
         try {
-            c = Util.NBTreadInventory(tag, inventory);
+            c = Util.NBTreadInventory(tag, this);
         } catch (NBTException e) {
             Quarry.Q.pi.message(PlatformInterface.MSG_EXCEPTION, e);
         }
@@ -292,16 +366,12 @@ public class CInventory extends Component implements IStorage {
         Dock output = outputDock == -1 ? null : structure.getDocks()[outputDock];
         if (output == null) return;
 
-        for (Iterator<Map.Entry<ItemType, Integer>> iter = inventory.entrySet().iterator(); iter.hasNext();) {
-            Map.Entry<ItemType, Integer> e = iter.next();
-            if (structure.layer.addItemEntity(e.getKey(), structure, output, structure)) {
+        for (int i = 0; i < typeCount; i++) {
+            if (structure.layer.addItemEntity(types[i], structure, output, structure)) {
                 structure.setItemNotifications();
 
-                int v = e.getValue();
-
-                e.setValue(v - 1);
+                set(types[i], amounts[i] - 1);
                 count--;
-                if (e.getValue() <= 0) iter.remove();
 
                 // only pump out the first item, so we break
                 break;
@@ -322,15 +392,16 @@ public class CInventory extends Component implements IStorage {
     @Override
     public boolean remove(ItemCategory category, int amount) {
         int left = amount;
-        for (Iterator<Entry<ItemType, Integer>> iter = inventory.entrySet().iterator(); iter.hasNext();) {
-            Entry<ItemType, Integer> e = iter.next();
-            if (e.getKey().categories.contains(category)) {
-                left = removeWithRest(e.getKey(), left);
-
-                if (inventory.get(e.getKey()) == 0) iter.remove();
+        for (int i = 0; i < typeCount;) {
+            ItemType t = types[i];
+            if (t.categories.contains(category)) {
+                left = removeWithRest(t, left);
 
                 if (left == 0) return true;
             }
+
+            // emptied entries are removed, so the next one moved into this place
+            if (i < typeCount && types[i] == t) i++;
         }
         return false;
     }
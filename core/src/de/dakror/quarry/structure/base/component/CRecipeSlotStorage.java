@@ -20,7 +20,7 @@ import de.dakror.quarry.game.Item;
 import de.dakror.quarry.game.Item.ItemType;
 import de.dakror.quarry.game.Item.Items.Amount;
 import de.dakror.quarry.structure.base.RecipeList;
-import de.dakror.quarry.structure.base.RecipeList.Recipe;
+import de.dakror.quarry.structure.base.RecipeMatcher;
 
 /**
  * @author Maximilian Stark | Dakror
@@ -39,10 +39,9 @@ public class CRecipeSlotStorage extends CInventory {
 
     @Override
     public boolean canAccept(ItemType item) {
-        for (Recipe r : recipes.recipes) {
-            if (r.getInput() == null || r.getInput().entries.length <= index) continue;
-
-            Amount a = r.getInput().entries[index];
+        long[] set = recipes.matcher.getAccepting(index, item);
+        for (int i = RecipeMatcher.next(set, 0); i > -1; i = RecipeMatcher.next(set, i + 1)) {
+            Amount a = recipes.recipes[i].getInput().entries[index];
             if ((a.getCat() != null && item.categories.contains(a.getCat()) && getSum(a.getCat()) < a.getAmount())
                     || (a.getItem() != null && (a.getItem() == item || a.getItem() == Item.base(item)) && get(item) < a.getAmount())) return true;
         }
@@ -53,10 +52,9 @@ public class CRecipeSlotStorage extends CInventory {
 
     @Override
     public boolean add(ItemType item, int amount) {
-        for (Recipe r : recipes.recipes) {
-            if (r.getInput() == null || r.getInput().entries.length <= index) continue;
-
-            Amount a = r.getInput().entries[index];
+        long[] set = recipes.matcher.getAccepting(index, item);
+        for (int i = RecipeMatcher.next(set, 0); i > -1; i = RecipeMatcher.next(set, i + 1)) {
+            Amount a = recipes.recipes[i].getInput().entries[index];
             if ((a.getCat() != null && item.categories.contains(a.getCat()) && getSum(a.getCat()) + amount <= a.getAmount())
                     || (a.getItem() != null && (a.getItem() == item || a.getItem() == Item.base(item) && get(item) + amount <= a.getAmount()))) {
                 addUnsafe(item, amount);
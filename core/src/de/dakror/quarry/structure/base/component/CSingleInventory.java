@@ -25,6 +25,7 @@ import de.dakror.quarry.game.Item.ItemCategory;
 import de.dakror.quarry.game.Item.ItemType;
 import de.dakror.quarry.game.Item.Items.Amount;
 import de.dakror.quarry.structure.base.Dock;
+import de.dakror.quarry.structure.base.StorageStructure;
 import de.dakror.quarry.structure.base.Structure;
 import de.dakror.quarry.structure.logistics.Conveyor;
 import de.dakror.quarry.structure.logistics.ElectricConveyorCore;
@@ -199,6 +200,7 @@ public class CSingleInventory extends Component implements IStorage {
         if (this.count >= size) return amount;
         if (item.categories.contains(ItemCategory.Fluid)) return amount;
 
+        if (this.count == 0) onItemHeld(item);
         this.item = item;
         int dif = Math.min(amount, size - count);
         this.count += dif;
@@ -230,10 +232,16 @@ public class CSingleInventory extends Component implements IStorage {
 
     @Override
     public void addUnsafe(ItemType item, int amount) {
+        if (this.count == 0) onItemHeld(item);
         this.item = item;
         this.count += amount;
     }
 
+    private void onItemHeld(ItemType item) {
+        if (structure instanceof StorageStructure)
+            ((StorageStructure) structure).onItemHeld(item);
+    }
+
     @Override
     public boolean hasSpace() {
         return count < size;
@@ -291,6 +299,7 @@ public class CSingleInventory extends Component implements IStorage {
         if (this.count >= size) return false;
         if (item.categories.contains(ItemCategory.Fluid)) return false;
 
+        if (this.count == 0) onItemHeld(item);
         this.item = item;
         this.count += amount;
         return true;
@@ -320,6 +329,13 @@ public class CSingleInventory extends Component implements IStorage {
         return null;
     }
 
+    @Override
+    public ItemType getSimilar(ItemType item, int minAmount) {
+        if (this.item != null && Item.base(item) == Item.base(this.item) && count >= minAmount)
+            return this.item;
+        return null;
+    }
+
     @Override
     public Amount[] get(ItemCategory cat) {
         if (this.item != null && this.item.categories.contains(cat))
@@ -327,6 +343,13 @@ public class CSingleInventory extends Component implements IStorage {
         return null;
     }
 
+    @Override
+    public ItemType getFirst(ItemCategory cat) {
+        if (this.item != null && this.item.categories.contains(cat))
+            return this.item;
+        return null;
+    }
+
     @Override
     public int getSum(ItemCategory cat) {
         if (this.item != null && this.item.categories.contains(cat))
@@ -307,6 +307,13 @@ public class CTank extends Component implements IStorage {
         return null;
     }
 
+    @Override
+    public ItemType getSimilar(ItemType item, int minAmount) {
+        if (fluid != null && Item.base(item) == Item.base(fluid) && count >= minAmount)
+            return fluid;
+        return null;
+    }
+
     @Override
     public Amount[] get(ItemCategory cat) {
         if (fluid != null && fluid.categories.contains(cat))
@@ -314,6 +321,13 @@ public class CTank extends Component implements IStorage {
         return null;
     }
 
+    @Override
+    public ItemType getFirst(ItemCategory cat) {
+        if (fluid != null && fluid.categories.contains(cat))
+            return fluid;
+        return null;
+    }
+
     @Override
     public boolean remove(ItemCategory category, int amount) {
         if (fluid != null && fluid.categories.contains(category)) {
@@ -42,8 +42,20 @@ public interface IStorage {
 
     Amount[] getSimilar(ItemType item);
 
+    /**
+     * Allocation free variant of {@link #getSimilar(ItemType)}
+     * @return the first item with the same base type and at least minAmount stored, or null
+     */
+    ItemType getSimilar(ItemType item, int minAmount);
+
     Amount[] get(ItemCategory cat);
 
+    /**
+     * Allocation free variant of {@link #get(ItemCategory)}
+     * @return the first stored item of that category, or null
+     */
+    ItemType getFirst(ItemCategory cat);
+
     boolean add(ItemType item, int amount);
 
     int addWithRest(ItemType item, int amount);
@@ -21,7 +21,6 @@ import com.badlogic.gdx.graphics.g2d.TextureRegion;
 import com.badlogic.gdx.graphics.glutils.ShapeRenderer;
 import com.badlogic.gdx.graphics.glutils.ShapeRenderer.ShapeType;
 import com.badlogic.gdx.math.MathUtils;
-import com.badlogic.gdx.utils.Pools;
 
 import de.dakror.common.libgdx.PlatformInterface;
 import de.dakror.common.libgdx.io.NBT.Builder;
@@ -45,6 +44,7 @@ import de.dakror.quarry.structure.base.ITube;
 import de.dakror.quarry.structure.base.Schema;
 import de.dakror.quarry.structure.base.Schema.Flags;
 import de.dakror.quarry.structure.base.Structure;
+import de.dakror.quarry.structure.base.StructureCodec;
 import de.dakror.quarry.structure.base.StructureType;
 import de.dakror.quarry.structure.logistics.Conveyor.ConveyorSchema;
 import de.dakror.quarry.util.Bounds;
@@ -110,6 +110,8 @@ public class Conveyor extends Structure<ConveyorSchema> implements IRotatable, I
     // 0 from, 1 side1, 2 side2, 3 to
     int[] structs;
 
+    ConveyorSegment segment;
+
     public Conveyor(int x, int y) {
         super(x, y, classSchema);
         dir = Direction.East;
@@ -158,25 +160,16 @@ public class Conveyor extends Structure<ConveyorSchema> implements IRotatable, I
                 Conveyor c = (Conveyor) s;
 
                 synchronized (itemLock) {
-                    synchronized (c.itemLock) {
-                        if (c.isItemSlotFree(e.slot + deltaSlot)) {
-                            items[e.slot] = null;
-                            c.items[e.slot + deltaSlot] = e;
-                            e.lastSlot = e.slot;
-                            e.slot += deltaSlot;
-                            e.x = c.x;
-                            e.y = c.y;
-                            itemCount--;
-                            c.itemCount++;
-
-                            itemChanges = true;
-                            c.itemChanges = true;
-                            notifyNeighbors(chain);
+                    int slot = e.slot;
+                    if (c.insertItem(e, slot + deltaSlot)) {
+                        items[slot] = null;
+                        itemCount--;
+                        itemChanges = true;
+                        notifyNeighbors(chain);
 
-                            return true;
-                        } else {
-                            return false;
-                        }
+                        return true;
+                    } else {
+                        return false;
                     }
                 }
             } else {
@@ -185,7 +178,44 @@ public class Conveyor extends Structure<ConveyorSchema> implements IRotatable, I
         }
     }
 
+    /**
+     * Puts an item coming from a neighbor into the given slot if it's free
+     */
+    boolean insertItem(ItemEntity e, int slot) {
+        if (segment != null && !segment.canInsert(this, slot)) segment.dissolve();
+        if (segment != null) {
+            if (!segment.insert(e)) return false;
+            e.lastSlot = e.slot;
+            e.slot = slot;
+            e.x = x;
+            e.y = y;
+            return true;
+        }
+
+        synchronized (itemLock) {
+            if (isItemSlotFree(slot)) {
+                items[slot] = e;
+                e.lastSlot = e.slot;
+                e.slot = slot;
+                e.x = x;
+                e.y = y;
+                itemCount++;
+                itemChanges = true;
+
+                return true;
+            } else {
+                return false;
+            }
+        }
+    }
+
+    public ConveyorSegment getSegment() {
+        return segment;
+    }
+
     public boolean isItemSlotFree(int slot) {
+        if (segment != null) return segment.isSlotFree(this, slot);
+
         if (slot == Const.ITEMS_PER_CONVEYOR / 2 || slot == Const.ITEMS_PER_CONVEYOR + Const.ITEMS_PER_CONVEYOR / 2) {
             return items[Const.ITEMS_PER_CONVEYOR / 2] == null && items[Const.ITEMS_PER_CONVEYOR + Const.ITEMS_PER_CONVEYOR / 2] == null;
         } else {
@@ -202,6 +232,7 @@ public class Conveyor extends Structure<ConveyorSchema> implements IRotatable, I
         this.touches = dirtyBounds.touches(this);
 
         if (touches || layer == null) {
+            if (segment != null) segment.dissolve();
             updateStructures();
         }
     }
@@ -239,6 +270,11 @@ public class Conveyor extends Structure<ConveyorSchema> implements IRotatable, I
     }
 
     public void updateItems(double deltaTime, int gameSpeed, boolean touch, boolean chain) {
+        if (segment != null) {
+            segment.update(this, deltaTime, gameSpeed);
+            return;
+        }
+
         if (!itemChanges && !touch && !notification) {
             return;
         }
@@ -256,7 +292,7 @@ public class Conveyor extends Structure<ConveyorSchema> implements IRotatable, I
                     System.out.println("Deleting nonsense item");
                     items[i] = null;
                     itemChanges = true;
-                    Pools.free(e);
+                    ItemEntity.free(e);
                     continue;
                 }
                 if (e.dir == null && !notification && !touch) {
@@ -336,7 +372,7 @@ public class Conveyor extends Structure<ConveyorSchema> implements IRotatable, I
                             //                            System.out.println(x + ":" + y + "-" + i + " " + "consume " + e.x + ":" + e.y + "-" + e.slot + ": " + e.item);
 
                             items[e.slot] = null;
-                            Pools.free(e);
+                            ItemEntity.free(e);
                             itemCount--;
                             itemChanges = true;
                             notifyNeighbors(chain);
@@ -358,13 +394,14 @@ public class Conveyor extends Structure<ConveyorSchema> implements IRotatable, I
     @Override
     public void onDestroy() {
         super.onDestroy();
+        if (segment != null) segment.dissolve();
         if (itemCount > 0) {
             for (ItemEntity e : items) {
                 if (e != null && e.src != null) {
                     if (!e.src.isDestroyed())
                         e.src.putBack(e.item, 1);
                     items[e.slot] = null;
-                    Pools.free(e);
+                    ItemEntity.free(e);
                 }
             }
         }
@@ -443,7 +480,9 @@ public class Conveyor extends Structure<ConveyorSchema> implements IRotatable, I
             spriter.add(caret, (x + 0.5f) * Const.TILE_SIZE - 6, (y + 0.5f) * Const.TILE_SIZE - 2.5f, Const.Z_STATES, 6, 2.5f, 12, 5, 1, 1, dir.rot + 90);
         }
 
-        if (itemCount > 0)
+        if (segment != null)
+            segment.drawItems(spriter);
+        else if (itemCount > 0)
             drawItems(spriter);
 
         if (Game.DRAW_DEBUG) {
@@ -675,6 +714,8 @@ public class Conveyor extends Structure<ConveyorSchema> implements IRotatable, I
     }
 
     public int getItemCount() {
+        ConveyorSegment segment = this.segment;
+        if (segment != null) return segment.getItemCount(this);
         return itemCount;
     }
 
@@ -683,18 +724,22 @@ public class Conveyor extends Structure<ConveyorSchema> implements IRotatable, I
     }
 
     public boolean addItemEntity(ItemType value, int lastSlot, int slot, Direction dir, Structure<?> src) {
+        if (segment != null && !segment.canInsert(this, slot)) segment.dissolve();
+        if (segment != null) {
+            ItemEntity e = obtainItemEntity(value, lastSlot, slot, dir, src);
+            if (!segment.insert(e)) {
+                ItemEntity.free(e);
+                return false;
+            }
+
+            Game.G.addSeenResource(value);
+            return true;
+        }
+
         synchronized (itemLock) {
             if (items[slot] != null) return false;
 
-            ItemEntity e = Pools.obtain(ItemEntity.class);
-            e.item = value;
-            e.x = x;
-            e.y = y;
-            e.z = getItemZ(value, dir);
-            e.dir = dir;
-            e.src = src;
-            e.lastSlot = lastSlot;
-            e.slot = slot;
+            ItemEntity e = obtainItemEntity(value, lastSlot, slot, dir, src);
 
             Game.G.addSeenResource(value);
             items[slot] = e;
@@ -706,6 +751,19 @@ public class Conveyor extends Structure<ConveyorSchema> implements IRotatable, I
         }
     }
 
+    private ItemEntity obtainItemEntity(ItemType value, int lastSlot, int slot, Direction dir, Structure<?> src) {
+        ItemEntity e = ItemEntity.obtain();
+        e.item = value;
+        e.x = x;
+        e.y = y;
+        e.z = getItemZ(value, dir);
+        e.dir = dir;
+        e.src = src;
+        e.lastSlot = lastSlot;
+        e.slot = slot;
+        return e;
+    }
+
     public float getItemZ(ItemType type, Direction direction) {
         return Const.Z_ITEMS;
     }
@@ -741,10 +799,13 @@ public class Conveyor extends Structure<ConveyorSchema> implements IRotatable, I
         b.IntArray("structs", str);
 
         b.List("Items", TagType.Compound);
-        synchronized (itemLock) {
-            for (ItemEntity e : items)
-                if (e != null)
-                    e.save(b);
+        ConveyorSegment segment = this.segment;
+        if (segment == null || !segment.save(this, b)) {
+            synchronized (itemLock) {
+                for (ItemEntity e : items)
+                    if (e != null)
+                        e.save(b);
+            }
         }
         b.End();
     }
@@ -784,7 +845,7 @@ public class Conveyor extends Structure<ConveyorSchema> implements IRotatable, I
 
         for (Tag t : tag.List("Items", TagType.Compound).data) {
             try {
-                ItemEntity e = Pools.obtain(ItemEntity.class);
+                ItemEntity e = ItemEntity.obtain();
                 e.load((CompoundTag) t);
                 items[e.slot] = e;
                 itemChanges = true;
@@ -794,4 +855,54 @@ public class Conveyor extends Structure<ConveyorSchema> implements IRotatable, I
             }
         }
     }
+
+    @Override
+    protected boolean isPacked() {
+        return true;
+    }
+
+    @Override
+    protected void encode(StructureCodec.Writer w) {
+        super.encode(w);
+        w.putByte(dir.ordinal());
+        for (int i = 0; i < 4; i++)
+            w.putInt(structures[i] == null ? -1 : structures[i].x * layer.height + structures[i].y);
+
+        // the number of items is only known once they are written
+        int countPos = w.position();
+        w.putShort(0);
+
+        ConveyorSegment segment = this.segment;
+        int n = segment == null ? -1 : segment.encode(this, w);
+        if (n < 0) {
+            n = 0;
+            synchronized (itemLock) {
+                for (ItemEntity e : items) {
+                    if (e != null) {
+                        e.encode(w);
+                        n++;
+                    }
+                }
+            }
+        }
+        w.putShort(countPos, n);
+    }
+
+    @Override
+    protected void decode(StructureCodec.Reader r) throws NBTException {
+        super.decode(r);
+        dir = Direction.values[r.getByte()];
+        structs = new int[4];
+        for (int i = 0; i < 4; i++)
+            structs[i] = r.getInt();
+
+        int n = r.getShort();
+        for (int i = 0; i < n; i++) {
+            ItemEntity e = ItemEntity.obtain();
+            e.decode(r);
+            items[e.slot] = e;
+            itemChanges = true;
+            itemCount++;
+        }
+    }
 }
@@ -33,6 +33,7 @@ import de.dakror.quarry.structure.base.IFlippable;
 import de.dakror.quarry.structure.base.IItemZModifier;
 import de.dakror.quarry.structure.base.Schema.Flags;
 import de.dakror.quarry.structure.base.Structure;
+import de.dakror.quarry.structure.base.StructureCodec;
 import de.dakror.quarry.structure.base.StructureType;
 
 /**
@@ -187,6 +188,18 @@ public class ConveyorBridge extends Conveyor implements IItemZModifier, IFlippab
         dir2Prev = tag.Byte("prev", (byte) 1) == 1;
     }
 
+    @Override
+    protected void encode(StructureCodec.Writer w) {
+        super.encode(w);
+        w.putByte(dir2Prev ? 1 : 0);
+    }
+
+    @Override
+    protected void decode(StructureCodec.Reader r) throws NBTException {
+        super.decode(r);
+        dir2Prev = r.getByte() == 1;
+    }
+
     @Override
     protected void copyData(int[] copyRegion, Builder b) {
         super.copyData(copyRegion, b);
@@ -0,0 +1,486 @@
+/*******************************************************************************
+ * Copyright 2019 Maximilian Stark | Dakror <mail@dakror.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package de.dakror.quarry.structure.logistics;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.utils.Array;
+
+import de.dakror.common.libgdx.io.NBT.Builder;
+import de.dakror.common.libgdx.render.SpriteRenderer;
+import de.dakror.quarry.Const;
+import de.dakror.quarry.game.ItemEntity;
+import de.dakror.quarry.structure.base.Direction;
+import de.dakror.quarry.structure.base.Structure;
+import de.dakror.quarry.structure.base.StructureCodec;
+
+/**
+ * A straight run of plain {@link Conveyor}s within one chunk whose items are moved as a single lane.
+ * Items are kept front to back together with the free space in front of each of them, so advancing the whole run only
+ * has to close the first gap that is still open. Slots are only worked out again for drawing, saving and when the
+ * segment is dissolved back into its conveyors, which happens as soon as anything next to it changes.
+ *
+ * @author Maximilian Stark | Dakror
+ */
+public class ConveyorSegment {
+    public static final int MIN_LENGTH = 4;
+
+    static final int N = Const.ITEMS_PER_CONVEYOR;
+    static final double EPSILON = 0.000001;
+
+    final Conveyor[] members;
+    final Direction dir;
+
+    // lane positions go from 0 at the start of the first conveyor to end at the end of the last one.
+    // an item at position v is drawn there and occupies the slot ceil(v)
+    final int end;
+
+    // ring buffers, index first is the item closest to the end
+    final ItemEntity[] items;
+    final double[] gaps;
+    int first, count;
+    double gapSum;
+
+    // number of leading items pushed up against the end
+    int compressed;
+
+    boolean dissolved;
+    long drawnFrame = -1;
+
+    ConveyorSegment(Conveyor[] members) {
+        this.members = members;
+        dir = members[0].dir;
+        end = members.length * N - 1;
+
+        items = new ItemEntity[end + 1];
+        gaps = new double[end + 1];
+
+        double last = 0;
+        for (int i = members.length - 1; i >= 0; i--) {
+            Conveyor c = members[i];
+            synchronized (c.itemLock) {
+                for (int p = N - 1; p >= 0; p--) {
+                    int slot = laneSlot(p);
+                    ItemEntity e = c.items[slot];
+                    if (e == null) continue;
+
+                    double v = i * N + p - 1 + MathUtils.clamp(e.interp, EPSILON, 1);
+                    if (count > 0) v = Math.min(v, last - 1);
+
+                    int index = (first + count) % items.length;
+                    items[index] = e;
+                    gaps[index] = count == 0 ? end - v : last - 1 - v;
+                    gapSum += gaps[index];
+                    count++;
+                    last = v;
+
+                    e.dir = dir;
+                    c.items[slot] = null;
+                }
+                c.itemCount = 0;
+                c.segment = this;
+            }
+        }
+
+        while (compressed < count && gaps[(first + compressed) % items.length] <= EPSILON)
+            compressed++;
+    }
+
+    /**
+     * Fuses all straight runs of at least {@link #MIN_LENGTH} plain conveyors inside the given chunk area that are not
+     * part of a segment yet
+     */
+    public static void build(Array<Conveyor> conveyors, int ax, int ay) {
+        Array<Conveyor> run = null;
+
+        for (int i = 0; i < conveyors.size; i++) {
+            Conveyor c = conveyors.items[i];
+            if (!isEligible(c, ax, ay) || !isStart(c, ax, ay)) continue;
+
+            if (run == null) run = new Array<>(Conveyor.class);
+            else run.clear();
+
+            run.add(c);
+            Conveyor cur = c;
+            while (run.size < Const.CHUNK_SIZE) {
+                if (!(cur.structures[3] instanceof Conveyor)) break;
+                Conveyor next = (Conveyor) cur.structures[3];
+                if (next == c || !isLinked(cur, next) || !isEligible(next, ax, ay)) break;
+
+                run.add(next);
+                cur = next;
+            }
+
+            if (run.size >= MIN_LENGTH) {
+                new ConveyorSegment(run.toArray());
+            }
+        }
+    }
+
+    static boolean isEligible(Conveyor c, int ax, int ay) {
+        if (c.getClass() != Conveyor.class || c.segment != null || c.layer == null || c.isDestroyed()
+                || c.structures[1] != null || c.structures[2] != null
+                || c.x < ax || c.y < ay || c.x >= ax + Const.CHUNK_SIZE || c.y >= ay + Const.CHUNK_SIZE)
+            return false;
+
+        synchronized (c.itemLock) {
+            for (int i = 0; i < c.items.length; i++) {
+                ItemEntity e = c.items[i];
+                if (e != null && ((e.dir != null && e.dir != c.dir) || lanePosition(c.dir, i) == -1))
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    static boolean isStart(Conveyor c, int ax, int ay) {
+        if (!(c.structures[0] instanceof Conveyor)) return true;
+        Conveyor prev = (Conveyor) c.structures[0];
+        return !isLinked(prev, c) || !isEligible(prev, ax, ay);
+    }
+
+    static boolean isLinked(Conveyor a, Conveyor b) {
+        return a.structures[3] == b && b.structures[0] == a && a.dir == b.dir;
+    }
+
+    static int laneSlot(Direction dir, int p) {
+        switch (dir) {
+            case North:
+                return p;
+            case South:
+                return N - 1 - p;
+            case East:
+                return N + p;
+            default:
+                return 2 * N - 1 - p;
+        }
+    }
+
+    static int lanePosition(Direction dir, int slot) {
+        for (int p = 0; p < N; p++)
+            if (laneSlot(dir, p) == slot) return p;
+        return -1;
+    }
+
+    int laneSlot(int p) {
+        return laneSlot(dir, p);
+    }
+
+    public Conveyor getTail() {
+        return members[0];
+    }
+
+    public Conveyor getHead() {
+        return members[members.length - 1];
+    }
+
+    /**
+     * Takes the place of {@link Conveyor#updateItems(double, int, boolean, boolean)} for all members.
+     * Only the tail moves the items, the head retries handing over the front item when notified by its neighbor.
+     */
+    public void update(Conveyor member, double deltaTime, int gameSpeed) {
+        if (member != members[0] && (member != getHead() || deltaTime > 0)) return;
+
+        boolean handedOver = false;
+        synchronized (this) {
+            if (dissolved) return;
+
+            if (member == members[0]) advance(deltaTime * Const.ITEM_SPEED * gameSpeed);
+
+            if (count > 0 && gaps[first] <= EPSILON)
+                handedOver = handOver();
+        }
+
+        if (handedOver) members[0].notifyNeighbors(true);
+    }
+
+    private void advance(double a) {
+        for (int k = compressed; k < count && a > 0; k++) {
+            int i = (first + k) % items.length;
+            if (gaps[i] > a) {
+                gaps[i] -= a;
+                gapSum -= a;
+                return;
+            }
+
+            a -= gaps[i];
+            gapSum -= gaps[i];
+            gaps[i] = 0;
+            compressed = k + 1;
+        }
+    }
+
+    private boolean handOver() {
+        ItemEntity e = items[first];
+        place(e, end);
+
+        Structure<?> s = getHead().getStructureInDirection(dir);
+        if (s instanceof Conveyor) {
+            Conveyor c = (Conveyor) s;
+            if (!c.insertItem(e, laneSlot(0))) return false;
+
+            e.dir = c.getNextDirection(e.item, dir, e.z, e.slot);
+            e.z = c.getItemZ(e.item, e.dir);
+        } else if (s != null && s.canAccept(e.item, e.x, e.y, dir) && s.acceptItem(e.item, e.src, dir)) {
+            ItemEntity.free(e);
+        } else {
+            return false;
+        }
+
+        double gap = gaps[first];
+        items[first] = null;
+        first = (first + 1) % items.length;
+        count--;
+
+        if (count == 0) {
+            first = 0;
+            gapSum = 0;
+        } else {
+            gaps[first] += gap + 1;
+            gapSum += 1;
+        }
+        compressed = 0;
+
+        return true;
+    }
+
+    boolean canInsert(Conveyor member, int slot) {
+        return member == members[0] && slot == laneSlot(0);
+    }
+
+    /**
+     * Appends an item at the start of the tail, if there is room
+     */
+    synchronized boolean insert(ItemEntity e) {
+        if (dissolved || count == items.length) return false;
+
+        // the last item has to have left slot 0
+        double gap = count == 0 ? end + 1 : end - gapSum - (count - 1);
+        if (gap <= EPSILON) return false;
+
+        int i = (first + count) % items.length;
+        items[i] = e;
+        gaps[i] = gap;
+        gapSum += gap;
+        count++;
+
+        e.dir = dir;
+        e.z = Const.Z_ITEMS;
+        return true;
+    }
+
+    synchronized boolean isSlotFree(Conveyor member, int slot) {
+        if (dissolved) return true;
+
+        int p = lanePosition(dir, slot);
+        if (p == -1) {
+            // only the middle is shared with the other lane
+            if (slot != N / 2 && slot != N + N / 2) return true;
+            p = N / 2;
+        }
+
+        int s = indexOf(member) * N + p;
+
+        if (s == 0) {
+            return count == 0 || end - gapSum - (count - 1) > EPSILON;
+        }
+
+        double v = end;
+        for (int k = 0; k < count; k++) {
+            v -= gaps[(first + k) % items.length];
+            if (occupiedSlot(v) == s) return false;
+            v -= 1;
+        }
+        return true;
+    }
+
+    synchronized int getItemCount(Conveyor member) {
+        int min = indexOf(member) * N;
+        int sum = 0;
+
+        double v = end;
+        for (int k = 0; k < count; k++) {
+            v -= gaps[(first + k) % items.length];
+            int s = occupiedSlot(v);
+            if (s >= min && s < min + N) sum++;
+            v -= 1;
+        }
+        return sum;
+    }
+
+    int indexOf(Conveyor member) {
+        for (int i = 0; i < members.length; i++)
+            if (members[i] == member) return i;
+        return -1;
+    }
+
+    static int occupiedSlot(double v) {
+        return Math.max(0, (int) Math.ceil(v - EPSILON));
+    }
+
+    /**
+     * Writes the conveyor relative state of an item at lane position v into it
+     */
+    void place(ItemEntity e, double v) {
+        int s = Math.min(end, occupiedSlot(v));
+        int p = s % N;
+        Conveyor c = members[s / N];
+
+        e.x = c.x;
+        e.y = c.y;
+        e.slot = laneSlot(p);
+        e.lastSlot = laneSlot(p > 0 ? p - 1 : N - 1);
+        e.interp = MathUtils.clamp(v - (s - 1), 0, 1);
+    }
+
+    /**
+     * Hands all items back to the conveyors they are on
+     */
+    public void dissolve() {
+        synchronized (this) {
+            if (dissolved) return;
+            dissolved = true;
+
+            double v = end;
+            for (int k = 0; k < count; k++) {
+                int i = (first + k) % items.length;
+                v -= gaps[i];
+
+                ItemEntity e = items[i];
+                place(e, v);
+                e.dir = dir;
+                e.z = Const.Z_ITEMS;
+
+                Conveyor c = members[Math.min(end, occupiedSlot(v)) / N];
+                synchronized (c.itemLock) {
+                    c.items[e.slot] = e;
+                    c.itemCount++;
+                    c.itemChanges = true;
+                }
+
+                items[i] = null;
+                v -= 1;
+            }
+            count = 0;
+
+            for (Conveyor c : members)
+                c.segment = null;
+        }
+    }
+
+    /**
+     * @return false if the segment has been dissolved in the meantime and the member has to save its own items
+     */
+    synchronized boolean save(Conveyor member, Builder b) {
+        if (dissolved) return false;
+
+        int min = indexOf(member) * N;
+
+        double v = end;
+        for (int k = 0; k < count; k++) {
+            int i = (first + k) % items.length;
+            v -= gaps[i];
+
+            int s = Math.min(end, occupiedSlot(v));
+            if (s >= min && s < min + N) {
+                place(items[i], v);
+                items[i].save(b);
+            }
+            v -= 1;
+        }
+        return true;
+    }
+
+    /**
+     * Positional counterpart of {@link #save(Conveyor, Builder)}
+     *
+     * @return the number of items written, or -1 if the segment has been dissolved in the meantime
+     */
+    synchronized int encode(Conveyor member, StructureCodec.Writer w) {
+        if (dissolved) return -1;
+
+        int min = indexOf(member) * N;
+        int written = 0;
+
+        double v = end;
+        for (int k = 0; k < count; k++) {
+            int i = (first + k) % items.length;
+            v -= gaps[i];
+
+            int s = Math.min(end, occupiedSlot(v));
+            if (s >= min && s < min + N) {
+                place(items[i], v);
+                items[i].encode(w);
+                written++;
+            }
+            v -= 1;
+        }
+        return written;
+    }
+
+    /**
+     * Draws all items of the segment once per frame, whichever member gets drawn first
+     */
+    public void drawItems(SpriteRenderer spriter) {
+        long frame = Gdx.graphics.getFrameId();
+
+        synchronized (this) {
+            if (drawnFrame == frame) return;
+            drawnFrame = frame;
+
+            Conveyor tail = members[0];
+            float off = (24 - Conveyor.k) / 2;
+
+            double v = end;
+            for (int k = 0; k < count; k++) {
+                int i = (first + k) % items.length;
+                v -= gaps[i];
+
+                ItemEntity e = items[i];
+                float ix, iy;
+                switch (dir) {
+                    case North:
+                        ix = (tail.x + 0.5f) * Const.TILE_SIZE - 12;
+                        iy = tail.y * Const.TILE_SIZE + (float) v * Conveyor.k - off;
+                        break;
+                    case South:
+                        ix = (tail.x + 0.5f) * Const.TILE_SIZE - 12;
+                        iy = tail.y * Const.TILE_SIZE + (float) (N - 1 - v) * Conveyor.k - off;
+                        break;
+                    case East:
+                        ix = tail.x * Const.TILE_SIZE + (float) v * Conveyor.k - off;
+                        iy = (tail.y + 0.5f) * Const.TILE_SIZE - 12;
+                        break;
+                    default:
+                        ix = tail.x * Const.TILE_SIZE + (float) (N - 1 - v) * Conveyor.k - off;
+                        iy = (tail.y + 0.5f) * Const.TILE_SIZE - 12;
+                        break;
+                }
+
+                float newZ = e.z + ix / (tail.layer.width * Const.TILE_SIZE) - iy / (tail.layer.height * Const.TILE_SIZE);
+
+                if (e.item.stackable != null) {
+                    spriter.add(e.item.stackable.icon, ix + 5, iy + 5, newZ, 14, 14);
+                }
+
+                spriter.add(e.item.icon, ix, iy, newZ, 24, 24);
+
+                v -= 1;
+            }
+        }
+    }
+}
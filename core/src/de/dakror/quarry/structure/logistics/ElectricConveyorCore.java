@@ -44,6 +44,7 @@ import de.dakror.quarry.structure.base.Dock.DockType;
 import de.dakror.quarry.structure.base.ProducerStructure;
 import de.dakror.quarry.structure.base.Schema.Flags;
 import de.dakror.quarry.structure.base.Structure;
+import de.dakror.quarry.structure.base.StructureCodec;
 import de.dakror.quarry.structure.base.StructureType;
 import de.dakror.quarry.structure.power.Substation;
 import de.dakror.quarry.util.Bounds;
@@ -103,7 +104,7 @@ public class ElectricConveyorCore extends Conveyor {
     private void resetAdjacentConveyors() {
         for (ElectricConveyor p : connectedConveyors) {
             p.core = null;
-            layer.dirtyBounds.add(p, de.dakror.quarry.util.Bounds.Flags.CONVEYOR);
+            layer.addDirty(p, de.dakror.quarry.util.Bounds.Flags.CONVEYOR);
         }
         connectedConveyors.clear();
     }
@@ -334,4 +335,22 @@ public class ElectricConveyorCore extends Conveyor {
         powerLevel = tag.Double("power");
     }
 
+    @Override
+    protected void encode(StructureCodec.Writer w) {
+        super.encode(w);
+        w.putShort(connectedConveyors.size);
+        for (int i = 0; i < connectedConveyors.size; i++)
+            w.putInt(connectedConveyors.get(i).x * layer.height + connectedConveyors.get(i).y);
+        w.putDouble(powerLevel);
+    }
+
+    @Override
+    protected void decode(StructureCodec.Reader r) throws NBTException {
+        super.decode(r);
+        conveyorsIndex = new int[r.getShort()];
+        for (int i = 0; i < conveyorsIndex.length; i++)
+            conveyorsIndex[i] = r.getInt();
+        powerLevel = r.getDouble();
+    }
+
 }
@@ -43,6 +43,7 @@ import de.dakror.quarry.structure.base.FluidTubeStructure;
 import de.dakror.quarry.structure.base.IRotatable;
 import de.dakror.quarry.structure.base.Schema.Flags;
 import de.dakror.quarry.structure.base.Structure;
+import de.dakror.quarry.structure.base.StructureCodec;
 import de.dakror.quarry.structure.base.StructureType;
 
 /**
@@ -213,6 +214,20 @@ public class Valve extends FluidTubeStructure implements IRotatable {
                 .Byte("flow", (byte) flowDir.ordinal());
     }
 
+    @Override
+    protected void encode(StructureCodec.Writer w) {
+        super.encode(w);
+        w.putByte(dir.ordinal());
+        w.putByte(flowDir.ordinal());
+    }
+
+    @Override
+    protected void decode(StructureCodec.Reader r) throws NBTException {
+        super.decode(r);
+        dir = Direction.values[r.getByte()];
+        flowDir = Direction.values[r.getByte()];
+    }
+
     @Override
     protected void copyData(int[] copyRegion, Builder b) {
         super.copyData(copyRegion, b);
@@ -40,6 +40,7 @@ import de.dakror.quarry.structure.base.Dock.DockType;
 import de.dakror.quarry.structure.base.Schema;
 import de.dakror.quarry.structure.base.Schema.Flags;
 import de.dakror.quarry.structure.base.Structure;
+import de.dakror.quarry.structure.base.StructureCodec;
 import de.dakror.quarry.structure.base.StructureType;
 import de.dakror.quarry.util.Bounds;
 import de.dakror.quarry.util.CopyRegionHelper;
@@ -491,4 +492,30 @@ public class CopperCable extends Structure<Schema> {
             if (b != ConnectionType.No) directions++;
         }
     }
+
+    @Override
+    protected boolean isPacked() {
+        return true;
+    }
+
+    @Override
+    protected void encode(StructureCodec.Writer w) {
+        super.encode(w);
+        for (int i = 0; i < 4; i++) {
+            w.putByte(dirs[i].value);
+            w.putInt(structures[i] == null ? -1 : structures[i].x * layer.height + structures[i].y);
+        }
+    }
+
+    @Override
+    protected void decode(StructureCodec.Reader r) throws NBTException {
+        super.decode(r);
+        structs = new int[4];
+        directions = 0;
+        for (int i = 0; i < 4; i++) {
+            dirs[i] = Dock.connectionTypes[r.getByte()];
+            structs[i] = r.getInt();
+            if (dirs[i] != ConnectionType.No) directions++;
+        }
+    }
 }
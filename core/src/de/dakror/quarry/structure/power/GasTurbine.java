@@ -297,6 +297,12 @@ public class GasTurbine extends GeneratorStructure {
         return true;
     }
 
+    @Override
+    protected boolean isWaitingForInputs() {
+        // levels share their inputs and react to dirty bounds flags
+        return false;
+    }
+
     @Override
     protected void pickRandomActiveRecipe() {
         if (!isLevel0) {
@@ -362,6 +368,7 @@ public class GasTurbine extends GeneratorStructure {
     @Override
     protected void setRecipe(int index) {
         setItemNotifications();
+        wake();
         activeRecipeIndex = index;
         if (index > -1) {
             // use instanced recipes
@@ -430,7 +437,7 @@ public class GasTurbine extends GeneratorStructure {
     @Override
     public void setSleeping(boolean sleeping) {
         super.setSleeping(sleeping);
-        layer.dirtyBounds.add(this, 0);
+        layer.addDirty(this, 0);
     }
 
     private Structure<?> getStructureAt(int x, int y) {
@@ -217,6 +217,12 @@ public class PowerPole extends Structure<Schema> {
         updateConnections();
     }
 
+    @Override
+    public boolean isFrameCullable() {
+        // wires reach over to the connected poles
+        return false;
+    }
+
     @Override
     public void drawFrame(SpriteRenderer spriter, ShapeRenderer shaper, SpriterDelegateBatch pfxBatch) {
         super.drawFrame(spriter, shaper, pfxBatch);
@@ -88,7 +88,7 @@ public class SolarPanelOutlet extends Structure<Schema> {
         tmp.clear();
         for (SolarPanel p : connectedPanels) {
             p.outlet = null;
-            layer.dirtyBounds.add(p, 0);
+            layer.addDirty(p, 0);
         }
         connectedPanels.clear();
     }
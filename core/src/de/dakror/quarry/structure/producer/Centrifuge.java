@@ -137,7 +137,8 @@ public class Centrifuge extends ProducerStructure {
             if (!tooLittleLubricant) {
                 lubricantTank.removeWithRest(ItemType.Lubricant, (int) Math.round(activeRecipe.getInput().entries[1].getAmount() * gameSpeed * deltaTime));
 
-                Game.G.ui.updateStructureUIInventory();
+                if (isClicked())
+                    Game.G.ui.updateStructureUIInventory();
             }
         }
     }
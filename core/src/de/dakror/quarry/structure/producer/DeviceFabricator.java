@@ -70,7 +70,7 @@ public class DeviceFabricator extends ProducerStructure {
     protected void doProductionStep() {
         super.doProductionStep();
 
-        if (!Game.G.isInfinite()) {
+        if (!Game.G.isInfinite() && Game.G.ui != null) {
             Game.G.ui.endOfGame.show();
         }
     }
@@ -16,6 +16,7 @@
 
 package de.dakror.quarry.structure.producer;
 
+import java.util.Random;
 import java.util.TreeSet;
 
 import de.dakror.common.libgdx.io.NBT.Builder;
@@ -114,8 +115,9 @@ public class Mine extends ProducerStructure {
 
     @Override
     protected void pickRandomActiveRecipe() {
-        int x = (int) (Math.random() * 2);
-        int y = (int) (Math.random() * 2);
+        Random random = getRandom();
+        int x = random.nextInt(2);
+        int y = random.nextInt(2);
 
         TileType t = layer.get(this.x + x, this.y + y);
 
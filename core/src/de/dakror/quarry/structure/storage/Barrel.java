@@ -190,6 +190,12 @@ public class Barrel extends StorageStructure {
         content.add(ui).grow();
     }
 
+    @Override
+    public void registerHoldings() {
+        CSingleInventory inv = (CSingleInventory) components[0];
+        if (inv.getItem() != null) onItemHeld(inv.getItem());
+    }
+
     @Override
     protected void onItemCountChanged(ItemType item) {
         updateUI();
@@ -19,7 +19,6 @@ package de.dakror.quarry.structure.storage;
 import java.util.Comparator;
 import java.util.EnumMap;
 import java.util.Map;
-import java.util.Map.Entry;
 
 import com.badlogic.gdx.graphics.g2d.TextureRegion;
 import com.badlogic.gdx.graphics.glutils.ShapeRenderer;
@@ -234,9 +233,12 @@ public class Storage extends StorageStructure {
         return false;
     }
 
-    public boolean hasItemType(ItemType item) {
-        CInventory inventory = ((CInventory) components[0]);
-        return inventory.get(item) > 0;
+    @Override
+    public void registerHoldings() {
+        CInventory inv = (CInventory) components[0];
+        for (int i = 0; i < inv.getTypeCount(); i++) {
+            onItemHeld(inv.getType(i));
+        }
     }
 
     protected void setUIAmount(final ItemType type, int amount) {
@@ -298,8 +300,9 @@ public class Storage extends StorageStructure {
     public void onDestroy() {
         super.onDestroy();
         // Muhahaha
-        for (Entry<ItemType, Integer> e : ((CInventory) components[0]).getAll()) {
-            Game.G.removeResources(e.getKey(), e.getValue(), false);
+        CInventory inv = (CInventory) components[0];
+        for (int i = 0; i < inv.getTypeCount(); i++) {
+            Game.G.removeResources(inv.getType(i), inv.getAmount(i), false);
         }
     }
 
@@ -410,8 +413,8 @@ public class Storage extends StorageStructure {
         for (Map.Entry<ItemType, Table> e : cells.entrySet()) {
             setUIAmount(e.getKey(), ((CInventory) components[0]).get(e.getKey()));
         }
-        for (Map.Entry<ItemType, Integer> e : ((CInventory) components[0]).getAll()) {
-            setUIAmount(e.getKey(), e.getValue());
+        for (int i = 0; i < inv.getTypeCount(); i++) {
+            setUIAmount(inv.getType(i), inv.getAmount(i));
         }
         for (ItemType i : outputs) {
             setUIAmount(i, ((CInventory) components[0]).get(i));
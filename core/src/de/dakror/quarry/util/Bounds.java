@@ -16,6 +16,8 @@
 
 package de.dakror.quarry.util;
 
+import com.badlogic.gdx.utils.Array;
+
 import de.dakror.quarry.structure.DistillationColumn;
 import de.dakror.quarry.structure.base.FluidTubeStructure;
 import de.dakror.quarry.structure.base.GeneratorStructure;
@@ -38,9 +40,19 @@ import de.dakror.quarry.structure.storage.Storage;
  * @author Maximilian Stark | Dakror
  */
 public class Bounds {
+    /**
+     * Past this many separate rectangles, new ones get merged into the closest existing one
+     */
+    public static final int MAX_RECTS = 16;
+
+    // union of all rects
     protected int x, y, width, height;
     protected int flags;
 
+    // x, y, width, height of every rect. Rects are kept apart, touching ones are merged
+    protected final int[] rects = new int[MAX_RECTS * 4];
+    protected int count;
+
     public static class Flags {
         public static final int CONVEYOR = 1 << 0;
         public static final int FLUIDTUBE = 1 << 1;
@@ -60,11 +72,38 @@ public class Bounds {
         width = 0;
         height = 0;
         flags = 0;
+        count = 0;
     }
 
     public void add(Structure<?> s, int flags) {
         this.flags |= flags;
+        addFlags(s);
+        addRect(s.x, s.y, s.getWidth(), s.getHeight());
+    }
+
+    /**
+     * Adds all structures as a single rect spanning them, instead of one per structure
+     */
+    public void add(Array<Structure<?>> structures, int flags) {
+        if (structures.size == 0) return;
+
+        this.flags |= flags;
+
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+        for (int i = 0; i < structures.size; i++) {
+            Structure<?> s = structures.get(i);
+            addFlags(s);
+            minX = Math.min(minX, s.x);
+            minY = Math.min(minY, s.y);
+            maxX = Math.max(maxX, s.x + s.getWidth());
+            maxY = Math.max(maxY, s.y + s.getHeight());
+        }
+
+        addRect(minX, minY, maxX - minX, maxY - minY);
+    }
 
+    private void addFlags(Structure<?> s) {
         if (s instanceof Conveyor)
             this.flags |= Flags.CONVEYOR;
         if (s instanceof FluidTubeStructure)
@@ -87,24 +126,6 @@ public class Bounds {
                 || s instanceof ItemLift || s instanceof ItemLiftBelow
                 || s instanceof TubeShaft || s instanceof TubeShaftBelow)
             this.flags |= Flags.SHAFT;
-
-        if (width == 0) {
-            x = s.x;
-            y = s.y;
-            width = s.getWidth();
-            height = s.getHeight();
-            return;
-        }
-        int minX = Math.min(x, s.x);
-        int maxX = Math.max(x + width, s.x + s.getWidth());
-        x = minX;
-        width = maxX - minX;
-
-        int minY = Math.min(y, s.y);
-        int maxY = Math.max(y + height, s.y + s.getHeight());
-        y = minY;
-        height = maxY - minY;
-
     }
 
     public void set(Bounds o) {
@@ -113,6 +134,8 @@ public class Bounds {
         width = o.width;
         height = o.height;
         flags = o.flags;
+        count = o.count;
+        System.arraycopy(o.rects, 0, rects, 0, count * 4);
     }
 
     public void set(int x, int y, int width, int height, int flags) {
@@ -121,14 +144,106 @@ public class Bounds {
         this.width = width;
         this.height = height;
         this.flags = flags;
+
+        if (width > 0) {
+            rects[0] = x;
+            rects[1] = y;
+            rects[2] = width;
+            rects[3] = height;
+            count = 1;
+        } else {
+            count = 0;
+        }
     }
 
     public void add(Bounds o) {
         flags |= o.flags;
-        width = Math.max(x + width, o.x + o.width) - Math.min(x, o.x);
-        height = Math.max(y + height, o.y + o.height) - Math.min(y, o.y);
-        x = Math.min(x, o.x);
-        y = Math.min(y, o.y);
+        for (int i = 0; i < o.count * 4; i += 4)
+            addRect(o.rects[i], o.rects[i + 1], o.rects[i + 2], o.rects[i + 3]);
+    }
+
+    protected void addRect(int x, int y, int width, int height) {
+        if (this.width == 0) {
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+        } else {
+            int maxX = Math.max(this.x + this.width, x + width);
+            int maxY = Math.max(this.y + this.height, y + height);
+            this.x = Math.min(this.x, x);
+            this.y = Math.min(this.y, y);
+            this.width = maxX - this.x;
+            this.height = maxY - this.y;
+        }
+
+        int i = -1;
+        for (int j = 0; j < count * 4; j += 4) {
+            if (touches(j, x, y, width, height)) {
+                i = j;
+                break;
+            }
+        }
+
+        if (i == -1) {
+            if (count < MAX_RECTS) {
+                i = count * 4;
+                rects[i] = x;
+                rects[i + 1] = y;
+                rects[i + 2] = width;
+                rects[i + 3] = height;
+                count++;
+                return;
+            }
+
+            // full, grow the rect that grows the least
+            long best = Long.MAX_VALUE;
+            for (int j = 0; j < count * 4; j += 4) {
+                long growth = (long) (Math.max(rects[j] + rects[j + 2], x + width) - Math.min(rects[j], x))
+                        * (Math.max(rects[j + 1] + rects[j + 3], y + height) - Math.min(rects[j + 1], y))
+                        - (long) rects[j + 2] * rects[j + 3];
+                if (growth < best) {
+                    best = growth;
+                    i = j;
+                }
+            }
+        }
+
+        grow(i, x, y, width, height);
+
+        // the grown rect may now touch others, absorb them until it's apart again
+        boolean merged;
+        do {
+            merged = false;
+            for (int j = 0; j < count * 4; j += 4) {
+                if (j != i && touches(j, rects[i], rects[i + 1], rects[i + 2], rects[i + 3])) {
+                    grow(i, rects[j], rects[j + 1], rects[j + 2], rects[j + 3]);
+
+                    // move the last rect into the gap
+                    int last = (count - 1) * 4;
+                    System.arraycopy(rects, last, rects, j, 4);
+                    if (i == last) i = j;
+                    count--;
+                    merged = true;
+                    break;
+                }
+            }
+        } while (merged);
+    }
+
+    private void grow(int i, int x, int y, int width, int height) {
+        int maxX = Math.max(rects[i] + rects[i + 2], x + width);
+        int maxY = Math.max(rects[i + 1] + rects[i + 3], y + height);
+        rects[i] = Math.min(rects[i], x);
+        rects[i + 1] = Math.min(rects[i + 1], y);
+        rects[i + 2] = maxX - rects[i];
+        rects[i + 3] = maxY - rects[i + 1];
+    }
+
+    private boolean touches(int i, int x, int y, int width, int height) {
+        // SAT
+        return (Math.max(rects[i] + rects[i + 2], x + width) - Math.min(rects[i], x)) - (rects[i + 2] + width) <= 0
+                && (Math.max(rects[i + 1] + rects[i + 3], y + height) - Math.min(rects[i + 1], y)) - (rects[i + 3] + height) <= 0;
     }
 
     public int getX() {
@@ -147,31 +262,46 @@ public class Bounds {
         return height;
     }
 
-    // TODO: make faster?
     public boolean touches(Structure<?> structure) {
-        if (width == 0) return false;
-
-        // SAT
-        return (Math.max(x + width, structure.x + structure.getWidth()) - Math.min(x, structure.x)) - (width + structure.getWidth()) <= 0
-                && (Math.max(y + height, structure.y + structure.getHeight()) - Math.min(y, structure.y)) - (height + structure.getHeight()) <= 0;
+        return touches(structure.x, structure.y, structure.getWidth(), structure.getHeight());
     }
 
-    // TODO: make faster?
     public boolean touches(int x, int y, int width, int height) {
         if (this.width == 0) return false;
 
-        // SAT
-        return (Math.max(this.x + this.width, x + width) - Math.min(this.x, x)) - (this.width + width) <= 0
-                && (Math.max(this.y + this.height, y + height) - Math.min(this.y, y)) - (this.height + height) <= 0;
+        // SAT against the union first, most checks are far off
+        if ((Math.max(this.x + this.width, x + width) - Math.min(this.x, x)) - (this.width + width) > 0
+                || (Math.max(this.y + this.height, y + height) - Math.min(this.y, y)) - (this.height + height) > 0)
+            return false;
+
+        for (int i = 0; i < count * 4; i += 4)
+            if (touches(i, x, y, width, height)) return true;
+
+        return false;
     }
 
     public boolean intersects(int x, int y, int width, int height) {
         if (this.width == 0) return false;
 
-        return !(x > this.x + this.width
+        if (x > this.x + this.width
                 || x + width < this.x
                 || y + height < this.y
-                || y > this.y + this.height);
+                || y > this.y + this.height)
+            return false;
+
+        for (int i = 0; i < count * 4; i += 4) {
+            if (!(x > rects[i] + rects[i + 2]
+                    || x + width < rects[i]
+                    || y + height < rects[i + 1]
+                    || y > rects[i + 1] + rects[i + 3]))
+                return true;
+        }
+
+        return false;
+    }
+
+    public int getRectCount() {
+        return count;
     }
 
     public boolean isEmpty() {
@@ -180,7 +310,7 @@ public class Bounds {
 
     @Override
     public String toString() {
-        return "[" + x + ":" + y + ", " + width + "x" + height + ", " + Integer.toBinaryString(flags) + "]";
+        return "[" + x + ":" + y + ", " + width + "x" + height + " in " + count + ", " + Integer.toBinaryString(flags) + "]";
     }
 
     public boolean hasFlag(int flags) {
@@ -1,28 +0,0 @@
-/*******************************************************************************
- * Copyright 2017 Maximilian Stark | Dakror <mail@dakror.de>
- *
- * Licensed under the Apache License, Version 2.0 (the "License");
- * you may not use this file except in compliance with the License.
- * You may obtain a copy of the License at
- *
- *   http://www.apache.org/licenses/LICENSE-2.0
- *
- * Unless required by applicable law or agreed to in writing, software
- * distributed under the License is distributed on an "AS IS" BASIS,
- * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
- * See the License for the specific language governing permissions and
- * limitations under the License.
- ******************************************************************************/
-
-package de.dakror.quarry.util;
-
-import com.badlogic.gdx.graphics.OrthographicCamera;
-import com.badlogic.gdx.graphics.g2d.Batch;
-import com.badlogic.gdx.utils.viewport.Viewport;
-
-/**
- * @author Maximilian Stark | Dakror
- */
-public interface FBOable {
-    void draw(OrthographicCamera cam, OrthographicCamera fboCam, Viewport viewport, Batch batch);
-}
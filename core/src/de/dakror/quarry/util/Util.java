@@ -19,6 +19,7 @@ package de.dakror.quarry.util;
 import java.math.BigInteger;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
 import java.util.Map;
 
 import com.badlogic.gdx.Gdx;
@@ -32,6 +33,7 @@ import de.dakror.common.libgdx.lml.CustomTag;
 import de.dakror.quarry.Quarry;
 import de.dakror.quarry.game.Item;
 import de.dakror.quarry.game.Item.ItemType;
+import de.dakror.quarry.structure.base.component.IStorage;
 
 /**
  * @author Maximilian Stark | Dakror
@@ -76,29 +78,38 @@ public class Util {
     }
 
     public static void NBTwriteInventory(Builder builder, Map<ItemType, Integer> map) {
-        short[] types = new short[map.size()];
+        ItemType[] types = new ItemType[map.size()];
         int[] amounts = new int[map.size()];
         int i = 0;
         for (Map.Entry<ItemType, Integer> r : map.entrySet()) {
-            types[i] = r.getKey().value;
+            types[i] = r.getKey();
             amounts[i] = r.getValue();
             i++;
         }
 
+        NBTwriteInventory(builder, types, amounts, i);
+    }
+
+    /**
+     * Writes the first <code>count</code> entries of the parallel arrays in the layout of
+     * {@link #NBTwriteInventory(Builder, Map)}
+     */
+    public static void NBTwriteInventory(Builder builder, ItemType[] types, int[] amounts, int count) {
+        short[] values = new short[count];
+        for (int i = 0; i < count; i++)
+            values[i] = types[i].value;
+
         builder
-                .ShortArray("Types", types)
-                .IntArray("Amounts", amounts);
+                .ShortArray("Types", values)
+                .IntArray("Amounts", Arrays.copyOf(amounts, count));
     }
 
     public static int NBTreadInventory(CompoundTag tag, Map<ItemType, Integer> map) throws NBTException {
+        map.clear();
         short[] types = tag.ShortArray("Types");
-        int[] amounts = tag.IntArray("Amounts");
-
-        if (types.length != amounts.length)
-            throw new IllegalStateException("Not the same amount of item types and amounts!");
+        int[] amounts = NBTreadAmounts(tag, types);
 
         int sum = 0;
-        map.clear();
         for (int i = 0; i < types.length; i++) {
             ItemType t = Item.get(types[i]);
             if (t != null) {
@@ -109,4 +120,32 @@ public class Util {
 
         return sum;
     }
+
+    /**
+     * Adds the items written by {@link #NBTwriteInventory(Builder, Map)} to the storage, without checking its size
+     */
+    public static int NBTreadInventory(CompoundTag tag, IStorage storage) throws NBTException {
+        short[] types = tag.ShortArray("Types");
+        int[] amounts = NBTreadAmounts(tag, types);
+
+        int sum = 0;
+        for (int i = 0; i < types.length; i++) {
+            ItemType t = Item.get(types[i]);
+            if (t != null) {
+                storage.addUnsafe(t, amounts[i]);
+                sum += amounts[i];
+            }
+        }
+
+        return sum;
+    }
+
+    static int[] NBTreadAmounts(CompoundTag tag, short[] types) throws NBTException {
+        int[] amounts = tag.IntArray("Amounts");
+
+        if (types.length != amounts.length)
+            throw new IllegalStateException("Not the same amount of item types and amounts!");
+
+        return amounts;
+    }
 }
@@ -0,0 +1,105 @@
+/*******************************************************************************
+ * Copyright 2019 Maximilian Stark | Dakror <mail@dakror.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package de.dakror.quarry.desktop;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import com.badlogic.gdx.ApplicationAdapter;
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.backends.headless.HeadlessApplication;
+import com.badlogic.gdx.backends.headless.HeadlessApplicationConfiguration;
+import com.badlogic.gdx.graphics.GL20;
+
+import de.dakror.common.libgdx.PlatformInterface;
+import de.dakror.quarry.Const;
+import de.dakror.quarry.Quarry;
+import net.spookygames.gdx.sfx.desktop.DesktopAudioDurationResolver;
+
+/**
+ * Platform for running the game logic without a window, used by the simulator and the benchmarks.
+ *
+ * @author Maximilian Stark | Dakror
+ */
+public class HeadlessPlatform implements PlatformInterface {
+    /////////////////////
+
+    public static final int versionCode = 122;
+    public static final String version = "v122";
+
+    /////////////////////
+
+    /**
+     * Starts the headless backend and sets up {@link Quarry#Q} and the game on the calling thread.
+     * Safe to call more than once.
+     */
+    public static synchronized Quarry boot() {
+        if (Quarry.Q != null) return Quarry.Q;
+
+        HeadlessApplicationConfiguration config = new HeadlessApplicationConfiguration();
+        config.renderInterval = -1;
+        new HeadlessApplication(new ApplicationAdapter() {}, config);
+
+        Gdx.gl = Gdx.gl20 = createNoopGL();
+
+        DesktopAudioDurationResolver.initialize();
+
+        long t = System.currentTimeMillis();
+        Quarry q = new Quarry(new HeadlessPlatform(), true, versionCode, version, true, false, null);
+        q.createHeadless();
+        System.out.println("Headless init took " + (System.currentTimeMillis() - t) + " ms");
+
+        return q;
+    }
+
+    /**
+     * Textures still get created for the atlas and skin, but nothing is ever drawn,
+     * so every GL call can simply be swallowed.
+     */
+    static GL20 createNoopGL() {
+        return (GL20) Proxy.newProxyInstance(GL20.class.getClassLoader(), new Class<?>[] { GL20.class },
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        Class<?> type = method.getReturnType();
+                        if (type == boolean.class) return false;
+                        if (type == int.class) return 0;
+                        if (type == float.class) return 0f;
+                        if (type == String.class) return "";
+                        return null;
+                    }
+                });
+    }
+
+    @Override
+    public Object message(int messageCode, Object payload) {
+        switch (messageCode) {
+            case PlatformInterface.MSG_EXCEPTION:
+                ((Exception) payload).printStackTrace();
+                break;
+            case Const.MSG_PADDING:
+                return new int[4];
+            case Const.MSG_DPI:
+                return 1f;
+            case Const.MSG_FILE_PERMISSION:
+                return true;
+        }
+
+        return null;
+    }
+}
@@ -0,0 +1,100 @@
+/*******************************************************************************
+ * Copyright 2019 Maximilian Stark | Dakror <mail@dakror.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+
+package de.dakror.quarry.desktop;
+
+import java.io.File;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.utils.Array;
+
+import de.dakror.common.libgdx.io.NBT.CompoundTag;
+import de.dakror.quarry.game.Layer;
+import de.dakror.quarry.scenes.Game;
+
+/**
+ * Loads a save and ticks it at a fixed timestep as fast as possible, without any rendering.
+ * Usage: HeadlessSimulator &lt;file.qsf&gt; [simulated seconds] [timestep] [game speed] [update threads]
+ *
+ * @author Maximilian Stark | Dakror
+ */
+public class HeadlessSimulator {
+    public static void main(String[] arg) {
+        if (arg.length == 0) {
+            System.out.println("Usage: HeadlessSimulator <file.qsf> [simulated seconds] [timestep] [game speed] [update threads]");
+            return;
+        }
+
+        String file = arg[0];
+        double seconds = arg.length > 1 ? Double.parseDouble(arg[1]) : 600;
+        double timestep = arg.length > 2 ? Double.parseDouble(arg[2]) : 1 / 60.0;
+        int gameSpeed = arg.length > 3 ? Integer.parseInt(arg[3]) : 1;
+        Game.UPDATE_THREADS = arg.length > 4 ? Integer.parseInt(arg[4]) : 0;
+
+        try {
+            HeadlessPlatform.boot();
+
+            Game g = Game.G;
+
+            long t = System.currentTimeMillis();
+            Array<Layer> layers = new Array<>();
+            CompoundTag data = g.loadWorld(Gdx.files.absolute(new File(file).getAbsolutePath()), layers);
+            int build = data.Int("build", 0);
+            data.free();
+            g.linkLayers(layers);
+
+            // see Game#loadData
+            if (build < 115) {
+                g.recalcResources();
+            }
+
+            int structures = 0;
+            for (Layer l : layers)
+                structures += l.getStructureCount();
+
+            System.out.println("Loaded " + layers.size + " layers with " + structures + " structures in "
+                    + (System.currentTimeMillis() - t) + " ms");
+
+            long ticks = (long) Math.ceil(seconds / timestep);
+            long reportInterval = Math.max(1, ticks / 10);
+
+            long start = System.nanoTime();
+            long lastReport = start;
+
+            for (long i = 1; i <= ticks; i++) {
+                g.updateWorld(timestep, gameSpeed);
+
+                if (i % reportInterval == 0) {
+                    long now = System.nanoTime();
+                    double wall = (now - lastReport) / 1_000_000_000.0;
+                    System.out.format("%6.1f%%  %8.2f sim-s/wall-s  %6.3f ms/tick%n", i * 100.0 / ticks,
+                            reportInterval * timestep * gameSpeed / wall, wall * 1000 / reportInterval);
+                    lastReport = now;
+                }
+            }
+
+            double wall = (System.nanoTime() - start) / 1_000_000_000.0;
+            double simulated = ticks * timestep * gameSpeed;
+            System.out.format("Simulated %.1f s in %.2f s: %.2f sim-s/wall-s, %.3f ms/tick%n", simulated, wall,
+                    simulated / wall, wall * 1000 / ticks);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+
+        // the save thread pool would otherwise keep us alive
+        System.exit(0);
+    }
+}